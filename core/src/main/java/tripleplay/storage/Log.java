@@ -0,0 +1,15 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2012, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.storage;
+
+import tripleplay.util.Logger;
+
+/** Provides logging for this package. */
+class Log
+{
+    /** Provides logging for this package. */
+    public static final Logger log = new Logger("storage");
+}
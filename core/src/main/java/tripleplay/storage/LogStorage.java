@@ -0,0 +1,478 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2012, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import playn.core.Storage;
+
+import static tripleplay.storage.Log.log;
+
+/**
+ * A {@link Storage} implementation backed by an append-only log in a memory-mapped file. Each
+ * change appends a small record to the log, so the cost of a change does not grow with the total
+ * amount of data stored (as it does when rewriting a properties file). All values are kept in
+ * memory, so reads never touch the file.
+ *
+ * <p>When enough of the log consists of superseded records, it is compacted by writing the live
+ * data to a second file (on a background thread, if so configured), which then replaces the
+ * first. Every record is checksummed, so if the process dies part way through a write, the torn
+ * record is discarded when the log is next opened. A compaction that does not complete is
+ * likewise ignored: the new file's header records the extent of the data written to it, and the
+ * file is only used if all of that data is intact. Changes are durable against process crashes
+ * as soon as they are made, but call {@link #sync} to ensure that they survive an OS crash or
+ * power loss.</p>
+ *
+ * <p>This class uses {@code java.nio}, so it is only usable on the Java platform (e.g. in desktop
+ * builds and tests) and is not part of the GWT module. It can be supplied anywhere a {@link
+ * Storage} is needed, for example to {@code SyncDB} or {@code TypedStorage}.</p>
+ */
+public class LogStorage implements Storage
+{
+    /**
+     * Opens (or creates) the log with the supplied base file, compacting it in the background as
+     * needed. The log is stored in {@code file.0} and {@code file.1}.
+     */
+    public LogStorage (File file) throws IOException {
+        this(file, true);
+    }
+
+    /**
+     * Opens (or creates) the log with the supplied base file.
+     * @param backgroundCompaction if true, the log is compacted on a background thread when
+     * needed, otherwise it is compacted on the calling thread.
+     */
+    public LogStorage (File file, boolean backgroundCompaction) throws IOException {
+        _files = new File[] { new File(file.getPath() + ".0"), new File(file.getPath() + ".1") };
+        _backgroundCompaction = backgroundCompaction;
+
+        // use the log with the latest valid header whose committed records are intact, falling
+        // back to the other log, and then to creating a new log
+        long[] gens = { Segment.readGeneration(_files[0]), Segment.readGeneration(_files[1]) };
+        int first = (gens[1] > gens[0]) ? 1 : 0;
+        for (int index : new int[] { first, 1-first }) {
+            if (gens[index] == 0) continue;
+            Segment seg = new Segment(_files[index], gens[index], 0);
+            if (seg.recover(_data)) {
+                _log = seg;
+                break;
+            }
+            log.warning("Ignoring incomplete log", "file", _files[index]);
+            seg.close();
+            _data.clear();
+        }
+        if (_log == null) {
+            _log = new Segment(_files[0], 1, INITIAL_SIZE);
+            _log.writeHeader();
+            _log.force();
+        } else {
+            for (Map.Entry<String,String> entry : _data.entrySet()) {
+                _live += recordSize(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Forces all changes to be written to the storage device.
+     */
+    public synchronized void sync () {
+        _log.force();
+    }
+
+    /**
+     * Compacts the log, on the calling thread. This happens automatically when needed.
+     */
+    public void compact () {
+        synchronized (this) {
+            if (_compacting || _closed) return;
+            _compacting = true;
+        }
+        writeCompacted();
+    }
+
+    /**
+     * Returns true if the log is being compacted.
+     */
+    public synchronized boolean isCompacting () {
+        return _compacting;
+    }
+
+    /**
+     * Returns the number of bytes in the log occupied by records that have been superseded.
+     */
+    public synchronized int garbage () {
+        return _log.pos - HEADER_SIZE - _live;
+    }
+
+    /**
+     * Closes the underlying files. This storage must not be used after it is closed.
+     */
+    public synchronized void close () {
+        // a compaction in progress will discard its log rather than replacing ours
+        _closed = true;
+        _log.force();
+        _log.close();
+    }
+
+    @Override public synchronized void setItem (String key, String data) {
+        if (data == null) {
+            removeItem(key);
+            return;
+        }
+        String odata = _data.put(key, data);
+        if (odata != null) _live -= recordSize(key, odata);
+        _live += recordSize(key, data);
+        change(key, data);
+    }
+
+    @Override public synchronized void removeItem (String key) {
+        String odata = _data.remove(key);
+        if (odata == null) return;
+        _live -= recordSize(key, odata);
+        change(key, null);
+    }
+
+    @Override public synchronized String getItem (String key) {
+        return _data.get(key);
+    }
+
+    @Override public synchronized Iterable<String> keys () {
+        return new ArrayList<String>(_data.keySet());
+    }
+
+    @Override public boolean isPersisted () {
+        return true;
+    }
+
+    protected void change (String key, String data) {
+        try {
+            _log.append(key, data);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Failed to write to log " + _log.file, ioe);
+        }
+        if (_replay != null) _replay.add(new String[] { key, data });
+        else if (!_compacting && garbage() > COMPACT_THRESHOLD && garbage() > _live &&
+                 System.currentTimeMillis() >= _retryCompaction) startCompaction();
+    }
+
+    protected void startCompaction () {
+        _compacting = true;
+        if (!_backgroundCompaction) {
+            // we're holding our monitor, but writeCompacted() will reacquire it as needed
+            writeCompacted();
+            return;
+        }
+        Thread thread = new Thread("LogStorage compactor") {
+            @Override public void run () {
+                writeCompacted();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Writes the live data to a new log, which then replaces ours. The caller must have set
+     * {@link #_compacting}, which is cleared when this method returns. */
+    protected void writeCompacted () {
+        Map<String,String> snapshot;
+        File target;
+        long generation;
+        synchronized (this) {
+            _replay = new ArrayList<String[]>();
+            snapshot = new HashMap<String,String>(_data);
+            target = _files[_log.file == _files[0] ? 1 : 0];
+            generation = _log.generation + 1;
+        }
+
+        Segment nlog = null;
+        try {
+            int size = HEADER_SIZE;
+            for (Map.Entry<String,String> entry : snapshot.entrySet()) {
+                size += recordSize(entry.getKey(), entry.getValue());
+            }
+            nlog = new Segment(target, generation, Math.max(INITIAL_SIZE, size + size/2));
+            for (Map.Entry<String,String> entry : snapshot.entrySet()) {
+                nlog.append(entry.getKey(), entry.getValue());
+            }
+            nlog.force();
+        } catch (Exception e) {
+            log.warning("Failed to compact log", "file", target, e);
+            if (nlog != null) nlog.close();
+            compactionFailed();
+            return;
+        }
+
+        synchronized (this) {
+            if (_closed) {
+                nlog.close();
+                _replay = null;
+                _compacting = false;
+                return;
+            }
+            try {
+                // apply any changes that were made while we were writing the snapshot, and
+                // ensure that they're on disk before the header, at which point the new log
+                // supersedes the old; the header records their extent, so should it be written
+                // first, recovery will ignore the new log unless they're intact
+                for (String[] change : _replay) nlog.append(change[0], change[1]);
+                nlog.force();
+                nlog.writeHeader();
+                nlog.force();
+            } catch (Exception e) {
+                log.warning("Failed to complete log compaction", "file", nlog.file, e);
+                nlog.close();
+                compactionFailed();
+                return;
+            }
+            _log.close();
+            _log = nlog;
+            _replay = null;
+            _compacting = false;
+            _live = 0;
+            for (Map.Entry<String,String> entry : _data.entrySet()) {
+                _live += recordSize(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    protected synchronized void compactionFailed () {
+        _replay = null;
+        _compacting = false;
+        // don't retry on every subsequent change
+        _retryCompaction = System.currentTimeMillis() + COMPACT_RETRY_DELAY;
+    }
+
+    protected static int recordSize (String key, String data) {
+        int size = RECORD_HEADER_SIZE + 1 + 4 + utf8Length(key);
+        if (data != null) size += 4 + utf8Length(data);
+        return size;
+    }
+
+    protected static int utf8Length (String text) {
+        int length = 0;
+        for (int ii = 0, ll = text.length(); ii < ll; ii++) {
+            char c = text.charAt(ii);
+            if (c < 0x80) length += 1;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c) && ii+1 < ll &&
+                     Character.isLowSurrogate(text.charAt(ii+1))) {
+                length += 4;
+                ii++;
+            }
+            else length += 3;
+        }
+        return length;
+    }
+
+    /** A single log file. */
+    protected static class Segment {
+        public final File file;
+        public final long generation;
+        public int pos = HEADER_SIZE;
+
+        /** Returns the generation of the log in the supplied file, or 0 if it does not exist or
+         * does not contain a valid header. */
+        public static long readGeneration (File file) throws IOException {
+            if (!file.exists() || file.length() < HEADER_SIZE) return 0;
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                int magic = raf.readInt(), version = raf.readInt();
+                long generation = raf.readLong();
+                int committed = raf.readInt(), crc = raf.readInt();
+                if (magic != MAGIC || version != FORMAT_VERSION) return 0;
+                return (headerCrc(generation, committed) == crc) ? generation : 0;
+            } finally {
+                raf.close();
+            }
+        }
+
+        /** Opens the supplied file, which will be extended to at least {@code size} bytes. */
+        public Segment (File file, long generation, int size) throws IOException {
+            this.file = file;
+            this.generation = generation;
+            _raf = new RandomAccessFile(file, "rw");
+            _channel = _raf.getChannel();
+            if (size > 0) {
+                // invalidate any existing header; the segment isn't valid until we write ours
+                _raf.setLength(Math.max(_raf.length(), HEADER_SIZE));
+                _raf.writeInt(0);
+            }
+            map(Math.max(size, (int)_channel.size()));
+        }
+
+        /** Reads the records in this log into {@code data}, stopping at the first invalid (or
+         * torn) record, after which new records will be appended. Returns false if the records
+         * that were committed when the header was written are not all intact, in which case the
+         * log should not be used. */
+        public boolean recover (Map<String,String> data) {
+            int committed = _buffer.getInt(16);
+            int limit = _buffer.capacity();
+            while (pos + RECORD_HEADER_SIZE <= limit) {
+                int length = _buffer.getInt(pos), crc = _buffer.getInt(pos+4);
+                if (length <= 0 || length > limit - pos - RECORD_HEADER_SIZE) break;
+                if (_scratch.length < length) _scratch = new byte[length];
+                _buffer.position(pos + RECORD_HEADER_SIZE);
+                _buffer.get(_scratch, 0, length);
+                if (crc(_scratch, length) != crc) break;
+
+                int kpos = 1 + 4, klength = readInt(_scratch, 1);
+                String key = new String(_scratch, kpos, klength, UTF8);
+                if (_scratch[0] == OP_SET) {
+                    int vpos = kpos + klength + 4, vlength = readInt(_scratch, kpos + klength);
+                    data.put(key, new String(_scratch, vpos, vlength, UTF8));
+                } else {
+                    data.remove(key);
+                }
+                pos += RECORD_HEADER_SIZE + length;
+            }
+            return pos >= committed;
+        }
+
+        /** Appends a record that sets {@code key} to {@code data}, or removes it if data is
+         * null. */
+        public void append (String key, String data) throws IOException {
+            byte[] kbytes = key.getBytes(UTF8);
+            byte[] vbytes = (data == null) ? null : data.getBytes(UTF8);
+            int length = 1 + 4 + kbytes.length + (vbytes == null ? 0 : 4 + vbytes.length);
+            if (_scratch.length < length) _scratch = new byte[Math.max(length, _scratch.length*2)];
+            _scratch[0] = (vbytes == null) ? OP_REMOVE : OP_SET;
+            writeInt(_scratch, 1, kbytes.length);
+            System.arraycopy(kbytes, 0, _scratch, 5, kbytes.length);
+            if (vbytes != null) {
+                writeInt(_scratch, 5 + kbytes.length, vbytes.length);
+                System.arraycopy(vbytes, 0, _scratch, 9 + kbytes.length, vbytes.length);
+            }
+
+            int size = RECORD_HEADER_SIZE + length;
+            if (pos + size > _buffer.capacity()) {
+                map(Math.max(_buffer.capacity() * 2, pos + size));
+            }
+            // write the body, then the checksum and finally the length, so that a record is
+            // never valid until it has been written in its entirety
+            _buffer.position(pos + RECORD_HEADER_SIZE);
+            _buffer.put(_scratch, 0, length);
+            _buffer.putInt(pos + 4, crc(_scratch, length));
+            _buffer.putInt(pos, length);
+            pos += size;
+            // terminate the log in case the following bytes contain an old record
+            if (pos + 4 <= _buffer.capacity()) _buffer.putInt(pos, 0);
+        }
+
+        /** Writes our header, which records the records appended thus far as committed. */
+        public void writeHeader () {
+            _buffer.putInt(8, 0);
+            _buffer.putLong(8, generation);
+            _buffer.putInt(16, pos);
+            _buffer.putInt(20, headerCrc(generation, pos));
+            _buffer.putInt(4, FORMAT_VERSION);
+            _buffer.putInt(0, MAGIC);
+        }
+
+        public void force () {
+            _buffer.force();
+        }
+
+        public void close () {
+            try {
+                _channel.close();
+                _raf.close();
+            } catch (IOException ioe) {
+                log.warning("Failed to close log", "file", file, ioe);
+            }
+        }
+
+        protected void map (int size) throws IOException {
+            _buffer = _channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        protected int crc (byte[] data, int length) {
+            _crc.reset();
+            updateLong(_crc, generation);
+            _crc.update(data, 0, length);
+            return (int)_crc.getValue();
+        }
+
+        protected static int headerCrc (long generation, int committed) {
+            CRC32 crc = new CRC32();
+            updateLong(crc, generation);
+            updateLong(crc, committed);
+            return (int)crc.getValue();
+        }
+
+        protected static void updateLong (CRC32 crc, long value) {
+            for (int ii = 56; ii >= 0; ii -= 8) crc.update((int)(value >>> ii) & 0xFF);
+        }
+
+        protected static int readInt (byte[] data, int pos) {
+            return ((data[pos] & 0xFF) << 24) | ((data[pos+1] & 0xFF) << 16) |
+                ((data[pos+2] & 0xFF) << 8) | (data[pos+3] & 0xFF);
+        }
+
+        protected static void writeInt (byte[] data, int pos, int value) {
+            data[pos] = (byte)(value >>> 24);
+            data[pos+1] = (byte)(value >>> 16);
+            data[pos+2] = (byte)(value >>> 8);
+            data[pos+3] = (byte)value;
+        }
+
+        protected final RandomAccessFile _raf;
+        protected final FileChannel _channel;
+        protected MappedByteBuffer _buffer;
+        protected byte[] _scratch = new byte[256];
+        protected final CRC32 _crc = new CRC32();
+    }
+
+    protected final File[] _files;
+    protected final boolean _backgroundCompaction;
+    protected final Map<String,String> _data = new HashMap<String,String>();
+    protected Segment _log;
+
+    /** The number of bytes in the log occupied by live records. */
+    protected int _live;
+
+    /** Changes made while a compaction is in progress, or null if we're not compacting. */
+    protected List<String[]> _replay;
+
+    /** Whether a compaction is in progress, and whether we've been closed. */
+    protected boolean _compacting, _closed;
+
+    /** The time before which we won't start another compaction, after one failed. */
+    protected long _retryCompaction;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Identifies a log file, and the version of its format. */
+    protected static final int MAGIC = 0x54504C47, FORMAT_VERSION = 1;
+
+    /** The header: magic, version, generation (long), the end of the committed records and a
+     * checksum of the generation and committed end. */
+    protected static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+
+    /** Each record starts with its length and checksum. */
+    protected static final int RECORD_HEADER_SIZE = 8;
+
+    protected static final byte OP_SET = 1, OP_REMOVE = 2;
+
+    /** The initial size of a log file. */
+    protected static final int INITIAL_SIZE = 64*1024;
+
+    /** The log is compacted once it contains at least this many bytes of garbage, and more
+     * garbage than live data. */
+    protected static final int COMPACT_THRESHOLD = 256*1024;
+
+    /** The delay before we try again to compact the log after a failed compaction. */
+    protected static final long COMPACT_RETRY_DELAY = 60*1000;
+}
@@ -0,0 +1,198 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2012, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.syncdb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import playn.core.util.Callback;
+
+import static tripleplay.syncdb.Log.log;
+
+/**
+ * A reference sync server which maintains the data for any number of users in memory. It can
+ * service requests directly (see {@link #server}) or from encoded payloads (see {@link #handle}),
+ * and is useful for testing and load testing clients.
+ *
+ * <p>Each user's data is kept in a change log ordered by version, so computing the delta needed to
+ * bring a client up to date costs time proportional to the number of properties that changed since
+ * the client's version, not the total number of properties.</p>
+ *
+ * <p>Conflicts are handled as the protocol expects: a request made against an out of date version
+ * is not applied, and the client is instead sent the changes since its version. The client
+ * resolves any conflicts using its {@link Resolver}s and {@link SetResolver}s and then resubmits
+ * its (merged) changes.</p>
+ */
+public class MemoryServer
+{
+    /** Creates a server which sends deltas of any size in a single response. */
+    public MemoryServer () {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a server which sends deltas larger than (approximately) {@code maxResponseSize}
+     * characters as a series of {@link Protocol.Response#partial} responses.
+     */
+    public MemoryServer (int maxResponseSize) {
+        _maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * Configures the formats in which {@link #handle} responds, in order of preference. A response
+     * is sent in the first of these that the client accepts (see {@link Protocol#chooseFormat}).
+     * By default, a response is sent in the format of the request, if the client accepts it.
+     * @return this server for convenient chaining.
+     */
+    public MemoryServer setFormats (Protocol.Format... formats) {
+        _formats = formats;
+        return this;
+    }
+
+    /**
+     * Returns a {@link Protocol.Server} which syncs directly with the specified user's data.
+     */
+    public Protocol.Server server (final String userId) {
+        return new Protocol.Server() {
+            public void sendSync (int version, Map<String,String> delta,
+                                  Callback<Protocol.Response> onResponse) {
+                Protocol.Response rsp;
+                try {
+                    rsp = sync(userId, new Protocol.Request(version, delta));
+                } catch (Exception e) {
+                    onResponse.onFailure(e);
+                    return;
+                }
+                onResponse.onSuccess(rsp);
+            }
+        };
+    }
+
+    /**
+     * Processes an encoded sync request from the specified user and returns the encoded response.
+     * The response is encoded in a {@link Protocol.Format} chosen as described in {@link
+     * #setFormats}.
+     */
+    public String handle (String userId, String payload) {
+        Protocol.Request req = Protocol.decodeRequest(payload);
+        Protocol.Format format = (_formats == null) ?
+            Protocol.chooseFormat(req, Protocol.format(payload)) :
+            Protocol.chooseFormat(req, _formats);
+        return Protocol.encodeResponse(sync(userId, req), format);
+    }
+
+    /**
+     * Processes a sync request from the specified user.
+     * @throws IllegalStateException if the request is for a version newer than the server's.
+     */
+    public Protocol.Response sync (String userId, Protocol.Request req) {
+        User user;
+        synchronized (_users) {
+            user = _users.get(userId);
+            if (user == null) _users.put(userId, user = new User());
+        }
+        return user.sync(userId, req);
+    }
+
+    /**
+     * Returns the current version of the specified user's data, or 0 if we have no data for them.
+     */
+    public int version (String userId) {
+        User user;
+        synchronized (_users) {
+            user = _users.get(userId);
+        }
+        return (user == null) ? 0 : user.version();
+    }
+
+    /** An entry in a user's change log. */
+    protected static class Change {
+        public final String key;
+        public String value;
+        public int version;
+        public Change prev, next;
+
+        public Change (String key) {
+            this.key = key;
+        }
+    }
+
+    /** Contains the data for a single user. */
+    protected class User {
+        public synchronized int version () {
+            return _version;
+        }
+
+        public synchronized Protocol.Response sync (String userId, Protocol.Request req) {
+            if (req.version > _version) {
+                log.warning("Client claims version newer than server's", "user", userId,
+                            "version", req.version, "server", _version);
+                throw new IllegalStateException(
+                    "Client version " + req.version + " is newer than server version " + _version);
+            }
+            // if the client is out of date, it must apply the changes since its version (resolving
+            // any conflicts) before its changes can be accepted
+            if (req.version < _version) return changesSince(req.version);
+            if (!req.delta.isEmpty()) {
+                _version += 1;
+                for (Map.Entry<String,String> entry : req.delta.entrySet()) {
+                    record(entry.getKey(), entry.getValue());
+                }
+            }
+            return new Protocol.Response(_version);
+        }
+
+        /** Records a change to the supplied key at the current version, moving it to the end of
+         * the change log. */
+        protected void record (String key, String value) {
+            Change change = _changes.get(key);
+            if (change == null) _changes.put(key, change = new Change(key));
+            else unlink(change);
+            change.value = value;
+            change.version = _version;
+            change.prev = _tail;
+            if (_tail != null) _tail.next = change;
+            _tail = change;
+        }
+
+        protected void unlink (Change change) {
+            if (change.prev != null) change.prev.next = change.next;
+            if (change.next == null) _tail = change.prev;
+            else change.next.prev = change.prev;
+            change.prev = change.next = null;
+        }
+
+        protected Protocol.Response changesSince (int version) {
+            // walk back through the log to the first change after the client's version
+            Change first = null;
+            for (Change change = _tail; change != null && change.version > version;
+                 change = change.prev) first = change;
+
+            // then walk forward, stopping at a version boundary if the delta gets too large
+            Map<String,String> delta = new HashMap<String,String>();
+            int size = 0;
+            for (Change change = first; change != null; change = change.next) {
+                size += SyncDB.deltaSize(change.key, change.value);
+                if (size > _maxResponseSize && change != first &&
+                    change.version != change.prev.version) {
+                    return Protocol.Response.partial(change.prev.version, delta);
+                }
+                delta.put(change.key, change.value);
+            }
+            return new Protocol.Response(_version, delta);
+        }
+
+        protected int _version;
+        protected final Map<String,Change> _changes = new HashMap<String,Change>();
+        /** The most recent change in the log. */
+        protected Change _tail;
+    }
+
+    protected final int _maxResponseSize;
+    /** The formats in which we prefer to respond, or null to respond in kind. */
+    protected Protocol.Format[] _formats;
+    protected final Map<String,User> _users = new HashMap<String,User>();
+}
@@ -5,8 +5,15 @@
 
 package tripleplay.syncdb;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import playn.core.Asserts;
 import playn.core.Net;
@@ -19,17 +26,55 @@ import static tripleplay.syncdb.Log.log;
  */
 public class Protocol
 {
+    /** The wire formats in which requests and responses may be encoded. The server should decode
+     * requests using {@link #decodeRequest}, which accepts all formats, and encode its response
+     * using a format chosen by {@link #chooseFormat} from those that the client accepts. */
+    public static enum Format {
+        /** The original format: varints and strings encoded in printable characters. */
+        TEXT,
+        /** Binary varints, UTF-8 strings and a shared map key prefix dictionary, base64 encoded
+         * for transport. */
+        BINARY,
+        /** The {@link #BINARY} format, with the body compressed via DEFLATE. */
+        COMPRESSED;
+    }
+
     /** Encapsulates a syncing session with the server. Also provides hooks for a game to perform
-     * custom conflict resolution before deltas are applied to the database. */
+     * custom conflict resolution before deltas are applied to the database.
+     *
+     * <p>Large deltas are sent to the server in chunks of (approximately) {@link #chunkSize}
+     * characters. Each chunk is a separate request which the server acknowledges with its new
+     * version, at which point the properties in that chunk are marked as synced. If a sync fails
+     * part way through, the next sync resumes with the properties that have not yet been
+     * acknowledged. Similarly, a server may send a large delta as a series of {@link
+     * Response#partial} responses, each of which is applied before the next is requested.</p> */
     public static abstract class Session {
+        /** The default maximum size (in characters) of the delta sent in a single request. */
+        public static final int DEFAULT_CHUNK_SIZE = 64*1024;
+
         public Session (Server server) {
+            this(server, DEFAULT_CHUNK_SIZE);
+        }
+
+        /** Creates a session which sends deltas to the server in chunks of at most (approximately)
+         * {@code chunkSize} characters. */
+        public Session (Server server, int chunkSize) {
+            Asserts.checkArgument(chunkSize > 0, "Chunk size must be positive.");
             _server = server;
+            _chunkSize = chunkSize;
+        }
+
+        /** Returns the maximum size (in characters) of the delta sent in a single request. */
+        public int chunkSize () {
+            return _chunkSize;
         }
 
-        /** Syncs the supplied database with this session's server. */
+        /** Syncs the supplied database with this session's server. If the database's unsynced
+         * changes exceed the chunk size, this will result in multiple requests. */
         public void sync (final SyncDB db) {
-            _server.sendSync(db.version(), db.getDelta(), new Callback<Response>() {
-                @Override public void onSuccess (Response rsp) { onSyncSuccess(db, rsp); }
+            final Map<String,String> delta = db.getDelta(_chunkSize);
+            _server.sendSync(db.version(), delta, new Callback<Response>() {
+                @Override public void onSuccess (Response rsp) { onSyncSuccess(db, delta, rsp); }
                 @Override public void onFailure (Throwable cause) { onSyncFailure(db, cause); }
             });
         }
@@ -54,14 +99,21 @@ public class Protocol
          */
         protected abstract void onSyncFailure (SyncDB db, Throwable cause);
 
-        protected void onSyncSuccess (final SyncDB db, final Response rsp) {
+        /** Called when the server responds to a request.
+         * @param sent the (possibly partial) delta that was sent with the request. */
+        protected void onSyncSuccess (final SyncDB db, Map<String,String> sent,
+                                      final Response rsp) {
             if (rsp.cleanSync) {
-                db.noteSync(rsp.version);
-                onCleanSync();
+                db.noteSync(rsp.version, sent);
+                // we may have sent only a chunk of our changes, or changes may have been made
+                // while the request was in flight
+                if (db.hasUnsyncedChanges()) sync(db);
+                else onCleanSync();
             } else {
                 Runnable merge = new Runnable() { public void run () {
                     db.applyDelta(rsp.version, rsp.delta);
-                    if (db.hasUnsyncedChanges()) sync(db);
+                    if (rsp.partial || db.hasUnsyncedChanges()) sync(db);
+                    else onCleanSync();
                 }};
                 if (db.containsMerges(rsp.delta)) {
                     onBeforeMerge(rsp.version, rsp.delta, merge);
@@ -72,6 +124,7 @@ public class Protocol
         }
 
         protected final Server _server;
+        protected final int _chunkSize;
     }
 
     /** Encapsulates a sync request from the client. */
@@ -82,10 +135,21 @@ public class Protocol
         /** The changes that have been made on the client since the last sync. */
         public final Map<String,String> delta;
 
-        /** Creates a request with the supplied data. */
+        /** The formats in which the client accepts a response. These are advertised by requests
+         * in a binary format; a {@link Format#TEXT} request accepts only a text response. */
+        public final Set<Format> accepts;
+
+        /** Creates a request with the supplied data, which accepts a response in any format. */
         public Request (int version, Map<String,String> delta) {
+            this(version, delta, EnumSet.allOf(Format.class));
+        }
+
+        /** Creates a request with the supplied data, which accepts a response in the supplied
+         * formats. */
+        public Request (int version, Map<String,String> delta, Set<Format> accepts) {
             this.version = version;
             this.delta = delta;
+            this.accepts = accepts;
         }
     }
 
@@ -102,20 +166,44 @@ public class Protocol
          * after the client applies the server deltas. */
         public final boolean cleanSync;
 
+        /** Whether {@link #delta} contains only some of the changes needed to sync with the latest
+         * server version, in which case {@link #version} is that of the last change included in
+         * the delta, and the client should sync again after applying it. */
+        public final boolean partial;
+
+        /** Creates a response that represents a partial delta, which brings a client up to date
+         * with the supplied (intermediate) version. See {@link #partial}. */
+        public static Response partial (int version, Map<String,String> delta) {
+            return new Response(version, delta, false, true);
+        }
+
         /** Creates a response that represents a clean sync. */
         public Response (int version) {
-            this(version, new HashMap<String,String>(), true);
+            this(version, new HashMap<String,String>(), true, false);
         }
 
         /** Creates a (non-clean-sync) response with the supplied version and delta. */
         public Response (int version, Map<String,String> delta) {
-            this(version, delta, false);
+            this(version, delta, false, false);
         }
 
-        protected Response (int version, Map<String,String> delta, boolean cleanSync) {
+        protected Response (int version, Map<String,String> delta, boolean cleanSync,
+                            boolean partial) {
             this.version = version;
             this.delta = delta;
             this.cleanSync = cleanSync;
+            this.partial = partial;
+        }
+
+        /** Returns the flags written to the wire for this response. */
+        protected int flags () {
+            return cleanSync ? RSP_CLEAN : (partial ? RSP_PARTIAL : RSP_DELTA);
+        }
+
+        /** Creates a response from the supplied wire flags. */
+        protected static Response create (int version, int flags, Map<String,String> delta) {
+            if (flags == RSP_CLEAN) return new Response(version);
+            return new Response(version, delta, false, flags == RSP_PARTIAL);
         }
     }
 
@@ -128,16 +216,36 @@ public class Protocol
 
     /** A {@link Server} implementation that delivers deltas to the server via {@link Net}. */
     public static class NetServer implements Server {
-        /** Creates a net server instance with the supplied Net service and sync URL. */
+        /** Creates a net server instance with the supplied Net service and sync URL, which
+         * communicates using the {@link Format#TEXT} format. */
         public NetServer (Net net, String url) {
+            this(net, url, Format.TEXT);
+        }
+
+        /** Creates a net server instance with the supplied Net service and sync URL, which sends
+         * its first request in the specified format. Requests in a binary format advertise that
+         * we accept responses in any format, and the server chooses one. Subsequent requests are
+         * sent in the format of the most recent response, so a server that responds in {@link
+         * Format#TEXT} (including one that predates the binary formats, if the first request was
+         * text) keeps the client in that format. */
+        public NetServer (Net net, String url, Format format) {
             _net = net;
             _url = url;
+            _format = format;
+        }
+
+        /** Returns the format in which our next request will be sent. */
+        public Format format () {
+            return _format;
         }
 
         @Override
         public void sendSync (int version, Map<String,String> delta, final Callback<Response> cb) {
-            _net.post(_url, encodeRequest(new Request(version, delta)), new Callback<String>() {
+            String payload = (_format == Format.TEXT) ? encodeRequest(new Request(version, delta)) :
+                encodeRequest(new Request(version, delta), _writer, _format == Format.COMPRESSED);
+            _net.post(_url, payload, new Callback<String>() {
                 public void onSuccess (String payload) {
+                    _format = Protocol.format(payload);
                     cb.onSuccess(decodeResponse(payload));
                 }
                 public void onFailure (Throwable cause) {
@@ -148,6 +256,8 @@ public class Protocol
 
         protected final Net _net;
         protected final String _url;
+        protected Format _format;
+        protected final BinaryWriter _writer = new BinaryWriter();
     }
 
     /** Used to decode ints and strings from one big compact string. */
@@ -183,7 +293,7 @@ public class Protocol
     /** Used to encode ints and strings in one big compact string. */
     public static class PayloadWriter {
         public void writeInt (int value) {
-            Asserts.checkArgument(value > 0, "Cannot write negative integers to payload.");
+            Asserts.checkArgument(value >= 0, "Cannot write negative integers to payload.");
             writeInt(value, false);
         }
 
@@ -204,6 +314,265 @@ public class Protocol
         protected StringBuilder _payload = new StringBuilder();
     }
 
+    /** Used to decode ints and strings from a {@link Format#BINARY} or {@link Format#COMPRESSED}
+     * payload. A reader may be {@link #reset} and reused to avoid reallocating its buffers. */
+    public static class BinaryReader {
+        public BinaryReader () {
+        }
+
+        public BinaryReader (String payload) {
+            reset(payload);
+        }
+
+        /** Prepares this reader to read the supplied payload.
+         * @return this reader for convenient chaining. */
+        public BinaryReader reset (String payload) {
+            Format format = format(payload);
+            Asserts.checkArgument(format != Format.TEXT, "Payload is not in binary format.");
+            _pos = 0;
+            _limit = decodeBase64(payload, BINARY_HEADER_LENGTH);
+            _prefixes.clear();
+            if (format == Format.COMPRESSED) {
+                if (_inflater == null) _inflater = new Inflater();
+                _inflater.reset();
+                _inflater.setInput(_data, 0, _limit);
+                try {
+                    _limit = 0;
+                    while (!_inflater.finished()) {
+                        if (_limit == _body.length) _body = grow(_body, _limit+1);
+                        int read = _inflater.inflate(_body, _limit, _body.length - _limit);
+                        // we always leave room for output, so if nothing was inflated and we're
+                        // not finished, the stream is truncated or wants a dictionary we lack
+                        if (read == 0 && !_inflater.finished()) throw new RuntimeException(
+                            _inflater.needsInput() ? "Truncated compressed payload." :
+                            "Invalid compressed payload.");
+                        _limit += read;
+                    }
+                } catch (DataFormatException dfe) {
+                    throw new RuntimeException("Invalid compressed payload.", dfe);
+                }
+                _buf = _body;
+            } else {
+                _buf = _data;
+            }
+            return this;
+        }
+
+        public boolean atEOF () {
+            return _pos >= _limit;
+        }
+
+        public int readInt () {
+            int value = 0, shift = 0;
+            byte b;
+            do {
+                b = _buf[_pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        /** Reads a string written by {@link BinaryWriter#writeString}, which may be null. */
+        public String readString () {
+            return readSuffix("");
+        }
+
+        /** Reads a key written by {@link BinaryWriter#writeKey}. */
+        public String readKey () {
+            int tag = readInt();
+            if (tag == KEY_PLAIN) return readString();
+            String prefix;
+            if (tag == KEY_NEW_PREFIX) _prefixes.add(prefix = readString());
+            else prefix = _prefixes.get(tag - KEY_PREFIX0);
+            return readSuffix(prefix);
+        }
+
+        /** Reads a string and returns it appended to {@code prefix}, without creating an
+         * intermediate string. Returns null if a null string was written. */
+        protected String readSuffix (String prefix) {
+            int length = readInt() - 1;
+            if (length < 0) return null;
+            int plength = prefix.length(), total = plength + length;
+            if (_chars.length < total) _chars = new char[total];
+            char[] chars = _chars;
+            prefix.getChars(0, plength, chars, 0);
+            for (int ii = plength; ii < total; ii++) {
+                int b = _buf[_pos++] & 0xFF;
+                if (b < 0x80) chars[ii] = (char)b;
+                else if (b < 0xE0) chars[ii] = (char)(((b & 0x1F) << 6) | (_buf[_pos++] & 0x3F));
+                else chars[ii] = (char)(((b & 0x0F) << 12) | ((_buf[_pos++] & 0x3F) << 6) |
+                                        (_buf[_pos++] & 0x3F));
+            }
+            return new String(chars, 0, total);
+        }
+
+        protected int decodeBase64 (String payload, int start) {
+            int length = payload.length() - start, size = length / 4 * 3;
+            if (length > 0 && payload.charAt(payload.length()-1) == '=') size--;
+            if (length > 1 && payload.charAt(payload.length()-2) == '=') size--;
+            if (_data.length < size) _data = new byte[size];
+            for (int ii = start, oo = 0; oo < size; ii += 4) {
+                int bits = (B64DEC[payload.charAt(ii)] << 18) |
+                    (B64DEC[payload.charAt(ii+1)] << 12) |
+                    (B64DEC[payload.charAt(ii+2)] << 6) | B64DEC[payload.charAt(ii+3)];
+                _data[oo++] = (byte)(bits >> 16);
+                if (oo < size) _data[oo++] = (byte)(bits >> 8);
+                if (oo < size) _data[oo++] = (byte)bits;
+            }
+            return size;
+        }
+
+        protected byte[] _buf, _data = new byte[0], _body = new byte[0];
+        protected char[] _chars = new char[32];
+        protected int _pos, _limit;
+        protected Inflater _inflater;
+        protected final List<String> _prefixes = new ArrayList<String>();
+    }
+
+    /** Used to encode ints and strings into a {@link Format#BINARY} or {@link Format#COMPRESSED}
+     * payload. A writer may be {@link #reset} and reused to avoid reallocating its buffers. */
+    public static class BinaryWriter {
+        /** Clears any previously written data from this writer.
+         * @return this writer for convenient chaining. */
+        public BinaryWriter reset () {
+            _pos = 0;
+            _prefixes.clear();
+            _lastPrefix = null;
+            return this;
+        }
+
+        public void writeInt (int value) {
+            Asserts.checkArgument(value >= 0, "Cannot write negative integers to payload.");
+            ensureCapacity(5);
+            while (value >= 0x80) {
+                _buf[_pos++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _buf[_pos++] = (byte)value;
+        }
+
+        /** Writes the supplied string, which may be null. Each character is written as one to
+         * three bytes in (modified) UTF-8. */
+        public void writeString (String value) {
+            if (value == null) writeInt(0);
+            else writeSuffix(value, 0);
+        }
+
+        /** Writes a storage key. Keys with a map prefix (see {@link SyncDB#PREFIXED_KEY_SEP}) have
+         * their prefix written once per payload and referenced by index thereafter. */
+        public void writeKey (String key) {
+            int pidx = key.indexOf(SyncDB.PREFIXED_KEY_SEP);
+            if (pidx == -1) {
+                writeInt(KEY_PLAIN);
+                writeString(key);
+                return;
+            }
+            // deltas usually contain runs of keys with the same prefix, so check the last prefix
+            // before we create a substring and look it up
+            if (_lastPrefix == null || _lastPrefix.length() != pidx+1 ||
+                !key.startsWith(_lastPrefix)) {
+                String prefix = key.substring(0, pidx+1);
+                Integer idx = _prefixes.get(prefix);
+                if (idx == null) {
+                    _prefixes.put(prefix, idx = _prefixes.size());
+                    writeInt(KEY_NEW_PREFIX);
+                    writeString(prefix);
+                    _lastPrefix = prefix;
+                    _lastPrefixIdx = idx;
+                    writeSuffix(key, pidx+1);
+                    return;
+                }
+                _lastPrefix = prefix;
+                _lastPrefixIdx = idx;
+            }
+            writeInt(KEY_PREFIX0 + _lastPrefixIdx);
+            writeSuffix(key, pidx+1);
+        }
+
+        /** Returns the data written thus far as a payload string.
+         * @param compress whether to compress the payload with DEFLATE. */
+        public String payload (boolean compress) {
+            byte[] data = _buf;
+            int length = _pos;
+            if (compress) {
+                if (_deflater == null) _deflater = new Deflater(Deflater.BEST_SPEED);
+                _deflater.reset();
+                _deflater.setInput(_buf, 0, _pos);
+                _deflater.finish();
+                length = 0;
+                while (!_deflater.finished()) {
+                    if (length == _zbuf.length) _zbuf = grow(_zbuf, length+1);
+                    length += _deflater.deflate(_zbuf, length, _zbuf.length - length);
+                }
+                data = _zbuf;
+            }
+            int size = BINARY_HEADER_LENGTH + (length+2)/3*4;
+            if (_chars.length < size) _chars = new char[size];
+            char[] chars = _chars;
+            chars[0] = BINARY_MARKER;
+            chars[1] = compress ? COMPRESSED_FLAG : BINARY_FLAG;
+            for (int ii = 0, oo = BINARY_HEADER_LENGTH; ii < length; ii += 3) {
+                int bits = (data[ii] & 0xFF) << 16;
+                if (ii+1 < length) bits |= (data[ii+1] & 0xFF) << 8;
+                if (ii+2 < length) bits |= (data[ii+2] & 0xFF);
+                chars[oo++] = B64ENC.charAt(bits >> 18);
+                chars[oo++] = B64ENC.charAt((bits >> 12) & 0x3F);
+                chars[oo++] = (ii+1 < length) ? B64ENC.charAt((bits >> 6) & 0x3F) : '=';
+                chars[oo++] = (ii+2 < length) ? B64ENC.charAt(bits & 0x3F) : '=';
+            }
+            return new String(chars, 0, size);
+        }
+
+        /** Writes the characters of {@code value} starting at {@code start}, as a string. */
+        protected void writeSuffix (String value, int start) {
+            int length = value.length() - start;
+            writeInt(length+1);
+            ensureCapacity(3*length);
+            for (int ii = start, ll = value.length(); ii < ll; ii++) {
+                char c = value.charAt(ii);
+                if (c < 0x80) {
+                    _buf[_pos++] = (byte)c;
+                } else if (c < 0x800) {
+                    _buf[_pos++] = (byte)(0xC0 | (c >> 6));
+                    _buf[_pos++] = (byte)(0x80 | (c & 0x3F));
+                } else {
+                    _buf[_pos++] = (byte)(0xE0 | (c >> 12));
+                    _buf[_pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                    _buf[_pos++] = (byte)(0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        protected void ensureCapacity (int bytes) {
+            if (_pos + bytes > _buf.length) _buf = grow(_buf, _pos + bytes);
+        }
+
+        protected byte[] _buf = new byte[256], _zbuf = new byte[256];
+        protected char[] _chars = new char[0];
+        protected int _pos;
+        protected Deflater _deflater;
+        protected final Map<String,Integer> _prefixes = new HashMap<String,Integer>();
+        protected String _lastPrefix;
+        protected int _lastPrefixIdx;
+    }
+
+    /** Returns the format in which the supplied payload is encoded. */
+    public static Format format (String payload) {
+        if (payload.length() < BINARY_HEADER_LENGTH || payload.charAt(0) != BINARY_MARKER) {
+            return Format.TEXT;
+        }
+        return (payload.charAt(1) == COMPRESSED_FLAG) ? Format.COMPRESSED : Format.BINARY;
+    }
+
+    /** Returns the format in which a server should respond to {@code req}: the first of {@code
+     * supported}, the formats the server is willing to use in order of preference, which the
+     * client accepts, or {@link Format#TEXT}, which all clients accept, if there is none. */
+    public static Format chooseFormat (Request req, Format... supported) {
+        for (Format format : supported) if (req.accepts.contains(format)) return format;
+        return Format.TEXT;
+    }
+
     /** Encodes a client request into a compact string format. */
     public static String encodeRequest (Request req) {
         PayloadWriter out = new PayloadWriter();
@@ -215,24 +584,57 @@ public class Protocol
         return out.payload();
     }
 
-    /** Decodes a client request from a compact string format. */
+    /** Encodes a client request into the specified format. */
+    public static String encodeRequest (Request req, Format format) {
+        if (format == Format.TEXT) return encodeRequest(req);
+        return encodeRequest(req, new BinaryWriter(), format == Format.COMPRESSED);
+    }
+
+    /** Encodes a client request into a binary format, using the supplied writer. */
+    public static String encodeRequest (Request req, BinaryWriter out, boolean compress) {
+        out.reset();
+        out.writeInt(req.version);
+        int accepts = 0;
+        for (Format format : req.accepts) accepts |= 1 << format.ordinal();
+        out.writeInt(accepts);
+        writeDelta(out, req.delta);
+        return out.payload(compress);
+    }
+
+    /** Decodes a client request from any of the supported formats. */
     public static Request decodeRequest (String payload) {
+        if (format(payload) != Format.TEXT) return decodeRequest(new BinaryReader(payload));
         PayloadReader in = new PayloadReader(payload);
         try {
             int version = in.readInt();
             Map<String,String> delta = new HashMap<String,String>();
             while (!in.atEOF()) delta.put(in.readString(), in.readString());
-            return new Request(version, delta);
+            return new Request(version, delta, EnumSet.of(Format.TEXT));
         } catch (Exception e) {
             throw new RuntimeException("Error decoding request: " + payload, e);
         }
     }
 
+    /** Decodes a client request from a binary format, using the supplied reader (which must
+     * have been reset with the request payload). */
+    public static Request decodeRequest (BinaryReader in) {
+        try {
+            int version = in.readInt(), mask = in.readInt();
+            Set<Format> accepts = EnumSet.noneOf(Format.class);
+            for (Format format : Format.values()) {
+                if ((mask & (1 << format.ordinal())) != 0) accepts.add(format);
+            }
+            return new Request(version, readDelta(in), accepts);
+        } catch (Exception e) {
+            throw new RuntimeException("Error decoding binary request", e);
+        }
+    }
+
     /** Encodes a server response into a compact string format. */
     public static String encodeResponse (Response rsp) {
         PayloadWriter out = new PayloadWriter();
         out.writeInt(rsp.version);
-        out.writeInt(rsp.cleanSync ? 1 : 0);
+        out.writeInt(rsp.flags());
         for (Map.Entry<String,String> entry : rsp.delta.entrySet()) {
             out.writeString(entry.getKey());
             out.writeString(entry.getValue());
@@ -240,21 +642,90 @@ public class Protocol
         return out.payload();
     }
 
-    /** Decodes a server response from a compact string format. */
+    /** Encodes a server response into the specified format. */
+    public static String encodeResponse (Response rsp, Format format) {
+        if (format == Format.TEXT) return encodeResponse(rsp);
+        return encodeResponse(rsp, new BinaryWriter(), format == Format.COMPRESSED);
+    }
+
+    /** Encodes a server response into a binary format, using the supplied writer. */
+    public static String encodeResponse (Response rsp, BinaryWriter out, boolean compress) {
+        out.reset();
+        out.writeInt(rsp.version);
+        out.writeInt(rsp.flags());
+        writeDelta(out, rsp.delta);
+        return out.payload(compress);
+    }
+
+    /** Decodes a server response from any of the supported formats. */
     public static Response decodeResponse (String payload) {
+        if (format(payload) != Format.TEXT) return decodeResponse(new BinaryReader(payload));
         PayloadReader in = new PayloadReader(payload);
         try {
-            int version = in.readInt();
-            boolean cleanSync = in.readInt() == 1;
-            if (cleanSync) return new Response(version);
+            int version = in.readInt(), flags = in.readInt();
             Map<String,String> delta = new HashMap<String,String>();
             while (!in.atEOF()) delta.put(in.readString(), in.readString());
-            return new Response(version, delta);
+            return Response.create(version, flags, delta);
         } catch (Exception e) {
             throw new RuntimeException("Error decoding response: " + payload, e);
         }
     }
 
+    /** Decodes a server response from a binary format, using the supplied reader (which must
+     * have been reset with the response payload). */
+    public static Response decodeResponse (BinaryReader in) {
+        try {
+            int version = in.readInt(), flags = in.readInt();
+            return Response.create(version, flags, readDelta(in));
+        } catch (Exception e) {
+            throw new RuntimeException("Error decoding binary response", e);
+        }
+    }
+
+    protected static void writeDelta (BinaryWriter out, Map<String,String> delta) {
+        out.writeInt(delta.size());
+        for (Map.Entry<String,String> entry : delta.entrySet()) {
+            out.writeKey(entry.getKey());
+            out.writeString(entry.getValue());
+        }
+    }
+
+    protected static Map<String,String> readDelta (BinaryReader in) {
+        int size = in.readInt();
+        Map<String,String> delta = new HashMap<String,String>(size*4/3+1);
+        for (int ii = 0; ii < size; ii++) delta.put(in.readKey(), in.readString());
+        return delta;
+    }
+
+    protected static byte[] grow (byte[] buf, int minSize) {
+        byte[] nbuf = new byte[Math.max(minSize, buf.length*2)];
+        System.arraycopy(buf, 0, nbuf, 0, buf.length);
+        return nbuf;
+    }
+
+    /** The flags that indicate the type of a response on the wire. */
+    protected static final int RSP_DELTA = 0, RSP_CLEAN = 1, RSP_PARTIAL = 2;
+
+    /** Starts all binary payloads. This character cannot start a {@link Format#TEXT} payload. */
+    protected static final char BINARY_MARKER = '\u007F';
+
+    /** Follows {@link #BINARY_MARKER} to indicate whether the payload is compressed. */
+    protected static final char BINARY_FLAG = 'B', COMPRESSED_FLAG = 'Z';
+
+    /** The number of characters that precede the base64 data in a binary payload. */
+    protected static final int BINARY_HEADER_LENGTH = 2;
+
+    /** Tags used to indicate how a key was written by {@link BinaryWriter#writeKey}. Tags at or
+     * above {@code KEY_PREFIX0} reference a previously written prefix. */
+    protected static final int KEY_PLAIN = 0, KEY_NEW_PREFIX = 1, KEY_PREFIX0 = 2;
+
+    protected static final String B64ENC =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    protected static final int[] B64DEC = new int[128];
+    static {
+        for (int ii = 0; ii < B64ENC.length(); ii++) B64DEC[B64ENC.charAt(ii)] = ii;
+    }
+
     /** Used to encode the final chunk between 0 and 46. */
     protected static final String VARABS =  "!\"#$%&'()*+,-./0123456789:;<=>?@ABCDEFGHIJKLMNO";
 
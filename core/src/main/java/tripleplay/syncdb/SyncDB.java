@@ -13,6 +13,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -20,8 +22,11 @@ import java.util.Set;
 import react.AbstractValue;
 import react.RMap;
 import react.RSet;
+import react.Signal;
+import react.SignalView;
 import react.Slot;
 import react.Value;
+import react.ValueView;
 
 import playn.core.Asserts;
 import playn.core.Storage;
@@ -36,6 +41,7 @@ import static tripleplay.syncdb.Log.log;
  *   public final Value<String> name = value("name", (String)null, Codec.STRING, Resolver.SERVER);
  *   public final Value<Integer> xp = value("xp", 0, Codec.INT, Resolver.INTMAX);
  *   public final Value<Integer> difficultyLevel = value("diff", 0, Codec.INT, Resolver.SERVER);
+ *   public final IntValue coins = intValue("coins", 0, Resolver.INTMAX);
  *   public final RSet<String> badges = set("badges", Codec.STRING, SetResolver.UNION);
  *   public final RMap<String,Integer> items = map("it", Codec.STRING, Codec.INT, Resolver.INTMAX);
  *   // etc.
@@ -61,13 +67,48 @@ public abstract class SyncDB
         return !_mods.isEmpty();
     }
 
+    /**
+     * Returns a signal that is emitted with the storage name of a property (or map entry) whenever
+     * it is modified locally. Changes made while applying a delta from the server are not
+     * reported.
+     */
+    public SignalView<String> modified () {
+        return _modified;
+    }
+
+    /**
+     * Returns a signal that is emitted after a delta from the server has been applied, once with
+     * the name of each value, set or map that was changed by the delta. Listeners that need only
+     * refresh themselves when a property changes can use this rather than being notified of each
+     * individual change to a large set or map.
+     */
+    public SignalView<String> synced () {
+        return _synced;
+    }
+
     /**
      * Returns a map of properties that have changed since our last sync. These can be sent to the
      * server (along with our current version) to sync our state with the server.
      */
     public Map<String,String> getDelta () {
+        return getDelta(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a map of some of the properties that have changed since our last sync, containing
+     * at most {@code maxSize} characters of keys and values (but always at least one property, if
+     * any have changed). This allows a large delta to be sent to the server in chunks, with each
+     * chunk acknowledged via {@link #noteSync(int,Map)}.
+     */
+    public Map<String,String> getDelta (int maxSize) {
         Map<String,String> delta = new HashMap<String,String>();
-        for (String name : _mods) delta.put(name, _storage.getItem(name));
+        int size = 0;
+        for (String name : _mods) {
+            String value = encoded(name);
+            size += deltaSize(name, value);
+            if (size > maxSize && !delta.isEmpty()) break;
+            delta.put(name, value);
+        }
         return delta;
     }
 
@@ -76,8 +117,42 @@ public abstract class SyncDB
      * version and notes that we no longer have unsynced modifications.
      */
     public void noteSync (int version) {
-        _mods.clear();
-        updateVersion(version);
+        beginBatch();
+        try {
+            _mods.clear();
+            _modsStore.clear();
+            updateVersion(version);
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Notes that the server cleanly accepted the supplied (possibly partial) delta. Updates our
+     * local version to the supplied version and notes that the properties in {@code synced} no
+     * longer have unsynced modifications, unless they were modified again after the delta was
+     * obtained from {@link #getDelta}.
+     */
+    public void noteSync (int version, Map<String,String> synced) {
+        beginBatch();
+        try {
+            for (Map.Entry<String,String> entry : synced.entrySet()) {
+                String name = entry.getKey(), value = entry.getValue();
+                if (!_mods.contains(name)) continue;
+                String current = encoded(name);
+                if (current == null ? value == null : current.equals(value)) clearModified(name);
+            }
+            updateVersion(version);
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Returns the approximate number of characters occupied by the supplied property in a delta.
+     */
+    public static int deltaSize (String name, String value) {
+        return name.length() + (value == null ? 0 : value.length()) + DELTA_ENTRY_OVERHEAD;
     }
 
     /**
@@ -96,35 +171,96 @@ public abstract class SyncDB
      * calling this method. After applying the delta and resolving conflicts, the local version
      * will be updated to the supplied version.
      *
+     * <p>Listeners on the affected properties are not notified until the entire delta has been
+     * applied, at which point each listener is notified once of the net change to each value, set
+     * element or map entry. Additionally, {@link #synced} is emitted once for each property that
+     * was changed by the delta.</p>
+     *
      * @param version the latest version.
      * @param delta the modifications from our local version to the latest version.
      */
     public void applyDelta (int version, Map<String,String> delta) {
-        for (Map.Entry<String,String> entry : delta.entrySet()) {
-            String name = entry.getKey();
-            Property prop;
-            int pidx = name.indexOf(PREFIXED_KEY_SEP);
-            if (pidx == -1) prop = _props.get(name);
-            else prop = _props.get(name.substring(0, pidx));
-            if (prop == null) {
-                log.warning("No local property defined", "name", name);
-            } else if (_mods.contains(name)) {
-                if (prop.merge(name, entry.getValue())) _mods.remove(name);
-            } else {
-                prop.update(name, entry.getValue());
-                _mods.remove(name); // updating will cause the property to be marked as locally
-                                    // changed, but it's not really locally changed, it's been set
-                                    // to the latest synced value, so clear the mod flag
+        beginBatch();
+        _applyingDelta = true;
+        try {
+            for (Map.Entry<String,String> entry : delta.entrySet()) {
+                String name = entry.getKey();
+                Property prop = prop(name);
+                if (prop == null) {
+                    log.warning("No local property defined", "name", name);
+                } else if (_mods.contains(name)) {
+                    if (prop.merge(name, entry.getValue())) clearModified(name);
+                } else {
+                    prop.update(name, entry.getValue());
+                    clearModified(name); // updating will cause the property to be marked as
+                                         // locally changed, but it's not really locally changed,
+                                         // it's been set to the latest synced value, so clear the
+                                         // mod flag
+                }
             }
+            updateVersion(version);
+        } finally {
+            _applyingDelta = false;
+            endBatch();
+            emitDeferred();
         }
-        updateVersion(version);
+    }
+
+    /**
+     * Executes {@code action} with all storage writes deferred, then writes the modified storage
+     * cells (including the set of unsynced properties) to storage together. Batches may be
+     * nested, in which case writes are deferred until the outermost batch completes. If
+     * write-behind is enabled, the writes remain pending until {@link #flush} is called.
+     */
+    public void batch (Runnable action) {
+        beginBatch();
+        try {
+            action.run();
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Configures whether this database defers writes to storage until {@link #flush} is called.
+     * This allows many changes made during a single frame to be written once per frame, but any
+     * writes not yet flushed will be lost if the game exits before they are flushed. Disabling
+     * write-behind flushes any pending writes.
+     */
+    public void setWriteBehind (boolean writeBehind) {
+        _writeBehind = writeBehind;
+        if (!writeBehind && _batchDepth == 0) flush();
+    }
+
+    /**
+     * Returns true if this database has changes which have not yet been written to storage.
+     */
+    public boolean hasPendingWrites () {
+        return !_pending.isEmpty() || !_dirtyValues.isEmpty();
+    }
+
+    /**
+     * Writes all pending changes to storage. This need only be called when write-behind is
+     * enabled, in which case it should generally be called once per frame.
+     */
+    public void flush () {
+        for (int ii = 0, ll = _dirtyValues.size(); ii < ll; ii++) _dirtyValues.get(ii).persist();
+        _dirtyValues.clear();
+        if (_pending.isEmpty()) return;
+        for (Map.Entry<String,String> entry : _pending.entrySet()) {
+            String key = entry.getKey(), data = entry.getValue();
+            if (data == null) _storage.removeItem(key);
+            else _storage.setItem(key, data);
+        }
+        _pending.clear();
     }
 
     protected SyncDB (Storage storage) {
         _storage = storage;
         _version = get(SYNC_VERS_KEY, 0, Codec.INT);
         // read the current unsynced key set
-        _mods = sget(SYNC_MODS_KEY, Codec.STRING);
+        _modsStore = new ChunkedSet<String>(SYNC_MODS_KEY, Codec.STRING);
+        _mods = _modsStore.load();
     }
 
     /**
@@ -139,21 +275,37 @@ public abstract class SyncDB
      */
     protected <T> Value<T> value (final String name, final T defval, final Codec<T> codec,
                                   final Resolver<? super T> resolver) {
-        Asserts.checkArgument(!SYNC_KEYS.contains(name), name + " is a reserved name.");
-        // create a value that reads/writes directly from/to the persistent store
-        final Value<T> value = new Value<T>(null) {
-            @Override public T get () {
-                return SyncDB.this.get(name, defval, codec);
-            }
+        checkName(name);
+        // create a value that keeps its decoded value in memory and writes through to the
+        // persistent store
+        final Value<T> value = new Value<T>(get(name, defval, codec)) {
             @Override protected T updateLocal (T value) {
-                T oldValue = get();
+                T oldValue = super.updateLocal(value);
                 SyncDB.this.set(name, value, codec);
                 return oldValue;
             }
             @Override protected void emitChange (T value, T ovalue) {
-                super.emitChange(value, ovalue);
+                if (!_applyingDelta) super.emitChange(value, ovalue);
+                else if (!_queued) {
+                    _queued = true;
+                    _ovalue = ovalue;
+                    defer(name, _emitter);
+                }
                 noteModified(name);
             }
+            protected void emitDeferred () {
+                T value = get(), ovalue = _ovalue;
+                _queued = false;
+                _ovalue = null;
+                if (value == null ? ovalue != null : !value.equals(ovalue)) {
+                    super.emitChange(value, ovalue);
+                }
+            }
+            protected final Runnable _emitter = new Runnable() {
+                public void run () { emitDeferred(); }
+            };
+            protected boolean _queued;
+            protected T _ovalue;
         };
         _props.put(name, new Property() {
             public boolean merge (String name, String data) {
@@ -164,32 +316,91 @@ public abstract class SyncDB
             public void update (String name, String data) {
                 value.update(codec.decode(data));
             }
+            public String get (String name) {
+                return readItem(name);
+            }
         });
         return value;
     }
 
+    /**
+     * Creates a synced int value with the specified configuration. Unlike an {@code Integer}
+     * {@link #value}, the returned value does not box or encode its value on every update, which
+     * makes it suitable for counters that change frequently. See {@link PrimitiveValue}.
+     *
+     * @param name the name to use for the persistent property, must not conflict with any other
+     * value, set or map name.
+     * @param defval the default value to use if no value has been persisted.
+     * @param resolver the conflict resolution policy to use when local modifications conflict with
+     * server modifications.
+     */
+    protected IntValue intValue (String name, int defval, Resolver<? super Integer> resolver) {
+        return new IntValue(name, defval, resolver);
+    }
+
+    /**
+     * Creates a synced long value with the specified configuration. See {@link #intValue}.
+     */
+    protected LongValue longValue (String name, long defval, Resolver<? super Long> resolver) {
+        return new LongValue(name, defval, resolver);
+    }
+
+    /**
+     * Creates a synced float value with the specified configuration. See {@link #intValue}.
+     */
+    protected FloatValue floatValue (String name, float defval, Resolver<? super Float> resolver) {
+        return new FloatValue(name, defval, resolver);
+    }
+
     /**
      * Creates a synced set with the specified configuration.
      *
+     * <p>The set is persisted in chunks (see {@link ChunkedSet}), so adding or removing a single
+     * element rewrites only a small portion of the set's storage.</p>
+     *
      * @param name the name to use for the persistent property, must not conflict with any other
      * value, set or map name.
      * @param codec the codec to use when converting an element to and from a string for storage.
      * @param resolver the conflict resolution policy to use when local modifications conflict with
      * server modifications.
      */
-    protected <E> RSet<E> set (final String name, final Codec<E> codec, final SetResolver resolver) {
-        Asserts.checkArgument(!SYNC_KEYS.contains(name), name + " is a reserved name.");
-        final RSet<E> rset = new RSet<E>(sget(name, codec)) {
+    protected <E> RSet<E> set (final String name, final Codec<E> codec,
+                               final SetResolver resolver) {
+        checkName(name);
+        final ChunkedSet<E> store = new ChunkedSet<E>(name, codec);
+        final RSet<E> rset = new RSet<E>(store.load()) {
             @Override protected void emitAdd (E elem) {
-                super.emitAdd(elem);
-                sset(name, _impl, codec);
+                store.add(elem);
+                if (_applyingDelta) deferChange(elem, false);
+                else super.emitAdd(elem);
                 noteModified(name);
             }
             @Override protected void emitRemove (E elem) {
-                super.emitRemove(elem);
-                sset(name, _impl, codec);
+                store.remove(elem);
+                if (_applyingDelta) deferChange(elem, true);
+                else super.emitRemove(elem);
                 noteModified(name);
             }
+            protected void deferChange (E elem, boolean wasMember) {
+                if (_changed.isEmpty()) defer(name, _emitter);
+                if (!_changed.containsKey(elem)) _changed.put(elem, wasMember);
+            }
+            protected void emitDeferred () {
+                for (Map.Entry<E,Boolean> entry : _changed.entrySet()) {
+                    E elem = entry.getKey();
+                    boolean member = contains(elem);
+                    if (member == entry.getValue()) continue;
+                    if (member) super.emitAdd(elem);
+                    else super.emitRemove(elem);
+                }
+                _changed.clear();
+            }
+            protected final Runnable _emitter = new Runnable() {
+                public void run () { emitDeferred(); }
+            };
+            // the elements changed while applying a delta, mapped to whether they were members
+            // of the set before the delta was applied
+            protected final Map<E,Boolean> _changed = new HashMap<E,Boolean>();
         };
         _props.put(name, new Property() {
             public boolean merge (String name, String data) {
@@ -202,6 +413,9 @@ public abstract class SyncDB
                 rset.retainAll(sset);
                 rset.addAll(sset);
             }
+            public String get (String name) {
+                return store.encode();
+            }
         });
         return rset;
     }
@@ -221,8 +435,8 @@ public abstract class SyncDB
      * @param prefix a string prefix prepended to the keys to create the storage key for each
      * individual map entry. A '.' will be placed in between the prefix and the string value of the
      * map key. For example: a prefix of {@code foo} and a map key of {@code 1} will result in a
-     * storage key of {@code foo.1}. Additionally, the {@code prefix_keys} storage cell will be used
-     * to track the current set of keys in the map.
+     * storage key of {@code foo.1}. Additionally, the {@code prefix_keys} chunked set (see {@link
+     * ChunkedSet}) will be used to track the current set of keys in the map.
      * @param keyCodec the codec to use when converting a key to/from string.
      * @param valCodec the codec to use when converting a value to/from string for storage.
      * @param resolver the conflict resolution policy to use when conflicting changes have been
@@ -239,22 +453,30 @@ public abstract class SyncDB
                 return _keys.contains(key);
             }
             @Override public V get (Object rawKey) {
-                String value = _storage.getItem(skey(rawKey));
-                return value == null ? null : valCodec.decode(value);
+                V value = _values.get(rawKey);
+                if (value == null && _keys.contains(rawKey)) {
+                    String data = readItem(skey(rawKey));
+                    if (data != null) {
+                        @SuppressWarnings("unchecked") K key = (K)rawKey;
+                        _values.put(key, value = valCodec.decode(data));
+                    }
+                }
+                return value;
             }
 
             @Override public V put (K key, V value) {
+                V ovalue = get(key);
                 _keys.add(key);
                 String skey = skey(key);
-                String ovalstr = _storage.getItem(skey);
-                _storage.setItem(skey, valCodec.encode(value));
+                writeItem(skey, valCodec.encode(value));
+                _values.put(key, value);
                 noteModified(skey);
-                return ovalstr == null ? null : valCodec.decode(ovalstr);
+                return ovalue;
             }
             @Override public V remove (Object rawKey) {
-                String ovalue = _storage.getItem(skey(rawKey));
+                V ovalue = get(rawKey);
                 _keys.remove(rawKey);
-                return (ovalue == null) ? null : valCodec.decode(ovalue);
+                return ovalue;
             }
 
             @Override public Set<K> keySet () {
@@ -296,17 +518,18 @@ public abstract class SyncDB
                 return prefix + PREFIXED_KEY_SEP + keyCodec.encode(key);
             }
 
-            protected final Set<K> _keys = new HashSet<K>(sget(prefix + "_keys", keyCodec)) {
+            protected final ChunkedSet<K> _keyStore = new ChunkedSet<K>(prefix + "_keys", keyCodec);
+            protected final Set<K> _keys = new HashSet<K>(_keyStore.load()) {
                 @Override public boolean add (K elem) {
                     if (!super.add(elem)) return false;
-                    sset(prefix + "_keys", this, keyCodec);
+                    _keyStore.add(elem);
                     return true;
                 }
                 @Override public boolean remove (Object elem) {
                     if (!super.remove(elem)) return false;
                     @SuppressWarnings("unchecked") K key = (K)elem;
                     removeStorage(key);
-                    sset(prefix + "_keys", this, keyCodec);
+                    _keyStore.remove(key);
                     return true;
                 }
                 @Override public Iterator<K> iterator () {
@@ -317,20 +540,54 @@ public abstract class SyncDB
                         @Override public void remove () {
                             iter.remove();
                             removeStorage(_current);
+                            _keyStore.remove(_current);
                         }
                         protected K _current;
                     };
                 }
                 protected void removeStorage (K key) {
                     String skey = skey(key);
-                    _storage.removeItem(skey);
+                    writeItem(skey, null);
+                    _values.remove(key);
                     noteModified(skey);
                 }
             };
+
+            // decoded values, loaded on first read and updated on write
+            protected final Map<K,V> _values = new HashMap<K,V>();
         }
 
-        final RMap<K,V> map = new RMap<K,V>(new StorageMap());
-        _props.put(prefix, new Property() {
+        final RMap<K,V> map = new RMap<K,V>(new StorageMap()) {
+            @Override protected void emitPut (K key, V value, V ovalue) {
+                if (_applyingDelta) deferChange(key, ovalue);
+                else super.emitPut(key, value, ovalue);
+            }
+            @Override protected void emitRemove (K key, V ovalue) {
+                if (_applyingDelta) deferChange(key, ovalue);
+                else super.emitRemove(key, ovalue);
+            }
+            protected void deferChange (K key, V ovalue) {
+                if (_changed.isEmpty()) defer(prefix, _emitter);
+                if (!_changed.containsKey(key)) _changed.put(key, ovalue);
+            }
+            protected void emitDeferred () {
+                for (Map.Entry<K,V> entry : _changed.entrySet()) {
+                    K key = entry.getKey();
+                    V value = get(key), ovalue = entry.getValue();
+                    if (value != null) {
+                        if (!value.equals(ovalue)) super.emitPut(key, value, ovalue);
+                    } else if (ovalue != null) super.emitRemove(key, ovalue);
+                }
+                _changed.clear();
+            }
+            protected final Runnable _emitter = new Runnable() {
+                public void run () { emitDeferred(); }
+            };
+            // the keys changed while applying a delta, mapped to their value before the delta
+            // was applied (or null)
+            protected final Map<K,V> _changed = new HashMap<K,V>();
+        };
+        Property prop = new Property() {
             public boolean merge (String name, String data) {
                 K skey = keyCodec.decode(name.substring(prefix.length()+1));
                 if (data == null) {
@@ -346,17 +603,22 @@ public abstract class SyncDB
                 if (data == null) map.remove(skey);
                 else map.put(skey, valCodec.decode(data));
             }
-        });
+            public String get (String name) {
+                return readItem(name);
+            }
+        };
+        _props.put(prefix, prop);
+        indexPrefix(prefix, prop);
         return map;
     }
 
     protected <T> T get (String name, T defval, Codec<T> codec) {
-        String data = _storage.getItem(name);
+        String data = readItem(name);
         return (data == null) ? defval : codec.decode(data);
     }
 
     protected <T> void set (String name, T value, Codec<T> codec) {
-        _storage.setItem(name, codec.encode(value));
+        writeItem(name, codec.encode(value));
     }
 
     protected <E> void sset (String name, Set<E> set, Codec<E> codec) {
@@ -365,11 +627,11 @@ public abstract class SyncDB
             if (buf.length() > 0) buf.append("\t");
             buf.append(codec.encode(elem));
         }
-        _storage.setItem(name, buf.toString());
+        writeItem(name, buf.toString());
     }
 
     protected <E> Set<E> sget (String name, Codec<E> codec) {
-        return toSet(_storage.getItem(name), codec);
+        return toSet(readItem(name), codec);
     }
 
     protected <E> Set<E> toSet (String data, Codec<E> codec) {
@@ -380,24 +642,612 @@ public abstract class SyncDB
         return set;
     }
 
+    protected StringBuilder join (StringBuilder buf, Iterable<String> elems, boolean first) {
+        for (String elem : elems) {
+            if (!first) buf.append("\t");
+            buf.append(elem);
+            first = false;
+        }
+        return buf;
+    }
+
+    /**
+     * Checks that the supplied property name is not reserved: it must not be one of the keys used
+     * to track sync state, nor have the form of a key used to store the chunks of a {@link
+     * ChunkedSet}, which would collide with the storage of some set.
+     */
+    protected static void checkName (String name) {
+        Asserts.checkArgument(!SYNC_KEYS.contains(name) && !isChunkKey(name),
+                              name + " is a reserved name.");
+    }
+
+    /**
+     * Returns true if the supplied name has the form of a {@link ChunkedSet} storage key, i.e. it
+     * ends with {@link #CHUNK_COUNT_SUFFIX}, or with {@link #CHUNK_SUFFIX} and a chunk index.
+     */
+    protected static boolean isChunkKey (String name) {
+        if (name.endsWith(CHUNK_COUNT_SUFFIX)) return true;
+        int idx = name.lastIndexOf(CHUNK_SUFFIX) + CHUNK_SUFFIX.length();
+        if (idx < CHUNK_SUFFIX.length() || idx == name.length()) return false;
+        for (int ii = idx; ii < name.length(); ii++) {
+            if (!Character.isDigit(name.charAt(ii))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the encoded value of the supplied property, as it is sent to the server.
+     */
+    protected String encoded (String name) {
+        Property prop = prop(name);
+        return (prop == null) ? readItem(name) : prop.get(name);
+    }
+
+    /**
+     * Returns the property that handles the supplied storage name, or null.
+     */
+    protected Property prop (String name) {
+        int pidx = name.indexOf(PREFIXED_KEY_SEP_CHAR);
+        if (pidx == -1) return _props.get(name);
+        // look up the prefix without creating a substring
+        if (pidx >= _prefixIndex.length) return null;
+        for (Prefixed entry : _prefixIndex[pidx]) {
+            if (name.regionMatches(0, entry.prefix, 0, pidx)) return entry.prop;
+        }
+        return null;
+    }
+
+    /**
+     * Adds the supplied map property to the index used by {@link #prop} to find the property for
+     * a prefixed key.
+     */
+    protected void indexPrefix (String prefix, Property prop) {
+        int length = prefix.length();
+        if (length >= _prefixIndex.length) {
+            Prefixed[][] index = new Prefixed[length+1][];
+            System.arraycopy(_prefixIndex, 0, index, 0, _prefixIndex.length);
+            for (int ii = _prefixIndex.length; ii < index.length; ii++) index[ii] = NO_PREFIXES;
+            _prefixIndex = index;
+        }
+        Prefixed[] entries = _prefixIndex[length];
+        Prefixed[] nentries = new Prefixed[entries.length+1];
+        System.arraycopy(entries, 0, nentries, 0, entries.length);
+        nentries[entries.length] = new Prefixed(prefix, prop);
+        _prefixIndex[length] = nentries;
+    }
+
+    /**
+     * Queues {@code emitter} to be run once the delta currently being applied has been applied in
+     * full. The emitter should notify listeners of the (coalesced) changes to property {@code
+     * name}, which will also be reported via {@link #synced}.
+     */
+    protected void defer (String name, Runnable emitter) {
+        _deferred.add(emitter);
+        _deferredNames.add(name);
+    }
+
+    protected void emitDeferred () {
+        if (_deferred.isEmpty()) return;
+        List<Runnable> emitters = new ArrayList<Runnable>(_deferred);
+        List<String> names = new ArrayList<String>(_deferredNames);
+        _deferred.clear();
+        _deferredNames.clear();
+        for (Runnable emitter : emitters) emitter.run();
+        for (String name : names) _synced.emit(name);
+    }
+
     protected void updateVersion (int version) {
         set(SYNC_VERS_KEY, _version = version, Codec.INT);
     }
 
     protected void noteModified (String name) {
-        _mods.add(name);
+        if (_mods.add(name)) _modsStore.add(name);
+        if (!_applyingDelta) _modified.emit(name);
+    }
+
+    protected void clearModified (String name) {
+        if (_mods.remove(name)) _modsStore.remove(name);
+    }
+
+    protected void beginBatch () {
+        _batchDepth++;
+    }
+
+    protected void endBatch () {
+        if (--_batchDepth == 0 && !_writeBehind) flush();
+    }
+
+    /**
+     * Returns the data stored in {@code key}, including any writes that are pending.
+     */
+    protected String readItem (String key) {
+        String data = _pending.get(key);
+        return (data != null || _pending.containsKey(key)) ? data : _storage.getItem(key);
+    }
+
+    /**
+     * Writes {@code data} to {@code key}, or removes {@code key} if {@code data} is null. The
+     * write is deferred if we're in a batch or in write-behind mode.
+     */
+    protected void writeItem (String key, String data) {
+        if (_batchDepth > 0 || _writeBehind) _pending.put(key, data);
+        else if (data == null) _storage.removeItem(key);
+        else _storage.setItem(key, data);
+    }
+
+    /** An entry in the prefix index. See {@link #indexPrefix}. */
+    protected static class Prefixed {
+        public final String prefix;
+        public final Property prop;
+        public Prefixed (String prefix, Property prop) {
+            this.prefix = prefix;
+            this.prop = prop;
+        }
     }
 
     protected interface Property {
         boolean merge (String name, String data);
         void update (String name, String data);
+        /** Returns the current encoded value of {@code name}, as sent to the server. */
+        String get (String name);
+    }
+
+    /**
+     * The base class for synced properties that hold a primitive value. The value is kept in
+     * memory as a primitive and is only encoded when it is persisted or sent to the server. If
+     * write-behind is enabled (or during a {@link #batch}), a value that changes many times before
+     * the next {@link #flush} is encoded and written only once. Subclasses hold the value itself;
+     * this class manages listeners, persistence, merging and the reactive view.
+     *
+     * @param <T> the boxed type of the value, used by the resolver and the view.
+     * @param <L> the type of listener notified of changes without boxing.
+     */
+    public abstract class PrimitiveValue<T,L> {
+        /** Returns the storage name of this property. */
+        public String name () {
+            return _name;
+        }
+
+        /** Adds a listener that is notified of changes without boxing. */
+        public void addListener (L listener) {
+            Object[] listeners = new Object[_listeners.length+1];
+            System.arraycopy(_listeners, 0, listeners, 0, _listeners.length);
+            listeners[_listeners.length] = listener;
+            _listeners = listeners;
+        }
+
+        /** Removes a listener previously added via {@link #addListener}. */
+        public void removeListener (L listener) {
+            for (int ii = 0; ii < _listeners.length; ii++) {
+                if (_listeners[ii] != listener) continue;
+                Object[] listeners = new Object[_listeners.length-1];
+                System.arraycopy(_listeners, 0, listeners, 0, ii);
+                System.arraycopy(_listeners, ii+1, listeners, ii, listeners.length-ii);
+                _listeners = listeners;
+                return;
+            }
+        }
+
+        /** Returns a reactive view of this value, for use with code that expects one. Once a view
+         * has been created, each change to this value is boxed to update the view. */
+        public ValueView<T> view () {
+            if (_view == null) _view = Value.create(boxed());
+            return _view;
+        }
+
+        protected PrimitiveValue (String name, Resolver<? super T> resolver) {
+            checkName(name);
+            _name = name;
+            _resolver = resolver;
+            _props.put(name, new Property() {
+                public boolean merge (String name, String data) {
+                    return PrimitiveValue.this.merge(data);
+                }
+                public void update (String name, String data) {
+                    updateBoxed(decode(data));
+                }
+                public String get (String name) {
+                    return encode();
+                }
+            });
+        }
+
+        /** Notes that this value has changed, and persists it (now, or on the next flush).
+         * Returns true if listeners should be notified now. While a delta is being applied, they
+         * are instead notified of the net change once it has been applied, so a subclass must
+         * note its old value before calling this method unless a notification is already
+         * {@linkplain #_queued queued}. */
+        protected boolean changed () {
+            noteModified(_name);
+            if (_writeBehind || _batchDepth > 0) {
+                if (!_dirty) {
+                    _dirty = true;
+                    _dirtyValues.add(this);
+                }
+            } else {
+                writeItem(_name, encode());
+            }
+            if (!_applyingDelta) return true;
+            if (!_queued) {
+                _queued = true;
+                defer(_name, _emitter);
+            }
+            return false;
+        }
+
+        protected void persist () {
+            _dirty = false;
+            writeItem(_name, encode());
+        }
+
+        /** Resolves a conflict between our value and the supplied server value, updates this value
+         * and returns true if it is now the same as the server value. */
+        protected boolean merge (String data) {
+            T svalue = decode(data), nvalue = _resolver.resolve(boxed(), svalue);
+            updateBoxed(nvalue);
+            return nvalue.equals(svalue);
+        }
+
+        /** Updates the view of this value, if one has been created. */
+        protected void updateView () {
+            if (_view != null) _view.update(boxed());
+        }
+
+        /** Returns this value, boxed. */
+        protected abstract T boxed ();
+        /** Updates this value to the supplied boxed value. */
+        protected abstract void updateBoxed (T value);
+        protected abstract T decode (String data);
+        protected abstract String encode ();
+        /** Notifies listeners of the net change made while applying a delta. */
+        protected abstract void emitDeferred ();
+
+        protected final String _name;
+        protected final Resolver<? super T> _resolver;
+        protected final Runnable _emitter = new Runnable() {
+            public void run () {
+                _queued = false;
+                emitDeferred();
+            }
+        };
+        protected boolean _dirty, _queued;
+        /** Our listeners, which are all instances of {@code L}. */
+        protected Object[] _listeners = NO_LISTENERS;
+        protected Value<T> _view;
+    }
+
+    /** Notified when an {@link IntValue} changes. */
+    public interface IntListener {
+        void onChange (int value, int oldValue);
+    }
+
+    /** Notified when a {@link LongValue} changes. */
+    public interface LongListener {
+        void onChange (long value, long oldValue);
+    }
+
+    /** Notified when a {@link FloatValue} changes. */
+    public interface FloatListener {
+        void onChange (float value, float oldValue);
+    }
+
+    /** A synced int value. See {@link #intValue}. */
+    public class IntValue extends PrimitiveValue<Integer,IntListener> {
+        /** Returns the current value. */
+        public int get () {
+            return _value;
+        }
+
+        /** Updates this value, notifying listeners if it changed. */
+        public void update (int value) {
+            int ovalue = _value;
+            if (value == ovalue) return;
+            if (!_queued) _ovalue = ovalue;
+            _value = value;
+            if (changed()) emit(value, ovalue);
+        }
+
+        /** Adds {@code delta} to this value. */
+        public void increment (int delta) {
+            update(_value + delta);
+        }
+
+        protected IntValue (String name, int defval, Resolver<? super Integer> resolver) {
+            super(name, resolver);
+            String data = readItem(name);
+            _value = (data == null) ? defval : Integer.parseInt(data);
+        }
+
+        @Override protected Integer boxed () {
+            return _value;
+        }
+        @Override protected void updateBoxed (Integer value) {
+            update(value.intValue());
+        }
+        @Override protected Integer decode (String data) {
+            return Integer.parseInt(data);
+        }
+        @Override protected String encode () {
+            return Integer.toString(_value);
+        }
+        @Override protected void emitDeferred () {
+            if (_value != _ovalue) emit(_value, _ovalue);
+        }
+
+        protected void emit (int value, int ovalue) {
+            for (Object l : _listeners) ((IntListener)l).onChange(value, ovalue);
+            updateView();
+        }
+
+        protected int _value, _ovalue;
+    }
+
+    /** A synced long value. See {@link #longValue}. */
+    public class LongValue extends PrimitiveValue<Long,LongListener> {
+        /** Returns the current value. */
+        public long get () {
+            return _value;
+        }
+
+        /** Updates this value, notifying listeners if it changed. */
+        public void update (long value) {
+            long ovalue = _value;
+            if (value == ovalue) return;
+            if (!_queued) _ovalue = ovalue;
+            _value = value;
+            if (changed()) emit(value, ovalue);
+        }
+
+        /** Adds {@code delta} to this value. */
+        public void increment (long delta) {
+            update(_value + delta);
+        }
+
+        protected LongValue (String name, long defval, Resolver<? super Long> resolver) {
+            super(name, resolver);
+            String data = readItem(name);
+            _value = (data == null) ? defval : Long.parseLong(data);
+        }
+
+        @Override protected Long boxed () {
+            return _value;
+        }
+        @Override protected void updateBoxed (Long value) {
+            update(value.longValue());
+        }
+        @Override protected Long decode (String data) {
+            return Long.parseLong(data);
+        }
+        @Override protected String encode () {
+            return Long.toString(_value);
+        }
+        @Override protected void emitDeferred () {
+            if (_value != _ovalue) emit(_value, _ovalue);
+        }
+
+        protected void emit (long value, long ovalue) {
+            for (Object l : _listeners) ((LongListener)l).onChange(value, ovalue);
+            updateView();
+        }
+
+        protected long _value, _ovalue;
+    }
+
+    /** A synced float value. See {@link #floatValue}. */
+    public class FloatValue extends PrimitiveValue<Float,FloatListener> {
+        /** Returns the current value. */
+        public float get () {
+            return _value;
+        }
+
+        /** Updates this value, notifying listeners if it changed. */
+        public void update (float value) {
+            float ovalue = _value;
+            if (Float.floatToIntBits(value) == Float.floatToIntBits(ovalue)) return;
+            if (!_queued) _ovalue = ovalue;
+            _value = value;
+            if (changed()) emit(value, ovalue);
+        }
+
+        /** Adds {@code delta} to this value. */
+        public void increment (float delta) {
+            update(_value + delta);
+        }
+
+        protected FloatValue (String name, float defval, Resolver<? super Float> resolver) {
+            super(name, resolver);
+            String data = readItem(name);
+            _value = (data == null) ? defval : Float.parseFloat(data);
+        }
+
+        @Override protected Float boxed () {
+            return _value;
+        }
+        @Override protected void updateBoxed (Float value) {
+            update(value.floatValue());
+        }
+        @Override protected Float decode (String data) {
+            return Float.parseFloat(data);
+        }
+        @Override protected String encode () {
+            return Float.toString(_value);
+        }
+        @Override protected void emitDeferred () {
+            float ovalue = _ovalue;
+            if (Float.floatToIntBits(_value) != Float.floatToIntBits(ovalue)) emit(_value, ovalue);
+        }
+
+        protected void emit (float value, float ovalue) {
+            for (Object l : _listeners) ((FloatListener)l).onChange(value, ovalue);
+            updateView();
+        }
+
+        protected float _value, _ovalue;
+    }
+
+    /**
+     * Persists a set as a collection of chunks rather than one big string. Elements are assigned
+     * to chunks by the hash of their encoded form, so adding or removing an element rewrites only
+     * the chunk that contains it. The chunk count doubles as the set grows, keeping chunks around
+     * {@link #CHUNK_SIZE} elements. The chunk count is stored in {@code name_chunks} and each
+     * chunk in {@code name_chunkN}; property names of that form are reserved (see {@link
+     * #checkName}). Sets stored in the old single-string format under {@code name} are migrated
+     * to the chunked format when they are first loaded.
+     */
+    protected class ChunkedSet<E> {
+        public ChunkedSet (String name, Codec<E> codec) {
+            _name = name;
+            _codec = codec;
+        }
+
+        /** Reads the persisted set from storage, migrating it from the old format if needed. */
+        public Set<E> load () {
+            Set<E> set = new HashSet<E>();
+            String count = readItem(_name + CHUNK_COUNT_SUFFIX);
+            if (count != null) {
+                resize(Integer.parseInt(count));
+                for (int ii = 0; ii < _chunks.length; ii++) {
+                    String data = readItem(_name + CHUNK_SUFFIX + ii);
+                    if (data == null) continue;
+                    for (String edata : data.split("\t", -1)) {
+                        if (_chunks[ii].add(edata)) _size++;
+                        set.add(_codec.decode(edata));
+                    }
+                }
+
+            } else {
+                resize(1);
+                // an empty legacy string was written for an empty set, so there's nothing to load
+                String legacy = readItem(_name);
+                if (legacy != null && legacy.length() > 0) {
+                    for (String edata : legacy.split("\t", -1)) {
+                        if (chunk(edata).add(edata)) _size++;
+                        set.add(_codec.decode(edata));
+                    }
+                }
+                // write out our chunk count (and any migrated chunks, which may need more than
+                // our initial single chunk)
+                if (!maybeGrow()) writeAll();
+                if (legacy != null) writeItem(_name, null);
+            }
+            return set;
+        }
+
+        /** Notes that {@code elem} was added to the set and persists its chunk. */
+        public void add (E elem) {
+            String edata = _codec.encode(elem);
+            int idx = index(edata);
+            if (!_chunks[idx].add(edata)) return;
+            _size++;
+            if (!maybeGrow()) write(idx);
+        }
+
+        /** Notes that {@code elem} was removed from the set and persists its chunk. */
+        public void remove (E elem) {
+            String edata = _codec.encode(elem);
+            int idx = index(edata);
+            if (!_chunks[idx].remove(edata)) return;
+            _size--;
+            write(idx);
+        }
+
+        /** Removes all elements from the set and persists the now empty chunks. */
+        public void clear () {
+            for (int ii = 0; ii < _chunks.length; ii++) {
+                if (_chunks[ii].isEmpty()) continue;
+                _chunks[ii].clear();
+                write(ii);
+            }
+            _size = 0;
+        }
+
+        /** Returns the entire set encoded as a single tab-separated string. */
+        public String encode () {
+            StringBuilder buf = new StringBuilder();
+            boolean first = true;
+            for (Set<String> chunk : _chunks) {
+                join(buf, chunk, first);
+                first &= chunk.isEmpty();
+            }
+            return buf.toString();
+        }
+
+        protected boolean maybeGrow () {
+            if (_size <= _chunks.length * CHUNK_SIZE) return false;
+            int count = _chunks.length;
+            while (_size > count * CHUNK_SIZE) count *= 2;
+            Set<String>[] ochunks = _chunks;
+            resize(count);
+            for (Set<String> chunk : ochunks) {
+                for (String edata : chunk) chunk(edata).add(edata);
+            }
+            writeAll();
+            return true;
+        }
+
+        protected void writeAll () {
+            for (int ii = 0; ii < _chunks.length; ii++) write(ii);
+            writeItem(_name + CHUNK_COUNT_SUFFIX, String.valueOf(_chunks.length));
+        }
+
+        protected void write (int idx) {
+            String key = _name + CHUNK_SUFFIX + idx;
+            writeItem(key, _chunks[idx].isEmpty() ? null :
+                      join(new StringBuilder(), _chunks[idx], true).toString());
+        }
+
+        @SuppressWarnings("unchecked") protected void resize (int count) {
+            _chunks = new Set[count];
+            for (int ii = 0; ii < count; ii++) _chunks[ii] = new HashSet<String>();
+        }
+
+        protected Set<String> chunk (String edata) {
+            return _chunks[index(edata)];
+        }
+
+        protected int index (String edata) {
+            return (edata.hashCode() & 0x7FFFFFFF) % _chunks.length;
+        }
+
+        protected final String _name;
+        protected final Codec<E> _codec;
+        protected Set<String>[] _chunks;
+        protected int _size;
     }
 
     protected final Storage _storage;
     protected final Map<String,Property> _props = new HashMap<String,Property>();
     protected final Set<String> _mods;
+    protected final ChunkedSet<String> _modsStore;
     protected int _version;
 
+    /** Writes which have not yet been flushed to storage (null values indicate removals). */
+    protected final Map<String,String> _pending = new LinkedHashMap<String,String>();
+    protected int _batchDepth;
+    protected boolean _writeBehind, _applyingDelta;
+    protected final Signal<String> _modified = Signal.create(), _synced = Signal.create();
+
+    /** Map properties, indexed by the length of their prefix. */
+    protected Prefixed[][] _prefixIndex = new Prefixed[0][];
+
+    /** Emitters for properties that were changed while applying a delta. */
+    protected final List<Runnable> _deferred = new ArrayList<Runnable>();
+    protected final Set<String> _deferredNames = new LinkedHashSet<String>();
+    /** Primitive values which have changed since they were last persisted. */
+    protected final List<PrimitiveValue<?,?>> _dirtyValues = new ArrayList<PrimitiveValue<?,?>>();
+
+    /** The target number of elements stored in a single {@link ChunkedSet} chunk. */
+    protected static final int CHUNK_SIZE = 32;
+    protected static final String CHUNK_COUNT_SUFFIX = "_chunks";
+    protected static final String CHUNK_SUFFIX = "_chunk";
+
+    /** The approximate per-property overhead (in characters) of a delta on the wire. */
+    protected static final int DELTA_ENTRY_OVERHEAD = 4;
+
+    protected static final char PREFIXED_KEY_SEP_CHAR = PREFIXED_KEY_SEP.charAt(0);
+    protected static final Prefixed[] NO_PREFIXES = new Prefixed[0];
+    protected static final Object[] NO_LISTENERS = new Object[0];
+
     protected static final String SYNC_VERS_KEY = "syncv";
     protected static final String SYNC_MODS_KEY = "syncm";
     protected static final Set<String> SYNC_KEYS = new HashSet<String>(); static {
@@ -0,0 +1,244 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2012, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.syncdb;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import react.Slot;
+
+import playn.core.Asserts;
+import playn.core.util.Callback;
+
+/**
+ * A {@link Protocol.Session} which decides when to sync a database with the server. Local changes
+ * are coalesced: the database is synced once no changes have been made for the debounce interval,
+ * or once the oldest unsynced change has waited for the maximum delay (so that a property changed
+ * every frame is still synced), unless a priority property is changed, in which case it is synced
+ * immediately. At most one request is in flight at any time, and failed requests are retried with
+ * exponential backoff.
+ *
+ * <p>Don't forget to call {@link #update} on the scheduler every frame. Calling {@link #sync}
+ * requests that the database be synced as soon as possible.</p>
+ */
+public abstract class SyncScheduler extends Protocol.Session
+{
+    /** Statistics on the requests made by a scheduler. */
+    public static class Metrics {
+        /** The number of requests sent to the server. */
+        public int requests;
+
+        /** The number of requests that failed. */
+        public int failures;
+
+        /** The number of requests that succeeded. This excludes any request in flight. */
+        public int successes;
+
+        /** The number of requests that were cleanly accepted by the server. */
+        public int cleanSyncs;
+
+        /** The number of responses that required us to apply a delta from the server. */
+        public int deltas;
+
+        /** The round trip time of the most recent successful request, in milliseconds. */
+        public long lastLatency;
+
+        /** The longest round trip time of any successful request, in milliseconds. */
+        public long maxLatency;
+
+        /** The total round trip time of all successful requests, in milliseconds. */
+        public long totalLatency;
+
+        /** Returns the mean round trip time of successful requests, in milliseconds. */
+        public long averageLatency () {
+            return (successes == 0) ? 0 : totalLatency / successes;
+        }
+
+        @Override public String toString () {
+            return "[requests=" + requests + ", successes=" + successes + ", failures=" + failures +
+                ", cleanSyncs=" + cleanSyncs + ", deltas=" + deltas +
+                ", avgLatency=" + averageLatency() + ", maxLatency=" + maxLatency + "]";
+        }
+    }
+
+    /** The default time after the last local change before we sync, in milliseconds. */
+    public static final int DEFAULT_DEBOUNCE = 2000;
+
+    /** The default maximum time that a local change waits to be synced, in milliseconds. */
+    public static final int DEFAULT_MAX_DELAY = 10000;
+
+    /** The default delay before retrying the first failed request, in milliseconds. */
+    public static final int DEFAULT_MIN_BACKOFF = 1000;
+
+    /** The default maximum delay between retries of failed requests, in milliseconds. */
+    public static final int DEFAULT_MAX_BACKOFF = 5*60*1000;
+
+    public SyncScheduler (Protocol.Server server, SyncDB db) {
+        this(server, db, DEFAULT_CHUNK_SIZE);
+    }
+
+    public SyncScheduler (Protocol.Server server, SyncDB db, int chunkSize) {
+        super(server, chunkSize);
+        _db = db;
+        _db.modified().connect(new Slot<String>() {
+            @Override public void onEmit (String name) { noteChanged(name); }
+        });
+        // sync any changes that were made and not synced in a previous session
+        _wantSync = db.hasUnsyncedChanges();
+    }
+
+    /** Configures the time that must elapse after the last local change before we sync.
+     * @return this scheduler for convenient chaining. */
+    public SyncScheduler setDebounce (int millis) {
+        _debounce = millis;
+        return this;
+    }
+
+    /** Configures the maximum time that a local change waits to be synced while further changes
+     * continue to postpone the debounced sync. Zero disables the limit.
+     * @return this scheduler for convenient chaining. */
+    public SyncScheduler setMaxDelay (int millis) {
+        _maxDelay = millis;
+        return this;
+    }
+
+    /** Configures the delay before the first retry of a failed request, which doubles after each
+     * subsequent failure up to {@code maxMillis}.
+     * @return this scheduler for convenient chaining. */
+    public SyncScheduler setBackoff (int minMillis, int maxMillis) {
+        Asserts.checkArgument(minMillis > 0 && maxMillis >= minMillis, "Invalid backoff range.");
+        _minBackoff = minMillis;
+        _maxBackoff = maxMillis;
+        return this;
+    }
+
+    /** Configures the interval at which we sync (to obtain changes made on other clients) when
+     * there are no local changes. Zero, the default, disables polling.
+     * @return this scheduler for convenient chaining. */
+    public SyncScheduler setPollInterval (int millis) {
+        _pollInterval = millis;
+        return this;
+    }
+
+    /** Marks the specified property as a priority property. Changes to a priority property are
+     * synced immediately rather than waiting for the debounce interval. If the property is a map,
+     * changes to any of its entries are synced immediately.
+     * @return this scheduler for convenient chaining. */
+    public SyncScheduler addPriority (String name) {
+        _priority.add(name);
+        return this;
+    }
+
+    /** Returns statistics on the requests made by this scheduler. */
+    public Metrics metrics () {
+        return _metrics;
+    }
+
+    /** Returns true if a request is currently in flight. */
+    public boolean isSyncing () {
+        return _inFlight;
+    }
+
+    /** Requests that the supplied database (which must be this scheduler's database) be synced as
+     * soon as possible. The request will be sent on the next call to {@link #update} unless a
+     * request is already in flight, or we are backing off after a failure. */
+    @Override public void sync (SyncDB db) {
+        Asserts.checkArgument(db == _db, "Scheduler can only sync its own database.");
+        // if we're processing a response, this is a continuation of the sync: changes that were
+        // made while the request was in flight are still subject to debouncing
+        if (_responding) _wantSync = true;
+        else _urgent = true;
+    }
+
+    /** This should be called from {@link playn.core.Game#update}, or similar. */
+    public void update () {
+        long now = currentTime();
+        if (_inFlight) return;
+        // if the game is deferring a merge, wait for it to be applied
+        if (_mergeVersion != 0) {
+            if (_db.version() != _mergeVersion) return;
+            _mergeVersion = 0;
+        }
+        if (now < _retryTime) return;
+
+        boolean send = _urgent;
+        if (!send && (_wantSync || _db.hasUnsyncedChanges())) {
+            send = (now - _lastChange >= _debounce) ||
+                (_maxDelay > 0 && _firstChange > 0 && now - _firstChange >= _maxDelay);
+        }
+        if (!send && _pollInterval > 0) send = (now - _lastRequest >= _pollInterval);
+        if (send) send(now);
+    }
+
+    /** Returns the current time in milliseconds. */
+    protected long currentTime () {
+        return System.currentTimeMillis();
+    }
+
+    protected void noteChanged (String name) {
+        _lastChange = currentTime();
+        if (_firstChange == 0) _firstChange = _lastChange;
+        if (_priority.isEmpty()) return;
+        int pidx = name.indexOf(SyncDB.PREFIXED_KEY_SEP);
+        if (_priority.contains(pidx == -1 ? name : name.substring(0, pidx))) _urgent = true;
+    }
+
+    protected void send (final long sent) {
+        _inFlight = true;
+        _urgent = _wantSync = false;
+        _firstChange = 0;
+        _lastRequest = sent;
+        _metrics.requests++;
+        final Map<String,String> delta = _db.getDelta(_chunkSize);
+        _server.sendSync(_db.version(), delta, new Callback<Protocol.Response>() {
+            @Override public void onSuccess (Protocol.Response rsp) {
+                long latency = currentTime() - sent;
+                _metrics.lastLatency = latency;
+                _metrics.maxLatency = Math.max(_metrics.maxLatency, latency);
+                _metrics.totalLatency += latency;
+                _metrics.successes++;
+                if (rsp.cleanSync) _metrics.cleanSyncs++;
+                else _metrics.deltas++;
+                _inFlight = false;
+                _failures = 0;
+                _retryTime = 0;
+                _responding = true;
+                try {
+                    onSyncSuccess(_db, delta, rsp);
+                } finally {
+                    _responding = false;
+                }
+                // if the game deferred the merge, note that we're waiting for it
+                if (!rsp.cleanSync && _db.version() != rsp.version) _mergeVersion = rsp.version;
+            }
+            @Override public void onFailure (Throwable cause) {
+                _metrics.failures++;
+                _inFlight = false;
+                _failures++;
+                long backoff = Math.min((long)_minBackoff << Math.min(_failures-1, 30),
+                                        _maxBackoff);
+                _retryTime = currentTime() + backoff;
+                // retry the failed request once we've backed off
+                _wantSync = true;
+                onSyncFailure(_db, cause);
+            }
+        });
+    }
+
+    protected final SyncDB _db;
+    protected final Metrics _metrics = new Metrics();
+    protected final Set<String> _priority = new HashSet<String>();
+
+    protected int _debounce = DEFAULT_DEBOUNCE, _maxDelay = DEFAULT_MAX_DELAY, _pollInterval;
+    protected int _minBackoff = DEFAULT_MIN_BACKOFF, _maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    protected boolean _inFlight, _responding, _wantSync, _urgent;
+    protected int _failures, _mergeVersion;
+    /** The time of the most recent local change, and of the oldest change not yet sent. */
+    protected long _lastChange, _firstChange;
+    protected long _lastRequest, _retryTime;
+}
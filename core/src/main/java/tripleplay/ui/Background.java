@@ -33,6 +33,11 @@ public abstract class Background
     /** The (highest) depth at which background layers are rendered. May range from (-11, 10]. */
     public static final float BACKGROUND_DEPTH = -10f;
 
+    /** The cache of rasterized images shared by backgrounds that render into a canvas. By default
+     * it retains unused images until it holds more than 4MB of image data; use {@link
+     * BackgroundCache#setBudget} to change that. */
+    public static final BackgroundCache CACHE = new BackgroundCache(4*1024*1024);
+
     /**
      * Creates a null background (transparent).
      */
@@ -171,10 +176,18 @@ public abstract class Background
     protected abstract Instance instantiate (IDimension size);
 
     protected Layer createSolidLayer (final int color, final float width, final float height) {
+        return createSolidLayer(color, new Dimension(width, height));
+    }
+
+    /**
+     * Creates a layer that fills {@code size} with {@code color}. The size is read each time the
+     * layer is rendered, so the layer may be resized by updating the supplied dimension.
+     */
+    protected Layer createSolidLayer (final int color, final IDimension size) {
         return graphics().createImmediateLayer(new ImmediateLayer.Renderer() {
             public void render (Surface surf) {
                 if (alpha != null) surf.setAlpha(alpha);
-                surf.setFillColor(color).fillRect(0, 0, width, height);
+                surf.setFillColor(color).fillRect(0, 0, size.width(), size.height());
                 if (alpha != null) surf.setAlpha(1);
             }
         });
@@ -196,15 +209,36 @@ public abstract class Background
 
         /** Disposes of this background instance when it is no longer valid/needed. */
         public abstract void destroy ();
+
+        /** Resizes this instance in place to the supplied size, reusing its layers and images
+         * where possible. Returns false if this instance cannot be resized, in which case the
+         * caller should destroy it and instantiate the background anew. */
+        public boolean resize (IDimension size) {
+            return false;
+        }
     }
 
     protected static class LayerInstance extends Instance {
         public LayerInstance (Layer... layers) {
+            this(null, layers);
+        }
+
+        /**
+         * Creates an instance which is resized by updating {@code size} in place. The layers
+         * must read their size from the supplied dimension when they render.
+         */
+        public LayerInstance (Dimension size, Layer... layers) {
+            _size = size;
             _layers = layers;
             for (Layer layer : _layers) {
                 layer.setDepth(BACKGROUND_DEPTH);
             }
         }
+        @Override public boolean resize (IDimension size) {
+            if (_size == null) return false;
+            _size.setSize(size);
+            return true;
+        }
         @Override public void addTo (GroupLayer parent) {
             for (Layer layer : _layers) {
                 parent.add(layer);
@@ -215,6 +249,7 @@ public abstract class Background
                 layer.destroy();
             }
         }
+        protected final Dimension _size;
         protected Layer[] _layers;
     }
 }
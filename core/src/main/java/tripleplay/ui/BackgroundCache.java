@@ -0,0 +1,119 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.ui;
+
+import playn.core.Canvas;
+
+import tripleplay.util.ImageCache;
+
+/**
+ * Maintains rasterized background images, shared by all background instances that render an
+ * identical background at the same size. Instances {@link #acquire} an entry when they are
+ * created or resized and {@link Entry#release} it when they are destroyed. Unreferenced entries
+ * are retained and evicted per {@link ImageCache}.
+ */
+public class BackgroundCache extends ImageCache<BackgroundCache.Key>
+{
+    /** Renders a background into a canvas. */
+    public interface Renderer {
+        /** Renders the background into the region of {@code canvas} from the origin to {@code
+         * (width, height)}. The canvas will have been cleared. */
+        void render (Canvas canvas, float width, float height);
+    }
+
+    /** A rasterized background, shared by all instances that acquired it. */
+    public class Entry extends ImageCache<Key>.Entry {
+        protected Entry (Key key, Renderer renderer) {
+            super(key);
+            _renderer = renderer;
+        }
+
+        protected Key key () {
+            return _key;
+        }
+
+        @Override protected float width () {
+            return _key.width;
+        }
+
+        @Override protected float height () {
+            return _key.height;
+        }
+
+        @Override protected void render (Canvas canvas, float width, float height) {
+            _renderer.render(canvas, width, height);
+        }
+
+        protected final Renderer _renderer;
+    }
+
+    /**
+     * Creates a cache that retains unreferenced images until the cache holds more than {@code
+     * budget} bytes of image data.
+     */
+    public BackgroundCache (int budget) {
+        super(budget, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a reference to the rasterization of the background identified by {@code key} at the
+     * specified size, rendering it with {@code renderer} if it is not already cached. The key must
+     * implement {@link Object#equals} and {@link Object#hashCode} such that backgrounds which
+     * render identically have equal keys.
+     */
+    public Entry acquire (Object key, float width, float height, Renderer renderer) {
+        Key ekey = new Key(key, width, height);
+        Entry entry = (Entry)lookup(ekey);
+        if (entry == null) entry = new Entry(ekey, renderer);
+        retain(entry);
+        entry.image(); // rasterize eagerly, as the caller will display the image immediately
+        return entry;
+    }
+
+    /**
+     * Exchanges a reference to {@code entry} for a reference to the rasterization of the same
+     * background at a new size. If the caller holds the only reference to {@code entry} and its
+     * canvas is large enough (but not many times too large), the new size is rendered into that
+     * canvas, so that a background which is resized every frame does not create a canvas every
+     * frame.
+     */
+    public Entry resize (Entry entry, float width, float height, Renderer renderer) {
+        Key nkey = new Key(entry.key().key, width, height);
+        Entry nentry = (Entry)lookup(nkey);
+        if (nentry == null) transfer(entry, nentry = new Entry(nkey, renderer));
+        // acquire the new entry before releasing the old, in case they're the same
+        retain(nentry);
+        nentry.image();
+        entry.release();
+        return nentry;
+    }
+
+    /** Identifies a rasterization: a background key and a size. */
+    protected static class Key {
+        public final Object key;
+        public final float width, height;
+
+        public Key (Object key, float width, float height) {
+            this.key = key;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override public int hashCode () {
+            return 31 * (31 * key.hashCode() + (int)width) + (int)height;
+        }
+
+        @Override public boolean equals (Object other) {
+            if (!(other instanceof Key)) return false;
+            Key okey = (Key)other;
+            return key.equals(okey.key) && width == okey.width && height == okey.height;
+        }
+
+        @Override public String toString () {
+            return key + " @ " + width + "x" + height;
+        }
+    }
+}
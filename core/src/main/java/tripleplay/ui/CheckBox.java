@@ -65,7 +65,8 @@ public class CheckBox extends ClickableTextWidget<CheckBox>
 
     protected void updateCheckViz () {
         boolean isChecked = checked.get();
-        if (_tglyph.layer() != null) _tglyph.layer().setVisible(isChecked);
+        if (_tlayer != null) _tlayer.setVisible(isChecked);
+        if (_btext != null) _btext.layer.setVisible(isChecked);
         if (_ilayer != null) _ilayer.setVisible(isChecked);
     }
 
@@ -58,6 +58,9 @@ public class Constraints
                 psize.width = width;
                 psize.height = height;
             }
+            @Override public boolean fixesSize () {
+                return true;
+            }
         };
     }
 
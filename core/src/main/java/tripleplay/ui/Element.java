@@ -5,6 +5,8 @@
 
 package tripleplay.ui;
 
+import java.util.Map;
+
 import pythagoras.f.Dimension;
 import pythagoras.f.IDimension;
 import pythagoras.f.IPoint;
@@ -103,6 +105,7 @@ public abstract class Element<T extends Element<T>>
      */
     public T setStyles (Styles styles) {
         _styles = styles;
+        clearStyleCache();
         clearLayoutData();
         invalidate();
         return asT();
@@ -124,6 +127,7 @@ public abstract class Element<T extends Element<T>>
      */
     public T addStyles (Styles styles) {
         _styles = _styles.merge(styles);
+        clearStyleCache();
         clearLayoutData();
         invalidate();
         return asT();
@@ -194,6 +198,8 @@ public abstract class Element<T extends Element<T>>
             set(Flag.VISIBLE, visible);
             layer.setVisible(visible);
             invalidate();
+            // even if we're a layout boundary, our parent must lay out around our absence
+            if (_parent != null) _parent.invalidate();
         }
         return asT();
     }
@@ -233,6 +239,30 @@ public abstract class Element<T extends Element<T>>
         if (constraint != null) constraint.setElement(this);
         _constraint = constraint;
         invalidate();
+        if (_parent != null) _parent.invalidate();
+        return asT();
+    }
+
+    /**
+     * Returns whether this element is a layout boundary. When a layout boundary is invalidated,
+     * its parent is not: only the boundary (and its descendants) will be laid out again, at its
+     * current size. An element is a boundary if it is configured as one via {@link
+     * #setLayoutBoundary}, or if its constraint fixes its size (see {@link
+     * Layout.Constraint#fixesSize}).
+     */
+    public boolean isLayoutBoundary () {
+        return isSet(Flag.LAYOUT_BOUNDARY) || (_constraint != null && _constraint.fixesSize());
+    }
+
+    /**
+     * Configures whether this element is a layout boundary. This should only be used for elements
+     * whose size does not depend on their contents (for example, a group sized by its parent's
+     * layout, or a label with a fixed width and font that shows a frequently changing score),
+     * because changes in their preferred size will not be noticed by their parent.
+     * @return this element for call chaining.
+     */
+    public T setLayoutBoundary (boolean boundary) {
+        set(Flag.LAYOUT_BOUNDARY, boundary);
         return asT();
     }
 
@@ -258,6 +288,7 @@ public abstract class Element<T extends Element<T>>
      */
     protected void wasAdded (Elements<?> parent) {
         _parent = parent;
+        clearStyleCache();
         if (_hierarchyChanged != null) _hierarchyChanged.emit(Boolean.TRUE);
     }
 
@@ -266,10 +297,8 @@ public abstract class Element<T extends Element<T>>
      */
     protected void wasRemoved () {
         _parent = null;
-        if (_bginst != null) {
-            _bginst.destroy();
-            _bginst = null;
-        }
+        clearStyleCache();
+        clearBackground();
         if (_hierarchyChanged != null) _hierarchyChanged.emit(Boolean.FALSE);
     }
 
@@ -298,27 +327,55 @@ public abstract class Element<T extends Element<T>>
     protected void invalidate () {
         // note that our preferred size and background are no longer valid
         _preferredSize = null;
+        _measureCount = 0;
 
         if (isSet(Flag.VALID)) {
             set(Flag.VALID, false);
-            // invalidate our parent if we've got one
+            // invalidate our parent if we've got one; if we're a layout boundary, our size won't
+            // change, so our parent need only arrange for us to be validated
             if (_parent != null) {
-                _parent.invalidate();
+                if (isLayoutBoundary()) _parent.descendantInvalidated();
+                else _parent.invalidate();
             }
         }
     }
 
+    /**
+     * Called when a descendant of this element that is a layout boundary has been invalidated.
+     * Notes that this element must validate its children, without invalidating its own layout.
+     */
+    protected void descendantInvalidated () {
+        if (!isSet(Flag.DESCENDANT_INVALID)) {
+            set(Flag.DESCENDANT_INVALID, true);
+            if (_parent != null) _parent.descendantInvalidated();
+        }
+    }
+
     /**
      * Does whatever this element needs to validate itself. This may involve recomputing
      * visualizations, or laying out children, or anything else.
      */
     protected void validate () {
         if (!isSet(Flag.VALID)) {
-            layout();
+            layout(); // this validates our children
             set(Flag.VALID, true);
+            set(Flag.DESCENDANT_INVALID, false);
+            Interface.noteLayout();
+        } else if (isSet(Flag.DESCENDANT_INVALID)) {
+            set(Flag.DESCENDANT_INVALID, false);
+            // if we're not visible, our children will be laid out when we're next shown
+            if (isVisible()) validateChildren();
         }
     }
 
+    /**
+     * Validates this element's children, if it has any. Called when this element is valid, but
+     * one or more of its descendants are not.
+     */
+    protected void validateChildren () {
+        // nothing by default
+    }
+
     /**
      * Returns the root of this element's hierarchy, or null if the element is not currently added
      * to a hierarchy.
@@ -338,6 +395,8 @@ public abstract class Element<T extends Element<T>>
      * Sets or clears the specified flag.
      */
     protected void set (Flag flag, boolean on) {
+        // our enabled and selected state determine which style bindings apply to us
+        if (flag.affectsStyles && on != isSet(flag)) clearStyleCache();
         if (on) {
             _flags |= flag.mask;
         } else {
@@ -354,11 +413,33 @@ public abstract class Element<T extends Element<T>>
      * direction to the specified height.
      */
     protected IDimension preferredSize (float hintX, float hintY) {
-        if (_preferredSize == null) {
-            _preferredSize = computeSize(hintX, hintY);
-            if (_constraint != null) _constraint.adjustPreferredSize(_preferredSize, hintX, hintY);
+        // we retain the sizes computed for the last few distinct hints (and the layout data
+        // computed with them), as layouts often measure an element more than once
+        if (_measurements == null) _measurements = new Measurement[MAX_MEASUREMENTS];
+        Measurement m = null;
+        for (int ii = 0; ii < _measureCount; ii++) {
+            Measurement mm = _measurements[ii];
+            if (mm.hintX == hintX && mm.hintY == hintY) {
+                m = mm;
+                break;
+            }
+        }
+        if (m == null) {
+            Dimension size = computeSize(hintX, hintY);
+            if (_constraint != null) _constraint.adjustPreferredSize(size, hintX, hintY);
+            int idx = (_measureCount < MAX_MEASUREMENTS) ? _measureCount++ :
+                (_measureNext++ % MAX_MEASUREMENTS);
+            m = _measurements[idx];
+            if (m == null) m = _measurements[idx] = new Measurement();
+            m.hintX = hintX;
+            m.hintY = hintY;
+            m.size = size;
+            m.ldata = _ldata;
         }
-        return _preferredSize;
+        _preferredSize = m.size;
+        @SuppressWarnings("unchecked") LayoutData ldata = (LayoutData)m.ldata;
+        _ldata = ldata;
+        return m.size;
     }
 
     /**
@@ -381,6 +462,27 @@ public abstract class Element<T extends Element<T>>
         return asT();
     }
 
+    /**
+     * Instantiates {@code bg} at our current size and adds it to our layer.
+     */
+    protected void instantiateBackground (Background bg) {
+        _bginst = bg.instantiate(_size);
+        _bginst.addTo(layer);
+        _bgsrc = bg;
+        _bgsize.setSize(_size);
+    }
+
+    /**
+     * Destroys our background instance, if we have one.
+     */
+    protected void clearBackground () {
+        if (_bginst != null) {
+            _bginst.destroy();
+            _bginst = null;
+            _bgsrc = null;
+        }
+    }
+
     /**
      * Resolves the value for the supplied style. See {@link Styles#resolveStyle} for the gritty
      * details.
@@ -389,6 +491,16 @@ public abstract class Element<T extends Element<T>>
         return Styles.resolveStyle(this, style);
     }
 
+    /**
+     * Clears this element's cache of resolved style values. This is called automatically when our
+     * styles, enabled or selected state, or parent change, and for a group and all of its
+     * descendants when the group's stylesheet changes. An element whose style class or style
+     * defaults depend on other state must call this method when that state changes.
+     */
+    protected void clearStyleCache () {
+        if (_styleCache != null) _styleCache.clear();
+    }
+
     /**
      * Recomputes this element's preferred size.
      *
@@ -413,11 +525,18 @@ public abstract class Element<T extends Element<T>>
         float width = _size.width, height = _size.height;
         LayoutData ldata = (_ldata != null) ? _ldata : createLayoutData(width, height);
 
-        // prepare our background
-        if (_bginst != null) _bginst.destroy();
-        if (width > 0 && height > 0) {
-            _bginst = ldata.bg.instantiate(_size);
-            _bginst.addTo(layer);
+        // prepare our background, resizing our existing instance in place if we can
+        if (width <= 0 || height <= 0) {
+            clearBackground();
+        } else if (_bginst == null || _bgsrc != ldata.bg) {
+            clearBackground();
+            instantiateBackground(ldata.bg);
+        } else if (!_bgsize.equals(_size)) {
+            if (_bginst.resize(_size)) _bgsize.setSize(_size);
+            else {
+                _bginst.destroy();
+                instantiateBackground(ldata.bg);
+            }
         }
 
         // do our actual layout
@@ -443,6 +562,7 @@ public abstract class Element<T extends Element<T>>
      */
     protected void clearLayoutData () {
         _ldata = null;
+        for (int ii = 0; ii < _measureCount; ii++) _measurements[ii].ldata = null;
     }
 
     /**
@@ -471,6 +591,13 @@ public abstract class Element<T extends Element<T>>
         }
     }
 
+    /** A preferred size computed for a particular set of hints. */
+    protected static class Measurement {
+        public float hintX, hintY;
+        public Dimension size;
+        public Element<?>.LayoutData ldata;
+    }
+
     protected int _flags = Flag.VISIBLE.mask | Flag.ENABLED.mask;
     protected Elements<?> _parent;
     protected Dimension _preferredSize;
@@ -482,13 +609,37 @@ public abstract class Element<T extends Element<T>>
     protected LayoutData _ldata;
     protected Background.Instance _bginst;
 
+    /** The background from which {@link #_bginst} was instantiated, and its current size. */
+    protected Background _bgsrc;
+    protected final Dimension _bgsize = new Dimension();
+
+    /** Our recent measurements, the number of them that are valid, and the index of the next to
+     * be replaced once they're all in use. */
+    protected Measurement[] _measurements;
+    protected int _measureCount, _measureNext;
+
+    /** Style values resolved for this element, created on demand; see {@link Styles}. */
+    protected Map<Style<?>,Object> _styleCache;
+
+    /** The maximum number of measurements retained by an element. */
+    protected static final int MAX_MEASUREMENTS = 4;
+
     protected static enum Flag {
-        VALID(1 << 0), ENABLED(1 << 1), VISIBLE(1 << 2), SELECTED(1 << 3);
+        VALID(1 << 0), ENABLED(1 << 1, true), VISIBLE(1 << 2), SELECTED(1 << 3, true),
+        LAYOUT_BOUNDARY(1 << 4), DESCENDANT_INVALID(1 << 5);
 
         public final int mask;
 
+        /** Whether a change to this flag may change the values of an element's styles. */
+        public final boolean affectsStyles;
+
         Flag (int mask) {
+            this(mask, false);
+        }
+
+        Flag (int mask, boolean affectsStyles) {
             this.mask = mask;
+            this.affectsStyles = affectsStyles;
         }
     };
 }
@@ -57,6 +57,7 @@ public abstract class Elements<T extends Elements<T>> extends Element<T>
      */
     public T setStylesheet (Stylesheet sheet) {
         _sheet = sheet;
+        clearStyleCaches();
         return asT();
     }
 
@@ -143,6 +144,21 @@ public abstract class Elements<T extends Elements<T>> extends Element<T>
         return Collections.unmodifiableList(_children).iterator();
     }
 
+    @Override protected void validateChildren () {
+        for (Element<?> child : _children) child.validate();
+    }
+
+    /**
+     * Clears the resolved style caches of this group and all of its descendants.
+     */
+    protected void clearStyleCaches () {
+        clearStyleCache();
+        for (Element<?> child : _children) {
+            if (child instanceof Elements<?>) ((Elements<?>)child).clearStyleCaches();
+            else child.clearStyleCache();
+        }
+    }
+
     protected void didAdd (Element<?> child) {
         layer.add(child.layer);
         if (isAdded()) child.wasAdded(this);
@@ -171,6 +187,21 @@ public abstract class Elements<T extends Elements<T>> extends Element<T>
         // if we're added again, we'll be re-laid-out
     }
 
+    @Override protected T setSize (float width, float height) {
+        // a change in our size doesn't change the measurements of our children, so the metrics
+        // computed by our layout remain valid (and are reused if our size matches their hints)
+        Object metrics = _metrics;
+        super.setSize(width, height);
+        _metrics = metrics;
+        return asT();
+    }
+
+    @Override protected void invalidate () {
+        // the metrics computed by our layout are no longer valid
+        _metrics = null;
+        super.invalidate();
+    }
+
     @Override protected LayoutData createLayoutData (float hintX, float hintY) {
         return new LayoutData() {
             @Override public Dimension computeSize (float hintX, float hintY) {
@@ -180,6 +211,7 @@ public abstract class Elements<T extends Elements<T>> extends Element<T>
             @Override public void layout (float left, float top, float width, float height) {
                 // layout our children
                 _layout.layout(Elements.this, left, top, width, height);
+                _metrics = null;
                 // layout is only called as part of revalidation, so now we validate our children
                 for (Element<?> child : _children) child.validate();
             }
@@ -189,6 +221,11 @@ public abstract class Elements<T extends Elements<T>> extends Element<T>
     protected final Layout _layout;
     protected final List<Element<?>> _children = new ArrayList<Element<?>>();
 
+    /** The metrics saved by our layout when computing our size, and the hints with which they
+     * were computed. See {@link Layout#saveMetrics}. */
+    protected Object _metrics;
+    protected float _metricsHintX, _metricsHintY;
+
     protected final Signal<Element<?>> _childAdded = Signal.create();
     protected final Signal<Element<?>> _childRemoved = Signal.create();
 
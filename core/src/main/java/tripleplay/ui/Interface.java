@@ -39,9 +39,11 @@ public class Interface
      * "Paints" the elements in this interface. Must be called from {@link Game#update}.
      */
     public void paint (float alpha) {
+        int layouts = _layouts;
         for (int ii = 0, ll = _roots.size(); ii < ll; ii++) {
             _roots.get(ii).validate();
         }
+        _layoutCount = _layouts - layouts;
 
         // run any deferred actions
         if (!_actions.isEmpty()) {
@@ -57,6 +59,15 @@ public class Interface
         }
     }
 
+    /**
+     * Returns the number of elements that were laid out during the most recent call to {@link
+     * #paint}. This is useful for spotting invalidations that reach further than expected; see
+     * {@link Element#isLayoutBoundary}.
+     */
+    public int layoutCount () {
+        return _layoutCount;
+    }
+
     /**
      * Returns an iterable over the current roots. Don't delete from this iterable!
      */
@@ -107,7 +118,18 @@ public class Interface
         root.layer.destroy();
     }
 
+    /** Called by elements when they are laid out. This is counted globally, rather than per
+     * interface, so that elements needn't look up their interface; {@link #paint} notes how much
+     * the count grew while validating its roots. */
+    protected static void noteLayout () {
+        _layouts++;
+    }
+
     protected final List<Root> _roots = new ArrayList<Root>();
     protected final List<Root> _dispatch = new ArrayList<Root>();
     protected final List<Runnable> _actions = new ArrayList<Runnable>();
+    protected int _layoutCount;
+
+    /** The number of elements laid out, by all interfaces, since startup. */
+    protected static int _layouts;
 }
@@ -24,6 +24,13 @@ public abstract class Layout
         public void adjustPreferredSize (Dimension psize, float hintX, float hintY) {
             // no adjustments by default
         }
+
+        /** Returns true if this constraint fixes an element's preferred size, regardless of the
+         * element's contents. Such an element is a layout boundary; see {@link
+         * Element#isLayoutBoundary}. */
+        public boolean fixesSize () {
+            return false;
+        }
     }
 
     /**
@@ -48,6 +55,27 @@ public abstract class Layout
         return elem.preferredSize(hintX, hintY);
     }
 
+    /**
+     * Retains {@code metrics}, the measurements made by {@link #computeSize} for {@code elems}
+     * with the specified hints, so that {@link #layout} may obtain them via {@link #savedMetrics}
+     * rather than measuring again, if it lays out the elements at that size. Saved metrics are
+     * discarded when the elements are laid out or invalidated.
+     */
+    protected void saveMetrics (Elements<?> elems, float hintX, float hintY, Object metrics) {
+        elems._metrics = metrics;
+        elems._metricsHintX = hintX;
+        elems._metricsHintY = hintY;
+    }
+
+    /**
+     * Returns the metrics saved for {@code elems} by {@link #saveMetrics} with the specified hints,
+     * or null if none were saved with those hints.
+     */
+    protected Object savedMetrics (Elements<?> elems, float hintX, float hintY) {
+        return (elems._metricsHintX == hintX && elems._metricsHintY == hintY) ?
+            elems._metrics : null;
+    }
+
     protected void setBounds (Element<?> elem, float x, float y, float width, float height) {
         elem.setLocation(x, y);
         elem.setSize(width, height);
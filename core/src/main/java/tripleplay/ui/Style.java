@@ -178,6 +178,11 @@ public abstract class Style<V>
      * allowed space, it is truncated. Not inherited. */
     public static final Style<Boolean> TEXT_WRAP = newStyle(false, false);
 
+    /** Whether to render text via a {@link tripleplay.util.BitmapFont}, which draws each character
+     * from a shared pre-rendered image. This makes frequently changing text (scores, timers, etc.)
+     * cheap to update, but the text neither wraps nor honors text constraints. Not inherited. */
+    public static final Style<Boolean> BITMAP_TEXT = newStyle(false, false);
+
     /** The effect to use when rendering text, if any. Inherited. */
     public static final TextEffectStyle TEXT_EFFECT = new TextEffectStyle();
 
@@ -196,6 +201,10 @@ public abstract class Style<V>
     /** Indicates whether or not this style property is inherited. */
     public final boolean inherited;
 
+    /** A unique id assigned to this style when it is created. Ids are allocated densely from
+     * zero, so they can be used to index arrays of per-style data. */
+    public final int id;
+
     /**
      * Creates a text format based on the supplied element's stylings.
      */
@@ -241,6 +250,7 @@ public abstract class Style<V>
 
     protected Style (boolean inherited) {
         this.inherited = inherited;
+        this.id = _nextId++;
     }
 
     protected static <V> Style<V> newStyle (boolean inherited, final V defaultValue) {
@@ -259,4 +269,8 @@ public abstract class Style<V>
         case CENTER: return TextFormat.Alignment.CENTER;
         }
     }
+
+    /** The id to be assigned to the next style created. This must not have an initializer, as the
+     * styles above are created before the static initializers that follow them are run. */
+    protected static int _nextId;
 }
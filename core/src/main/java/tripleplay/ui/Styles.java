@@ -6,6 +6,8 @@
 package tripleplay.ui;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * An immutable collection of styles. Used in builder-style to add, replace or remove styles.
@@ -68,8 +70,7 @@ public final class Styles
         for (int ii = 0; ii < bindings.length; ii++) {
             nbindings[ii] = newBinding(bindings[ii], mode);
         }
-        // note that we take advantage of the fact that merge can handle unsorted bindings
-        return merge(nbindings);
+        return merge(sorted(nbindings), false);
     }
 
     /**
@@ -77,13 +78,13 @@ public final class Styles
      * state. The receiver is not modified.
      */
     public <V> Styles clear (Style.Mode mode, Style<V> style) {
-        int index = Arrays.binarySearch(_bindings, new Binding<V>(style));
+        int index = indexOf(style);
         if (index < 0) return this;
         @SuppressWarnings("unchecked") Binding<V> binding = (Binding<V>)_bindings[index];
         Binding<?>[] nbindings = new Binding<?>[_bindings.length];
         System.arraycopy(_bindings, 0, nbindings, 0, nbindings.length);
         nbindings[index] = binding.clear(mode);
-        return new Styles(nbindings);
+        return new Styles(nbindings, _mask, _offsets);
     }
 
     /**
@@ -91,53 +92,141 @@ public final class Styles
      * instances define a particular style, the supplied {@code styles} will take precedence.
      */
     public Styles merge (Styles styles) {
-        return merge(styles._bindings);
+        return merge(styles._bindings, false);
     }
 
-    <V> V get (Binding<V> key, Element<?> elem) {
-        int index = Arrays.binarySearch(_bindings, key);
+    <V> V get (Style<V> style, Element<?> elem) {
+        int index = indexOf(style);
         if (index < 0) return null;
         @SuppressWarnings("unchecked") Binding<V> binding = (Binding<V>)_bindings[index];
         return binding.get(elem);
     }
 
-    private Styles merge (Binding<?>[] obindings) {
-        if (obindings.length == 0) return this; // optimization
+    /**
+     * Returns an instance containing only the bindings in these styles for inherited styles.
+     */
+    Styles inherited () {
+        int count = 0;
+        for (Binding<?> binding : _bindings) if (binding.style.inherited) count++;
+        if (count == _bindings.length) return this;
+        Binding<?>[] nbindings = new Binding<?>[count];
+        int idx = 0;
+        for (Binding<?> binding : _bindings) {
+            if (binding.style.inherited) nbindings[idx++] = binding;
+        }
+        return new Styles(nbindings);
+    }
 
-        // determine which of the to-be-merged styles also exist in our styles
-        int[] dupidx = new int[obindings.length];
-        int dups = 0;
-        for (int ii = 0; ii < obindings.length; ii++) {
-            int idx = Arrays.binarySearch(_bindings, obindings[ii]);
-            if (idx >= 0) dups++;
-            dupidx[ii] = idx;
-        }
-
-        // copy the old bindings, merge any duplicated bindings, tack the rest on the end
-        Binding<?>[] nbindings = new Binding<?>[_bindings.length + obindings.length - dups];
-        System.arraycopy(_bindings, 0, nbindings, 0, _bindings.length);
-        int idx = _bindings.length;
-        for (int ii = 0; ii < obindings.length; ii++) {
-            int didx = dupidx[ii];
-            if (didx >= 0) {
-                @SuppressWarnings("unchecked") Binding<Object> nb =
-                    (Binding<Object>)nbindings[didx], ob = (Binding<Object>)obindings[ii];
-                nbindings[didx] = nb.merge(ob);
-            } else nbindings[idx++] = obindings[ii];
-        }
-        Arrays.sort(nbindings);
+    /**
+     * Returns an instance which resolves styles using these styles, falling back to the supplied
+     * {@code styles} where these styles define no value (for an element's current mode).
+     */
+    Styles withFallback (Styles styles) {
+        if (_bindings.length == 0) return styles;
+        return merge(styles._bindings, true);
+    }
 
-        return new Styles(nbindings);
+    /**
+     * Returns the index of the binding for the supplied style in {@link #_bindings}, or -1 if
+     * these styles contain no binding for it.
+     */
+    private int indexOf (Style<?> style) {
+        int id = style.id, word = id >>> 5;
+        if (word >= _mask.length) return -1;
+        int bits = _mask[word], bit = 1 << (id & 31);
+        return ((bits & bit) == 0) ? -1 : _offsets[word] + Integer.bitCount(bits & (bit - 1));
+    }
+
+    /**
+     * Merges the supplied bindings, which must be sorted by style id and unique, into ours. This
+     * requires a single pass over both sets of bindings.
+     */
+    private Styles merge (Binding<?>[] obindings, boolean fallback) {
+        if (obindings.length == 0) return this; // optimization
+
+        Binding<?>[] nbindings = new Binding<?>[_bindings.length + obindings.length];
+        int ii = 0, oo = 0, nn = 0;
+        while (ii < _bindings.length && oo < obindings.length) {
+            int id = _bindings[ii].style.id, oid = obindings[oo].style.id;
+            if (id < oid) nbindings[nn++] = _bindings[ii++];
+            else if (id > oid) nbindings[nn++] = obindings[oo++];
+            else nbindings[nn++] = combine(_bindings[ii++], obindings[oo++], fallback);
+        }
+        while (ii < _bindings.length) nbindings[nn++] = _bindings[ii++];
+        while (oo < obindings.length) nbindings[nn++] = obindings[oo++];
+        return new Styles(trim(nbindings, nn));
     }
 
     private Styles (Binding<?>[] bindings) {
         _bindings = bindings;
+
+        // note which styles we contain, and the index of the first binding in each word of the
+        // mask, so that we can map a style id to its binding without searching
+        int words = (bindings.length == 0) ? 0 : (bindings[bindings.length-1].style.id >>> 5) + 1;
+        _mask = new int[words];
+        _offsets = new int[words];
+        for (Binding<?> binding : bindings) {
+            int id = binding.style.id;
+            _mask[id >>> 5] |= 1 << (id & 31);
+        }
+        for (int ii = 1; ii < words; ii++) {
+            _offsets[ii] = _offsets[ii-1] + Integer.bitCount(_mask[ii-1]);
+        }
+    }
+
+    private Styles (Binding<?>[] bindings, int[] mask, int[] offsets) {
+        _bindings = bindings;
+        _mask = mask;
+        _offsets = offsets;
+    }
+
+    /**
+     * Sorts the supplied bindings by style id, combining any bindings for the same style (later
+     * bindings taking precedence).
+     */
+    private static Binding<?>[] sorted (Binding<?>[] bindings) {
+        Arrays.sort(bindings); // stable, so later bindings for the same style remain later
+        int nn = 0;
+        for (int ii = 0; ii < bindings.length; ii++) {
+            if (nn > 0 && bindings[nn-1].style == bindings[ii].style) {
+                bindings[nn-1] = combine(bindings[nn-1], bindings[ii], false);
+            } else bindings[nn++] = bindings[ii];
+        }
+        return trim(bindings, nn);
+    }
+
+    private static Binding<?>[] trim (Binding<?>[] bindings, int count) {
+        if (count == bindings.length) return bindings;
+        Binding<?>[] nbindings = new Binding<?>[count];
+        System.arraycopy(bindings, 0, nbindings, 0, count);
+        return nbindings;
+    }
+
+    private static Binding<?> combine (Binding<?> ours, Binding<?> theirs, boolean fallback) {
+        @SuppressWarnings("unchecked") Binding<Object> nb = (Binding<Object>)ours,
+            ob = (Binding<Object>)theirs;
+        return fallback ? nb.withFallback(ob) : nb.merge(ob);
     }
 
     static <V> V resolveStyle (Element<?> element, Style<V> style) {
+        // if we've already resolved this style for this element, we're done
+        Map<Style<?>,Object> cache = element._styleCache;
+        if (cache == null) cache = element._styleCache = new HashMap<Style<?>,Object>();
+        else {
+            Object cached = cache.get(style);
+            if (cached != null) {
+                @SuppressWarnings("unchecked") V value = (cached == NULL) ? null : (V)cached;
+                return value;
+            }
+        }
+        V value = lookupStyle(element, style);
+        cache.put(style, (value == null) ? NULL : value);
+        return value;
+    }
+
+    static <V> V lookupStyle (Element<?> element, Style<V> style) {
         // first check for the style configured directly on the element
-        Binding<V> key = new Binding<V>(style);
-        V value = element.styles().<V>get(key, element);
+        V value = element.styles().<V>get(style, element);
         if (value != null) return value;
 
         // now check for the style in the appropriate stylesheets
@@ -145,7 +234,7 @@ public final class Styles
         for (; group != null; group = group.parent()) {
             Stylesheet sheet = group.stylesheet();
             if (sheet == null) continue;
-            value = sheet.<V>get(key, element.getStyleClass(), element);
+            value = sheet.<V>get(style, element.getStyleClass(), element);
             if (value != null) return value;
         }
 
@@ -183,16 +272,36 @@ public final class Styles
         }
 
         public V get (Element<?> elem) {
+            return select(elem.isEnabled(), elem.isSelected());
+        }
+
+        /**
+         * Returns a binding which yields our value for an element's mode, or {@code fallback}'s
+         * value where we have none. The values are resolved now, for each combination of enabled
+         * and selected, so that looking up the returned binding needs no further probes.
+         */
+        public Binding<V> withFallback (Binding<V> fallback) {
+            return new Binding<V>(style, resolve(fallback, true, false),
+                                  resolve(fallback, false, false), resolve(fallback, true, true),
+                                  resolve(fallback, false, true));
+        }
+
+        protected V select (boolean enabled, boolean selected) {
             // prioritize as: disabled_selected, disabled, selected, default
-            if (elem.isEnabled()) {
-                if (elem.isSelected() && _selectedV != null) return _selectedV;
+            if (enabled) {
+                if (selected && _selectedV != null) return _selectedV;
             } else {
-                if (elem.isSelected() && _disSelectedV != null) return _disSelectedV;
+                if (selected && _disSelectedV != null) return _disSelectedV;
                 if (_disabledV != null) return _disabledV;
             }
             return _defaultV;
         }
 
+        protected V resolve (Binding<V> fallback, boolean enabled, boolean selected) {
+            V value = select(enabled, selected);
+            return (value != null) ? value : fallback.select(enabled, selected);
+        }
+
         public Binding<V> merge (Binding<V> other) {
             return new Binding<V>(style,
                                   merge(_defaultV, other._defaultV),
@@ -213,10 +322,8 @@ public final class Styles
         }
 
         @Override public int compareTo (Binding<V> other) {
-            if (this.style == other.style) return 0;
-            int hc = this.style.hashCode(), ohc = other.style.hashCode();
-            assert(hc != ohc);
-            return (hc < ohc) ? -1 : 1;
+            int id = this.style.id, oid = other.style.id;
+            return (id < oid) ? -1 : ((id == oid) ? 0 : 1);
         }
 
         private V merge (V ours, V theirs) {
@@ -226,7 +333,17 @@ public final class Styles
         protected V _defaultV, _disabledV, _selectedV, _disSelectedV;
     }
 
-    protected Binding<?>[] _bindings;
+    /** Our bindings, sorted by style id. */
+    protected final Binding<?>[] _bindings;
+
+    /** A bit set of the ids of the styles for which we have bindings. */
+    protected final int[] _mask;
+
+    /** The index in {@link #_bindings} of the first binding in each word of {@link #_mask}. */
+    protected final int[] _offsets;
 
     protected static final Styles _noneSingleton = new Styles(new Binding<?>[0]);
+
+    /** Stands in for a null style value in an element's resolved style cache. */
+    protected static final Object NULL = new Object();
 }
@@ -55,28 +55,37 @@ public class Stylesheet
     }
 
     /**
-     * Looks up the style for the supplied key and (concrete) element class. If the style is
-     * inherited, the style may be fetched from the configuration for a supertype of the supplied
-     * element type. Returns null if no configuration can be found.
+     * Looks up the value of the supplied style for the supplied (concrete) element class. If the
+     * style is inherited, the style may be fetched from the configuration for a supertype of the
+     * supplied element type. Returns null if no configuration can be found.
      */
-    <V> V get (Styles.Binding<V> key, Class<?> eclass, Element<?> elem) {
-        Styles styles = _styles.get(eclass);
-        V value = (styles == null) ? null : styles.<V>get(key, elem);
-        if (value != null) return value;
+    <V> V get (Style<V> style, Class<?> eclass, Element<?> elem) {
+        return flattened(eclass).<V>get(style, elem);
+    }
 
-        // if the style is not inherited, or we're already checking for Element.class, then we've
-        // done all the searching we can
-        if (!key.style.inherited || eclass == Element.class) return null;
+    /**
+     * Returns the styles that apply to the supplied element class: those configured for the class
+     * itself, falling back to the inherited styles configured for each of its supertypes (up to
+     * {@link Element}). These are computed when first needed for a class, and retained.
+     */
+    protected Styles flattened (Class<?> eclass) {
+        Styles styles = _flattened.get(eclass);
+        if (styles != null) return styles;
 
-        // otherwise check our parent class
-        Class<?> parent = eclass.getSuperclass();
-        if (parent == null) {
-            // TEMP: avoid confusion while PlayN POM disables class metadata by default
-            throw new RuntimeException(
-                "Your PlayN application must not be compiled with -XdisableClassMetadata. " +
-                "It breaks TriplePlay stylesheets.");
+        styles = _styles.get(eclass);
+        if (styles == null) styles = Styles.none();
+        if (eclass != Element.class) {
+            Class<?> parent = eclass.getSuperclass();
+            if (parent == null) {
+                // TEMP: avoid confusion while PlayN POM disables class metadata by default
+                throw new RuntimeException(
+                    "Your PlayN application must not be compiled with -XdisableClassMetadata. " +
+                    "It breaks TriplePlay stylesheets.");
+            }
+            styles = styles.withFallback(flattened(parent).inherited());
         }
-        return this.<V>get(key, parent, elem);
+        _flattened.put(eclass, styles);
+        return styles;
     }
 
     private Stylesheet (Map<Class<?>, Styles> styles) {
@@ -84,4 +93,7 @@ public class Stylesheet
     }
 
     protected final Map<Class<?>, Styles> _styles;
+
+    /** The styles for each element class, flattened lazily; see {@link #flattened}. */
+    protected final Map<Class<?>, Styles> _flattened = new HashMap<Class<?>, Styles>();
 }
@@ -16,7 +16,11 @@ import playn.core.TextLayout;
 import static playn.core.PlayN.graphics;
 
 import react.Slot;
+import tripleplay.util.BitmapFont;
 import tripleplay.util.EffectRenderer;
+import tripleplay.util.GlyphAtlas;
+import tripleplay.util.TextCache;
+import tripleplay.util.TextConfig;
 
 /**
  * An abstract base class for widgets that contain text.
@@ -74,7 +78,7 @@ public abstract class TextWidget<T extends TextWidget<T>> extends Widget<T>
 
     @Override protected void wasRemoved () {
         super.wasRemoved();
-        _tglyph.destroy();
+        clearTextLayer();
         if (_ilayer != null) {
             _ilayer.destroy();
             _ilayer = null;
@@ -96,6 +100,13 @@ public abstract class TextWidget<T extends TextWidget<T>> extends Widget<T>
         public final TextLayout text;
         public final EffectRenderer renderer;
 
+        /** Our laid out text, obtained from (but not yet retained by) the text cache. */
+        public final TextCache.Entry entry;
+
+        /** The font via which our text is rendered, if we're rendering it as bitmap text, in
+         * which case our text is not laid out and {@link #text} is null. */
+        public final BitmapFont bitmap;
+
         public TextLayoutData (float hintX, float hintY) {
             String curtext = text();
             boolean haveText = (curtext != null && curtext.length() > 0);
@@ -123,13 +134,29 @@ public abstract class TextWidget<T extends TextWidget<T>> extends Widget<T>
             if (haveText) {
                 renderer = Style.createEffectRenderer(TextWidget.this);
                 TextFormat format = Style.createTextFormat(TextWidget.this);
-                if (hintX > 0 && wrap) format = format.withWrapWidth(hintX);
-                // TODO: should we do something with a y-hint?
-                text = graphics().layoutText(curtext, format);
+                if (resolveStyle(Style.BITMAP_TEXT)) {
+                    bitmap = new TextConfig(format, color, renderer).bitmapFont();
+                    entry = null;
+                    text = null;
+                } else {
+                    bitmap = null;
+                    if (hintX > 0 && wrap) format = format.withWrapWidth(hintX);
+                    // TODO: should we do something with a y-hint?
+                    entry = CACHE.get(curtext, format, renderer, color);
+                    text = entry.layout;
+                }
             } else {
                 renderer = null;
+                bitmap = null;
+                entry = null;
                 text = null;
             }
+            _string = curtext;
+        }
+
+        /** Returns true if we have text to display. */
+        public boolean haveText () {
+            return text != null || bitmap != null;
         }
 
         @Override public Dimension computeSize (float hintX, float hintY) {
@@ -142,14 +169,14 @@ public abstract class TextWidget<T extends TextWidget<T>> extends Widget<T>
                 case LEFT:
                 case RIGHT:
                     size.width += icon.width();
-                    if (text != null) size.width += iconGap;
+                    if (haveText()) size.width += iconGap;
                     size.height = Math.max(size.height, icon.height());
                     break;
                 case ABOVE:
                 case BELOW:
                     size.width = Math.max(size.width, icon.width());
                     size.height += icon.height();
-                    if (text != null) size.height += iconGap;
+                    if (haveText()) size.height += iconGap;
                     break;
                 }
             }
@@ -194,18 +221,18 @@ public abstract class TextWidget<T extends TextWidget<T>> extends Widget<T>
                 _ilayer = null;
             }
 
-            if (text != null) {
+            if (haveText()) {
                 updateTextGlyph(tx, ty, width-usedWidth, height-usedHeight);
             } else {
-                _tglyph.destroy();
+                clearTextLayer();
             }
         }
 
         // this is broken out so that subclasses can extend this action
         protected void addTextSize (Dimension size) {
-            if (_constraint instanceof Constraints.TextConstraint) {
+            if (bitmap == null && _constraint instanceof Constraints.TextConstraint) {
                 ((Constraints.TextConstraint)_constraint).addTextSize(size, text);
-            } else if (text != null) {
+            } else if (haveText()) {
                 size.width += textWidth();
                 size.height += textHeight();
             }
@@ -216,28 +243,94 @@ public abstract class TextWidget<T extends TextWidget<T>> extends Widget<T>
             float twidth = textWidth(), theight = textHeight();
             if (twidth <= 0 || theight <= 0) return;
 
-            // make sure our canvas layer is big enough to hold our text
-            _tglyph.prepare(twidth, theight);
+            // bitmap text is drawn character by character, so there's nothing to rasterize
+            if (bitmap != null) {
+                clearTextImage();
+                if (_btext != null && _btext.font() == bitmap) _btext.setText(_string);
+                else {
+                    clearBitmapText();
+                    layer.add((_btext = bitmap.createText(_string)).layer);
+                }
+                _btext.layer.setTranslation(
+                    MathUtil.ifloor(tx + halign.offset(twidth, availWidth)),
+                    MathUtil.ifloor(ty + valign.offset(theight, availHeight)));
+                return;
+            }
+            clearBitmapText();
+
+            // obtain our rendered text from the cache, acquiring the new entry before releasing
+            // the old one in case they're the same
+            TextCache.Entry tentry = CACHE.acquire(entry);
+            if (_tentry != null) _tentry.release();
+            _tentry = tentry;
+            Image image = tentry.image();
 
             // we do some extra fiddling here because one may want to constrain the height of a
             // button such that the text is actually cut off on the top and/or bottom because fonts
             // may have lots of whitespace above or below and you're trying to squeeze the text
             // snugly into your button
             float oy = valign.offset(theight, availHeight);
-            if (oy >= 0) {
-                renderer.render(_tglyph.canvas(), text, color, 0, 0);
-            } else {
-                renderer.render(_tglyph.canvas(), text, color, 0, oy);
+            if (oy < 0) {
+                image = image.subImage(0, -oy, twidth, theight + oy);
                 oy = 0;
             }
-            _tglyph.layer().setTranslation(MathUtil.ifloor(tx + halign.offset(twidth, availWidth)),
-                                           MathUtil.ifloor(ty + oy));
+            if (_tlayer == null) layer.add(_tlayer = graphics().createImageLayer(image));
+            else _tlayer.setImage(image);
+            _tlayer.setTranslation(MathUtil.ifloor(tx + halign.offset(twidth, availWidth)),
+                                   MathUtil.ifloor(ty + oy));
         }
 
-        protected float textWidth () { return renderer.adjustWidth(text.width()); }
-        protected float textHeight () { return renderer.adjustHeight(text.height()); }
+        protected float textWidth () {
+            return (bitmap != null) ? bitmap.width(_string) : renderer.adjustWidth(text.width());
+        }
+        protected float textHeight () {
+            return (bitmap != null) ? bitmap.height() : renderer.adjustHeight(text.height());
+        }
+
+        /** Our text, retained for rendering via our bitmap font. */
+        protected final String _string;
     }
 
-    protected final Glyph _tglyph = new Glyph();
+    /**
+     * Destroys our text layers and releases our rendered text, if we have them.
+     */
+    protected void clearTextLayer () {
+        clearTextImage();
+        clearBitmapText();
+    }
+
+    /**
+     * Destroys the layer displaying our rendered text and releases that text, if we have them.
+     */
+    protected void clearTextImage () {
+        if (_tlayer != null) {
+            _tlayer.destroy();
+            _tlayer = null;
+        }
+        if (_tentry != null) {
+            _tentry.release();
+            _tentry = null;
+        }
+    }
+
+    /**
+     * Destroys the layer displaying our text via a bitmap font, and releases the font, if we have
+     * them.
+     */
+    protected void clearBitmapText () {
+        if (_btext != null) {
+            _btext.destroy();
+            _btext = null;
+        }
+    }
+
+    /** The laid out and rendered text shared by all text widgets. Text is rasterized into pages of
+     * an atlas, so that a screen full of text widgets is drawn with few texture binds. */
+    public static final TextCache CACHE =
+        new TextCache(2*1024*1024, 1024, new GlyphAtlas(512, 512));
+
+    protected ImageLayer _tlayer;
+    protected TextCache.Entry _tentry;
+    protected BitmapFont.Text _btext;
     protected ImageLayer _ilayer;
 }
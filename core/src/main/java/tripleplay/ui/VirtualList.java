@@ -0,0 +1,381 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.ui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import playn.core.GroupLayer;
+import playn.core.PlayN;
+
+import pythagoras.f.Dimension;
+import pythagoras.f.IDimension;
+
+/**
+ * A vertically scrolling list of rows, which are supplied on demand by an {@link Adapter}. Only
+ * the rows within the visible window (plus an overscan margin above and below it) are created, laid
+ * out and rendered, so a list may contain many thousands of rows. Rows that leave the window are
+ * hidden and recycled to display other rows of the same type.
+ *
+ * <p>Rows may vary in height. Rows that have not yet been laid out are assumed to be of an
+ * estimated height (by default, the height of the first row), and an index of row heights maps
+ * scroll offsets to rows in logarithmic time. The list's children are managed by the list, and
+ * must not be added or removed directly.</p>
+ *
+ * <p>The list's preferred height is that of all of its rows, so it should generally be sized by
+ * its parent, by stretching or via a constraint.</p>
+ */
+public class VirtualList extends Elements<VirtualList>
+{
+    /** Supplies the rows displayed by a list. */
+    public static abstract class Adapter {
+        /** Returns the number of rows in the list. */
+        public abstract int rowCount ();
+
+        /** Returns the type of the row at the specified index. A row element is only recycled to
+         * display rows of the same type as the row for which it was created. */
+        public int rowType (int index) {
+            return 0;
+        }
+
+        /** Creates an element to display rows of the specified type. */
+        public abstract Element<?> createRow (int type);
+
+        /** Configures {@code row}, which was created for rows of this row's type, to display the
+         * row at the specified index. */
+        public abstract void bindRow (Element<?> row, int index);
+    }
+
+    /**
+     * Creates a list that displays the rows supplied by {@code adapter}.
+     */
+    public VirtualList (Adapter adapter) {
+        super(new AbsoluteLayout()); // not used, we do our own layout
+        _adapter = adapter;
+    }
+
+    /**
+     * Returns the offset, from the top of the first row, of the top of the visible window.
+     */
+    public float scrollOffset () {
+        return _scroll;
+    }
+
+    /**
+     * Scrolls the list such that the top of the visible window is at the specified offset from
+     * the top of the first row. The offset is clamped to the scrollable range when the list is
+     * next laid out.
+     */
+    public VirtualList scrollTo (float offset) {
+        if (offset != _scroll) {
+            _scroll = offset;
+            invalidateRows();
+        }
+        return this;
+    }
+
+    /**
+     * Scrolls the list by the specified amount.
+     */
+    public VirtualList scrollBy (float delta) {
+        return scrollTo(_scroll + delta);
+    }
+
+    /**
+     * Scrolls the list such that the top of the specified row is at the top of the window. If the
+     * list has not yet been laid out, it is scrolled once it is.
+     */
+    public VirtualList scrollToRow (int index) {
+        if (_index != null) return scrollTo(_index.offset(index));
+        _scrollRow = index;
+        return this;
+    }
+
+    /**
+     * Returns the (estimated, for rows that have not yet been shown) height of all of our rows.
+     */
+    public float contentHeight () {
+        return (_index == null) ? 0 : _index.total();
+    }
+
+    /**
+     * Configures the height assumed for rows that have not yet been laid out. By default, the
+     * height of the first row is used.
+     */
+    public VirtualList setEstimatedRowHeight (float height) {
+        _estimate = height;
+        return dataChanged();
+    }
+
+    /**
+     * Configures the distance above and below the visible window within which rows are laid out
+     * in advance of their being scrolled into view.
+     */
+    public VirtualList setOverscan (float overscan) {
+        _overscan = overscan;
+        invalidateRows();
+        return this;
+    }
+
+    /**
+     * Notes that rows have been appended to those supplied by our adapter, and that the existing
+     * rows are unchanged. The heights measured for the existing rows are retained.
+     */
+    public VirtualList rowsAppended () {
+        invalidate();
+        return this;
+    }
+
+    /**
+     * Notes that the rows supplied by our adapter have changed. All rows are rebound and
+     * remeasured as they are next shown, and the heights measured for them are discarded.
+     */
+    public VirtualList dataChanged () {
+        _index = null;
+        for (Row row : _active.values()) row.bound = false;
+        _widest = 0;
+        invalidate();
+        return this;
+    }
+
+    @Override protected GroupLayer createLayer () {
+        // clip our rows to our bounds; the size is updated when we're laid out
+        return PlayN.graphics().createGroupLayer(1, 1);
+    }
+
+    @Override protected LayoutData createLayoutData (float hintX, float hintY) {
+        return new LayoutData() {
+            @Override public Dimension computeSize (float hintX, float hintY) {
+                return new Dimension(hintX > 0 ? hintX : _widest, contentHeight());
+            }
+
+            @Override public void layout (float left, float top, float width, float height) {
+                ((GroupLayer.Clipped)layer).setSize(_size.width, _size.height);
+                layoutRows(left, top, width, height);
+                for (Row row : _active.values()) row.elem.validate();
+            }
+        };
+    }
+
+    /**
+     * Notes that our rows must be laid out anew, without invalidating our size.
+     */
+    protected void invalidateRows () {
+        if (isSet(Flag.VALID)) {
+            set(Flag.VALID, false);
+            if (_parent != null) _parent.descendantInvalidated();
+        }
+    }
+
+    /**
+     * Binds and positions the rows within the visible window, and recycles the rest.
+     */
+    protected void layoutRows (float left, float top, float width, float height) {
+        int count = _adapter.rowCount();
+        if (_index == null) {
+            float estimate = _estimate;
+            if (estimate <= 0 && count > 0) estimate = measure(activate(0), width);
+            _index = new HeightIndex(null, count, estimate);
+        } else if (_index.size() != count) {
+            // retain the heights of the rows we have, assuming that rows were appended or removed
+            // at the end; dataChanged discards them if not
+            _index = new HeightIndex(_index, count, _index.estimate);
+        }
+        if (_scrollRow >= 0) {
+            _scroll = _index.offset(_scrollRow);
+            _scrollRow = -1;
+        }
+
+        // lay out the rows in the window, reusing those that were already in it
+        Map<Integer,Row> active = _active;
+        _active = _spare;
+        _spare = active;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            float total = _index.total(), max = Math.max(0, total - height);
+            boolean pinned = (_scroll >= max);
+            _scroll = Math.max(0, Math.min(_scroll, max));
+            placeRows(count, left, top, width, height);
+            // if we're scrolled to the bottom and the rows we measured have changed our total
+            // height, scroll to the new bottom, so that the last row remains fully in view
+            if (!pinned || _index.total() == total) break;
+            _scroll = Float.MAX_VALUE;
+            _spare.putAll(_active);
+            _active.clear();
+        }
+
+        // recycle the rows that are no longer in the window
+        for (Row row : _spare.values()) recycle(row);
+        _spare.clear();
+    }
+
+    /**
+     * Hides the supplied row and adds it to the pool for its type.
+     */
+    protected void recycle (Row row) {
+        row.elem.layer.setVisible(false);
+        row.bound = false;
+        List<Row> pool = _pool.get(row.type);
+        if (pool == null) _pool.put(row.type, pool = new ArrayList<Row>());
+        pool.add(row);
+    }
+
+    /**
+     * Positions the rows in the window at our current scroll offset, activating them as needed.
+     */
+    protected void placeRows (int count, float left, float top, float width, float height) {
+        float wtop = Math.max(0, _scroll - _overscan), wbottom = _scroll + height + _overscan;
+        int first = _index.find(wtop);
+        float y = _index.offset(first);
+        for (int ii = first; ii < count && y < wbottom; ii++) {
+            Row row = activate(ii);
+            float rheight = measure(row, width);
+            row.elem.setLocation(left, top + y - _scroll);
+            row.elem.setSize(width, rheight);
+            y += rheight;
+        }
+    }
+
+    /**
+     * Returns the row for the specified index, reusing the row already displaying it, a recycled
+     * row, or a newly created one, in that order of preference. The row is bound and active.
+     */
+    protected Row activate (int index) {
+        Row row = _active.remove(index);
+        if (row == null) row = _spare.remove(index);
+        // if our data has changed, the row at this index may now be of a different type
+        if (row != null && !row.bound && row.type != _adapter.rowType(index)) {
+            recycle(row);
+            row = null;
+        }
+        if (row == null) {
+            int type = _adapter.rowType(index);
+            List<Row> pool = _pool.get(type);
+            if (pool != null && !pool.isEmpty()) {
+                row = pool.remove(pool.size()-1);
+                row.elem.layer.setVisible(true);
+            } else {
+                row = new Row(_adapter.createRow(type), type);
+                // we manage our children directly, so as not to invalidate ourselves
+                _children.add(row.elem);
+                didAdd(row.elem);
+            }
+        }
+        if (!row.bound || row.index != index) {
+            _adapter.bindRow(row.elem, index);
+            row.index = index;
+            row.bound = true;
+        }
+        _active.put(index, row);
+        return row;
+    }
+
+    /**
+     * Measures the supplied row at the specified width, and records its height in our index.
+     */
+    protected float measure (Row row, float width) {
+        IDimension size = row.elem.preferredSize(width, 0);
+        _widest = Math.max(_widest, size.width());
+        if (_index != null) _index.set(row.index, size.height());
+        return size.height();
+    }
+
+    /** An element displaying a row, and the type and index of that row. */
+    protected static class Row {
+        public final Element<?> elem;
+        public final int type;
+        public int index;
+        public boolean bound;
+
+        public Row (Element<?> elem, int type) {
+            this.elem = elem;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Maintains the heights of our rows in a binary indexed tree, so that the offset of a row and
+     * the row at an offset may be found in logarithmic time.
+     */
+    protected static class HeightIndex {
+        /** The height assumed for rows that have not been measured. */
+        public final float estimate;
+
+        /** Creates an index of {@code count} rows, with the heights of those in {@code old}, if
+         * any, and the estimated height for the rest. */
+        public HeightIndex (HeightIndex old, int count, float estimate) {
+            this.estimate = estimate;
+            _heights = new float[count];
+            _tree = new float[count+1];
+            int kept = (old == null) ? 0 : Math.min(count, old.size());
+            for (int ii = 0; ii < count; ii++) {
+                float height = (ii < kept) ? old._heights[ii] : estimate;
+                _heights[ii] = height;
+                // build the tree in linear time by pushing each node's sum to its parent
+                _tree[ii+1] += height;
+                int parent = (ii+1) + ((ii+1) & -(ii+1));
+                if (parent <= count) _tree[parent] += _tree[ii+1];
+            }
+        }
+
+        public int size () {
+            return _heights.length;
+        }
+
+        /** Updates the height of the specified row. */
+        public void set (int index, float height) {
+            float delta = height - _heights[index];
+            if (delta == 0) return;
+            _heights[index] = height;
+            for (int ii = index+1; ii < _tree.length; ii += ii & -ii) _tree[ii] += delta;
+        }
+
+        /** Returns the offset of the top of the specified row. */
+        public float offset (int index) {
+            float offset = 0;
+            for (int ii = Math.min(index, size()); ii > 0; ii -= ii & -ii) offset += _tree[ii];
+            return offset;
+        }
+
+        /** Returns the total height of all rows. */
+        public float total () {
+            return offset(size());
+        }
+
+        /** Returns the index of the row that contains the specified offset, clamped to the range
+         * of our rows. */
+        public int find (float offset) {
+            int pos = 0, count = size();
+            for (int step = Integer.highestOneBit(Math.max(count, 1)); step > 0; step >>= 1) {
+                if (pos + step <= count && _tree[pos + step] <= offset) {
+                    pos += step;
+                    offset -= _tree[pos];
+                }
+            }
+            return Math.max(0, Math.min(pos, count-1));
+        }
+
+        protected final float[] _heights, _tree;
+    }
+
+    /** The maximum number of times we lay out our rows to keep the last row in view. */
+    protected static final int MAX_PASSES = 3;
+
+    protected final Adapter _adapter;
+    protected HeightIndex _index;
+    protected float _scroll, _estimate, _overscan = 50, _widest;
+
+    /** A row to which to scroll once we're laid out, or -1. */
+    protected int _scrollRow = -1;
+
+    /** The rows in the window, by index, and a spare map used when laying out. */
+    protected Map<Integer,Row> _active = new HashMap<Integer,Row>();
+    protected Map<Integer,Row> _spare = new HashMap<Integer,Row>();
+
+    /** Recycled rows, by type. */
+    protected final Map<Integer,List<Row>> _pool = new HashMap<Integer,List<Row>>();
+}
@@ -5,9 +5,11 @@
 
 package tripleplay.ui.bgs;
 
+import pythagoras.f.Dimension;
 import pythagoras.f.IDimension;
 
 import playn.core.ImmediateLayer;
+import playn.core.Layer;
 import playn.core.Surface;
 import static playn.core.PlayN.graphics;
 
@@ -24,10 +26,11 @@ public class BeveledBackground extends Background
         _brColor = brColor;
     }
 
-    @Override protected Instance instantiate (final IDimension size) {
-        return new LayerInstance(graphics().createImmediateLayer(new ImmediateLayer.Renderer() {
+    @Override protected Instance instantiate (IDimension size) {
+        final Dimension isize = new Dimension(size);
+        Layer layer = graphics().createImmediateLayer(new ImmediateLayer.Renderer() {
             public void render (Surface surf) {
-                float width = size.width(), height = size.height(), bot = height, right = width;
+                float width = isize.width, height = isize.height, bot = height, right = width;
                 if (alpha != null) surf.setAlpha(alpha);
                 surf.setFillColor(_bgColor).fillRect(0, 0, width, height);
                 surf.setFillColor(_ulColor).
@@ -37,7 +40,8 @@ public class BeveledBackground extends Background
                     drawLine(0, bot, right, bot, 1).drawLine(right-1, 1, right-1, bot-1, 1);
                 if (alpha != null) surf.setAlpha(1);
             }
-        }));
+        });
+        return new LayerInstance(isize, layer);
     }
 
     protected final int _bgColor, _ulColor, _brColor;
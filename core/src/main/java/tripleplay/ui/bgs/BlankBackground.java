@@ -27,5 +27,8 @@ public class BlankBackground extends Background
         @Override public void destroy () {
             // noop!
         }
+        @Override public boolean resize (IDimension size) {
+            return true;
+        }
     };
 }
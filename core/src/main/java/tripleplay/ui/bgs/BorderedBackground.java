@@ -5,9 +5,11 @@
 
 package tripleplay.ui.bgs;
 
+import pythagoras.f.Dimension;
 import pythagoras.f.IDimension;
 
 import playn.core.ImmediateLayer;
+import playn.core.Layer;
 import playn.core.Surface;
 import static playn.core.PlayN.graphics;
 
@@ -25,10 +27,11 @@ public class BorderedBackground extends Background
     }
 
     @Override
-    protected Instance instantiate (final IDimension size) {
-        return new LayerInstance(graphics().createImmediateLayer(new ImmediateLayer.Renderer() {
+    protected Instance instantiate (IDimension size) {
+        final Dimension isize = new Dimension(size);
+        Layer layer = graphics().createImmediateLayer(new ImmediateLayer.Renderer() {
             public void render (Surface surf) {
-                float width = size.width(), height = size.height();
+                float width = isize.width, height = isize.height;
                 if (alpha != null) surf.setAlpha(alpha);
                 surf.setFillColor(_bgColor).fillRect(0, 0, width, height);
                 surf.setFillColor(_borderColor).
@@ -38,7 +41,8 @@ public class BorderedBackground extends Background
                     fillRect(0, height-_thickness, width, _thickness);
                 if (alpha != null) surf.setAlpha(1);
             }
-        }));
+        });
+        return new LayerInstance(isize, layer);
     }
 
     protected final int _bgColor, _borderColor;
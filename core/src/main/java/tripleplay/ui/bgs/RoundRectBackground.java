@@ -5,13 +5,16 @@
 
 package tripleplay.ui.bgs;
 
+import java.util.Arrays;
+
 import pythagoras.f.IDimension;
 
-import playn.core.CanvasImage;
+import playn.core.Canvas;
 import playn.core.ImageLayer;
 import static playn.core.PlayN.graphics;
 
 import tripleplay.ui.Background;
+import tripleplay.ui.BackgroundCache;
 
 /**
  * Draws a rounded rectangle with optional border as a background.
@@ -33,29 +36,70 @@ public class RoundRectBackground extends Background
         _borderColor = borderColor;
         _borderWidth = borderWidth;
         _borderRadius = borderRadius;
+        _key = Arrays.<Object>asList(getClass(), bgColor, radius, borderColor, borderWidth,
+                                     borderRadius);
     }
 
     @Override
-    protected Instance instantiate (final IDimension size) {
-        CanvasImage image = graphics().createImage(size.width(), size.height());
+    protected Instance instantiate (IDimension size) {
+        final BackgroundCache.Entry entry = acquire(size);
+        final ImageLayer layer = graphics().createImageLayer(entry.image());
+        if (alpha != null) layer.setAlpha(alpha);
+        return new LayerInstance(layer) {
+            @Override public boolean resize (IDimension size) {
+                // rerender into our current canvas if we're its only user and it's big enough
+                _entry = CACHE.resize(_entry, size.width(), size.height(), renderer());
+                layer.setImage(_entry.image());
+                return true;
+            }
+            @Override public void destroy () {
+                super.destroy();
+                _entry.release();
+            }
+            protected BackgroundCache.Entry _entry = entry;
+        };
+    }
+
+    /**
+     * Acquires our rasterization at the specified size from the shared background cache.
+     */
+    protected BackgroundCache.Entry acquire (IDimension size) {
+        return CACHE.acquire(_key, size.width(), size.height(), renderer());
+    }
+
+    /**
+     * Returns a renderer that renders this background into the cache.
+     */
+    protected BackgroundCache.Renderer renderer () {
+        return new BackgroundCache.Renderer() {
+            public void render (Canvas canvas, float width, float height) {
+                RoundRectBackground.this.render(canvas, width, height);
+            }
+        };
+    }
+
+    /**
+     * Renders this background into {@code canvas} at the specified size.
+     */
+    protected void render (Canvas canvas, float width, float height) {
         if (_borderWidth > 0) {
-            image.canvas().setFillColor(_borderColor);
-            image.canvas().fillRoundRect(0, 0, size.width(), size.height(), _radius);
+            canvas.setFillColor(_borderColor);
+            canvas.fillRoundRect(0, 0, width, height, _radius);
             // scale the inner radius based on the ratio of the inner height to the full height;
             // this improves the uniformity of the border substantially
-            float iwidth = size.width() - 2*_borderWidth, iheight = size.height() - 2*_borderWidth;
-            float iradius = _borderRadius * (iheight / size.height());
-            image.canvas().setFillColor(_bgColor);
-            image.canvas().fillRoundRect(_borderWidth, _borderWidth, iwidth, iheight, iradius);
+            float iwidth = width - 2*_borderWidth, iheight = height - 2*_borderWidth;
+            float iradius = _borderRadius * (iheight / height);
+            canvas.setFillColor(_bgColor);
+            canvas.fillRoundRect(_borderWidth, _borderWidth, iwidth, iheight, iradius);
         } else {
-            image.canvas().setFillColor(_bgColor);
-            image.canvas().fillRoundRect(0, 0, size.width(), size.height(), _radius);
+            canvas.setFillColor(_bgColor);
+            canvas.fillRoundRect(0, 0, width, height, _radius);
         }
-        ImageLayer layer = graphics().createImageLayer(image);
-        if (alpha != null) layer.setAlpha(alpha);
-        return new LayerInstance(layer);
     }
 
     protected final int _bgColor, _borderColor;
     protected final float _radius, _borderWidth, _borderRadius;
+
+    /** Identifies our rasterizations in the background cache. */
+    protected final Object _key;
 }
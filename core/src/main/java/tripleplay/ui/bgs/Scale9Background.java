@@ -5,10 +5,12 @@
 
 package tripleplay.ui.bgs;
 
+import pythagoras.f.Dimension;
 import pythagoras.f.IDimension;
 
 import playn.core.Image;
 import playn.core.ImmediateLayer;
+import playn.core.Layer;
 import playn.core.Surface;
 import static playn.core.PlayN.graphics;
 
@@ -107,11 +109,17 @@ public class Scale9Background extends Background
     }
 
     @Override
-    protected Instance instantiate (final IDimension size) {
-        return new LayerInstance(graphics().createImmediateLayer(new ImmediateLayer.Renderer() {
-            // The axes of our destination surface.
-            Axis3 dx = new Axis3(size.width(), xaxis), dy = new Axis3(size.height(), yaxis);
+    protected Instance instantiate (IDimension size) {
+        final Dimension isize = new Dimension(size);
+        Layer layer = graphics().createImmediateLayer(new ImmediateLayer.Renderer() {
+            // The axes of our destination surface, recomputed when our size changes.
+            Axis3 dx, dy;
+            float width, height;
             public void render (Surface surf) {
+                if (dx == null || width != isize.width || height != isize.height) {
+                    dx = new Axis3(width = isize.width, xaxis);
+                    dy = new Axis3(height = isize.height, yaxis);
+                }
                 surf.save();
                 if (alpha != null) surf.setAlpha(alpha);
                 // issue the 9 draw calls
@@ -128,7 +136,8 @@ public class Scale9Background extends Background
                                dx.coord(x), dy.coord(y), dx.size(x), dy.size(y),
                                xaxis.coord(x), yaxis.coord(y), xaxis.size(x), yaxis.size(y));
             }
-        }));
+        });
+        return new LayerInstance(isize, layer);
     }
 
     protected Image _image;
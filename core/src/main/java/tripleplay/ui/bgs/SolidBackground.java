@@ -5,6 +5,7 @@
 
 package tripleplay.ui.bgs;
 
+import pythagoras.f.Dimension;
 import pythagoras.f.IDimension;
 
 import tripleplay.ui.Background;
@@ -19,7 +20,8 @@ public class SolidBackground extends Background
     }
 
     @Override protected Instance instantiate (IDimension size) {
-        return new LayerInstance(createSolidLayer(_color, size.width(), size.height()));
+        Dimension isize = new Dimension(size);
+        return new LayerInstance(isize, createSolidLayer(_color, isize));
     }
 
     protected final int _color;
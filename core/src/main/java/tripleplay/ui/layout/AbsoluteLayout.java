@@ -87,8 +87,8 @@ public class AbsoluteLayout extends Layout
             if (!elem.isVisible()) continue;
             Constraint c = constraint(elem);
             if (c.size.width() == 0) {
-                // this should return a cached size
-                IDimension psize = preferredSize(elem, 0, 0);
+                // use the same hints as computeSize so that we reuse its measurement
+                IDimension psize = preferredSize(elem, c.size.width(), c.size.height());
                 setBounds(elem, c.position.x(), c.position.y(), psize.width(), psize.height());
             } else {
                 setBounds(elem, c.position.x(), c.position.y(), c.size.width(), c.size.height());
@@ -70,6 +70,7 @@ public abstract class AxisLayout extends Layout
     public static class Vertical extends AxisLayout {
         @Override public Dimension computeSize (Elements<?> elems, float hintX, float hintY) {
             Metrics m = computeMetrics(elems, hintX, hintY, true);
+            saveMetrics(elems, hintX, hintY, m);
             return new Dimension(m.maxWidth, m.prefHeight + m.gaps(_gap));
         }
 
@@ -77,13 +78,14 @@ public abstract class AxisLayout extends Layout
                                       float left, float top, float width, float height) {
             Style.HAlign halign = resolveStyle(elems, Style.HALIGN);
             Style.VAlign valign = resolveStyle(elems, Style.VALIGN);
-            Metrics m = computeMetrics(elems, width, height, true);
+            Metrics m = metrics(elems, width, height, true);
             float stretchHeight = Math.max(0, height - m.gaps(_gap) - m.fixHeight);
             float y = top + ((m.stretchers > 0) ? 0 :
                              valign.offset(m.fixHeight + m.gaps(_gap), height));
+            int idx = 0;
             for (Element<?> elem : elems) {
-                if (!elem.isVisible()) continue;
-                IDimension psize = preferredSize(elem, width, height); // will be cached
+                IDimension psize = m.sizes[idx++];
+                if (psize == null) continue; // not visible
                 Constraint c = constraint(elem);
                 float ewidth = _offPolicy.computeSize(psize.width(), m.maxWidth, width);
                 float eheight = c.computeSize(psize.height(), m.totalWeight, stretchHeight);
@@ -97,6 +99,7 @@ public abstract class AxisLayout extends Layout
     public static class Horizontal extends AxisLayout {
         @Override public Dimension computeSize (Elements<?> elems, float hintX, float hintY) {
             Metrics m = computeMetrics(elems, hintX, hintY, false);
+            saveMetrics(elems, hintX, hintY, m);
             return new Dimension(m.prefWidth + m.gaps(_gap), m.maxHeight);
         }
 
@@ -104,13 +107,14 @@ public abstract class AxisLayout extends Layout
                                       float left, float top, float width, float height) {
             Style.HAlign halign = resolveStyle(elems, Style.HALIGN);
             Style.VAlign valign = resolveStyle(elems, Style.VALIGN);
-            Metrics m = computeMetrics(elems, width, height, false);
+            Metrics m = metrics(elems, width, height, false);
             float stretchWidth = Math.max(0, width - m.gaps(_gap) - m.fixWidth);
             float x = left + ((m.stretchers > 0) ? 0 :
                               halign.offset(m.fixWidth + m.gaps(_gap), width));
+            int idx = 0;
             for (Element<?> elem : elems) {
-                if (!elem.isVisible()) continue;
-                IDimension psize = preferredSize(elem, width, height); // will be cached
+                IDimension psize = m.sizes[idx++];
+                if (psize == null) continue; // not visible
                 Constraint c = constraint(elem);
                 float ewidth = c.computeSize(psize.width(), m.totalWeight, stretchWidth);
                 float eheight = _offPolicy.computeSize(psize.height(), m.maxHeight, height);
@@ -214,17 +218,35 @@ public abstract class AxisLayout extends Layout
         return this;
     }
 
+    /**
+     * Returns the metrics saved when computing the size of {@code elems} with the specified hints,
+     * or computes them if none were saved.
+     */
+    protected Metrics metrics (Elements<?> elems, float hintX, float hintY, boolean vert) {
+        Object saved = savedMetrics(elems, hintX, hintY);
+        return (saved instanceof Metrics) ? (Metrics)saved :
+            computeMetrics(elems, hintX, hintY, vert);
+    }
+
+    /**
+     * Measures the children of {@code elems}. Stretched children are measured with the share of
+     * the hinted size that they will be allotted, and their sizes on the off-axis are computed
+     * from those measurements when laying out.
+     */
     protected Metrics computeMetrics (Elements<?> elems, float hintX, float hintY,
                                       boolean vert) {
         Metrics m = new Metrics();
+        m.sizes = new IDimension[elems.childCount()];
+        int idx = 0;
         for (Element<?> elem : elems) {
+            int eidx = idx++;
             if (!elem.isVisible()) continue;
             m.count++;
 
             // only compute the preferred size for the fixed elements in this pass
             Constraint c = constraint(elem);
             if (!c.stretch) {
-                IDimension psize = preferredSize(elem, hintX, hintY);
+                IDimension psize = m.sizes[eidx] = preferredSize(elem, hintX, hintY);
                 float pwidth = psize.width(), pheight = psize.height();
                 m.prefWidth += pwidth;
                 m.prefHeight += pheight;
@@ -240,7 +262,9 @@ public abstract class AxisLayout extends Layout
 
         // now compute the preferred size for the stretched elements, providing them with more
         // accurate width/height hints
+        idx = 0;
         for (Element<?> elem : elems) {
+            int eidx = idx++;
             if (!elem.isVisible()) continue;
             Constraint c = constraint(elem);
             if (!c.stretch) continue;
@@ -249,7 +273,7 @@ public abstract class AxisLayout extends Layout
             float availX = hintX - m.gaps(_gap), availY = hintY - m.gaps(_gap);
             float ehintX = vert ? availX : c.computeSize(0, m.totalWeight, availX);
             float ehintY = vert ? c.computeSize(0, m.totalWeight, availY) : availY;
-            IDimension psize = preferredSize(elem, ehintX, ehintY);
+            IDimension psize = m.sizes[eidx] = preferredSize(elem, ehintX, ehintY);
             float pwidth = psize.width(), pheight = psize.height();
             m.unitWidth = Math.max(m.unitWidth, pwidth / c.weight);
             m.unitHeight = Math.max(m.unitHeight, pheight / c.weight);
@@ -271,6 +295,9 @@ public abstract class AxisLayout extends Layout
     protected static class Metrics {
         public int count;
 
+        /** The preferred size of each child, by index, or null for invisible children. */
+        public IDimension[] sizes;
+
         public float prefWidth;
         public float prefHeight;
 
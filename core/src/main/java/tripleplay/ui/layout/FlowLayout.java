@@ -60,21 +60,24 @@ public class FlowLayout extends Layout
 
     @Override public Dimension computeSize (Elements<?> elems, float hintX, float hintY) {
         Metrics m = computeMetrics(elems, hintX, hintY);
+        saveMetrics(elems, hintX, hintY, m);
         return m.size;
     }
 
     @Override public void layout (Elements<?> elems,
                                   float left, float top, float width, float height) {
         Style.HAlign halign = resolveStyle(elems, Style.HALIGN);
-        Metrics m = computeMetrics(elems, width, height);
+        Object saved = savedMetrics(elems, width, height);
+        Metrics m = (saved instanceof Metrics) ? (Metrics)saved :
+            computeMetrics(elems, width, height);
         float y = top + resolveStyle(elems, Style.VALIGN).offset(m.size.height, height);
         for (int elemIdx = 0, row = 0, size = m.rowBreaks.size(); row < size; ++row) {
             Dimension rowSize = m.rows.get(row);
             float x = left + halign.offset(rowSize.width, width);
             for (; elemIdx < m.rowBreaks.get(row).intValue(); ++elemIdx) {
                 Element<?> elem = elems.childAt(elemIdx);
-                if (!elem.isVisible()) continue;
-                IDimension esize = preferredSize(elem, width, height);
+                IDimension esize = m.sizes[elemIdx];
+                if (esize == null) continue; // not visible
                 setBounds(elem, x, y + _valign.offset(esize.height(), rowSize.height()),
                     esize.width(), esize.height());
                 x += esize.width() + _hgap;
@@ -85,6 +88,7 @@ public class FlowLayout extends Layout
 
     protected Metrics computeMetrics (Elements<?> elems, float width, float height) {
         Metrics m = new Metrics();
+        m.sizes = new IDimension[elems.childCount()];
 
         // adjust our maximum width if appropriate
         if (_wrapWidth != null) width = _wrapWidth;
@@ -94,7 +98,7 @@ public class FlowLayout extends Layout
         for (int ii = 0, ll = elems.childCount(); ii < ll; ++ii) {
             Element<?> elem = elems.childAt(ii);
             if (!elem.isVisible()) continue;
-            IDimension esize = preferredSize(elem, width, height);
+            IDimension esize = m.sizes[ii] = preferredSize(elem, width, height);
             if (rowSize.width > 0 && width > 0 && rowSize.width + _hgap + esize.width() > width) {
                 m.addBreak(ii, rowSize);
                 rowSize = new Dimension(esize);
@@ -113,6 +117,9 @@ public class FlowLayout extends Layout
         public List<Dimension> rows = new ArrayList<Dimension>();
         public List<Integer> rowBreaks = new ArrayList<Integer>();
 
+        /** The preferred size of each child, by index, or null for invisible children. */
+        public IDimension[] sizes;
+
         protected void addBreak (int idx, Dimension lastRowSize) {
             if (lastRowSize.height == 0 && lastRowSize.width == 0) return;
             rowBreaks.add(idx);
@@ -115,12 +115,15 @@ public class TableLayout extends Layout
 
     @Override public Dimension computeSize (Elements<?> elems, float hintX, float hintY) {
         Metrics m = computeMetrics(elems, hintX, hintY, true);
+        saveMetrics(elems, hintX, hintY, m);
         return new Dimension(m.totalWidth(_colgap), m.totalHeight(_rowgap));
     }
 
     @Override public void layout (Elements<?> elems,
                                   float left, float top, float width, float height) {
-        Metrics m = computeMetrics(elems, width, height, false);
+        Object saved = savedMetrics(elems, width, height);
+        Metrics m = (saved instanceof Metrics) ? (Metrics)saved :
+            computeMetrics(elems, width, height, false);
         int columns = m.columns(), row = 0, col = 0;
 
         float naturalWidth = m.totalWidth(_colgap);
@@ -139,12 +142,13 @@ public class TableLayout extends Layout
         float y = top + valign.offset(m.totalHeight(_rowgap), height);
 
         Style.VAlign cellVAlign = Style.VAlign.CENTER; // TODO
+        int idx = 0;
         for (Element<?> elem : elems) {
+            IDimension psize = m.sizes[idx++];
             Column ccfg = _columns[col];
             float colWidth = Math.max(0, m.columnWidths[col] + (ccfg._fixed ? 0 : freeExtra));
             float rowHeight = m.rowHeights[row];
-            if (colWidth > 0 && elem.isVisible()) {
-                IDimension psize = preferredSize(elem, 0, 0); // will be cached, hints ignored
+            if (colWidth > 0 && psize != null) {
                 float elemWidth = ccfg._stretch ? colWidth : Math.min(psize.width(), colWidth);
                 float elemHeight = Math.min(psize.height(), rowHeight);
                 setBounds(elem, x + ccfg._halign.offset(elemWidth, colWidth),
@@ -167,6 +171,7 @@ public class TableLayout extends Layout
         if (elems.childCount() % columns != 0) rows++;
 
         Metrics metrics = new Metrics();
+        metrics.sizes = new IDimension[elems.childCount()];
         metrics.columnWidths = new float[columns];
         metrics.rowHeights = new float[rows];
 
@@ -175,12 +180,13 @@ public class TableLayout extends Layout
             metrics.columnWidths[ii] = _columns[ii]._minWidth;
         }
 
-        int row = 0, col = 0;
+        int row = 0, col = 0, idx = 0;
         float maxrh = 0;
         for (Element<?> elem : elems) {
+            int eidx = idx++;
             if (elem.isVisible()) {
                 // TODO: supply sane x/y hints
-                IDimension psize = preferredSize(elem, hintX, hintY);
+                IDimension psize = metrics.sizes[eidx] = preferredSize(elem, hintX, hintY);
                 metrics.rowHeights[row] = Math.max(metrics.rowHeights[row], psize.height());
                 metrics.columnWidths[col] = Math.max(metrics.columnWidths[col], psize.width());
             }
@@ -195,6 +201,8 @@ public class TableLayout extends Layout
     }
 
     protected static class Metrics {
+        /** The preferred size of each child, by index, or null for invisible children. */
+        public IDimension[] sizes;
         public float[] columnWidths;
         public float[] rowHeights;
 
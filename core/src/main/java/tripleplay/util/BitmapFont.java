@@ -0,0 +1,355 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import playn.core.Image;
+import playn.core.ImmediateLayer;
+import playn.core.Surface;
+import playn.core.TextFormat;
+import playn.core.TextLayout;
+import static playn.core.PlayN.graphics;
+
+/**
+ * Renders single lines of text from characters that are pre-rendered, once, into a {@link
+ * GlyphAtlas}. Drawing a string is then a matter of drawing a quad per character, so changing the
+ * text displayed (a score, a timer, a frame rate) costs no rasterization or texture upload.
+ *
+ * <p>Characters are rendered per the font, effect and color of a {@link TextConfig}. The advance
+ * of each character and the kerning between each pair of characters are obtained by laying out
+ * text in the font, and cached. Characters outside the set supplied at creation are rendered into
+ * the atlas when text containing them is measured or set, never while drawing, so that the atlas
+ * page is not re-uploaded mid-frame. Wrapping and alignment are not supported.</p>
+ *
+ * <p>A font holds its characters' regions of the atlas until it is {@link #dispose}d. The fonts
+ * shared via {@link #get} are instead reference counted by their {@link Text} displays: a few
+ * that are no longer displayed are retained for reuse, and the rest are disposed.</p>
+ */
+public class BitmapFont
+{
+    /** The characters rendered by default: printable ASCII. */
+    public static final String ASCII;
+    static {
+        StringBuilder buf = new StringBuilder();
+        for (char c = ' '; c <= '~'; c++) buf.append(c);
+        ASCII = buf.toString();
+    }
+
+    /** Displays text via a bitmap font in an immediate layer. */
+    public class Text {
+        /** The layer in which our text is drawn. */
+        public final ImmediateLayer layer = graphics().createImmediateLayer(
+            new ImmediateLayer.Renderer() {
+                public void render (Surface surf) {
+                    BitmapFont.this.render(surf, _text, 0, 0);
+                }
+            });
+
+        /** Returns the font via which our text is drawn. */
+        public BitmapFont font () {
+            return BitmapFont.this;
+        }
+
+        /** Returns the text currently displayed. */
+        public String text () {
+            return _text;
+        }
+
+        /** Updates the text to be displayed. */
+        public Text setText (String text) {
+            _text = (text == null) ? "" : text;
+            prepare(_text);
+            return this;
+        }
+
+        /** Destroys our layer and releases our reference to our font. This display must not be
+         * used thereafter. */
+        public void destroy () {
+            layer.destroy();
+            release();
+        }
+
+        /** Returns the width of the text currently displayed. */
+        public float width () {
+            return BitmapFont.this.width(_text);
+        }
+
+        /** Returns the height of the text currently displayed. */
+        public float height () {
+            return BitmapFont.this.height();
+        }
+
+        protected String _text = "";
+    }
+
+    /**
+     * Returns the font that renders text per the supplied config's font, effect and color,
+     * creating it if necessary. Fonts are shared by all configs that match in those respects.
+     * Shared fonts that aren't referenced by a {@link Text} may be disposed when other fonts are
+     * created, but will render their characters anew if they're used again.
+     */
+    public static BitmapFont get (TextConfig config) {
+        List<Object> key = Arrays.<Object>asList(
+            config.format.font, config.effect, config.textColor);
+        BitmapFont font = _fonts.get(key);
+        if (font == null) {
+            _fonts.put(key, font = new BitmapFont(config, ASCII, GlyphAtlas.DEFAULT));
+            font._shared = true;
+            trimShared();
+        }
+        return font;
+    }
+
+    /**
+     * Creates a font that renders text per the supplied config, pre-rendering {@code chars} into
+     * {@code atlas}.
+     */
+    public BitmapFont (TextConfig config, String chars, GlyphAtlas atlas) {
+        // only the font of the format is meaningful to us
+        _config = config.withFormat(new TextFormat().withFont(config.format.font));
+        _atlas = atlas;
+        for (int ii = 0, ll = chars.length(); ii < ll; ii++) glyph(chars.charAt(ii));
+    }
+
+    /**
+     * Creates a text display that renders via this font. The display references this font until
+     * it is {@link Text#destroy}ed.
+     */
+    public Text createText (String text) {
+        _refs++;
+        return new Text().setText(text);
+    }
+
+    /**
+     * Renders any characters of the supplied text that have not yet been rendered into the atlas,
+     * and computes the kerning between them, so that the text can be drawn via {@link #render}.
+     */
+    public void prepare (String text) {
+        width(text);
+    }
+
+    /**
+     * Returns the regions occupied by this font's characters to the atlas, and removes it from
+     * the shared fonts if it is one. The font remains usable, but renders its characters anew as
+     * text containing them is measured or set (so existing displays show nothing until their text
+     * is next set).
+     */
+    public void dispose () {
+        if (isRetained()) _fonts.remove(key());
+        free();
+    }
+
+    /**
+     * Returns the width of the supplied text when rendered in this font. This renders any of its
+     * characters that have not yet been rendered.
+     */
+    public float width (String text) {
+        float width = 0;
+        char prev = 0;
+        for (int ii = 0, ll = text.length(); ii < ll; ii++) {
+            char c = text.charAt(ii);
+            if (ii > 0) width += kerning(prev, c);
+            width += glyph(c).advance;
+            prev = c;
+        }
+        return _config.effect.adjustWidth(width);
+    }
+
+    /**
+     * Returns the height of a line of text rendered in this font.
+     */
+    public float height () {
+        return _config.effect.adjustHeight(_lineHeight);
+    }
+
+    /**
+     * Draws the supplied text into {@code surf} with its top-left at the specified coordinates.
+     * This never renders characters into the atlas: characters that have not been rendered (see
+     * {@link #prepare}) are skipped.
+     */
+    public void render (Surface surf, String text, float x, float y) {
+        char prev = 0;
+        for (int ii = 0, ll = text.length(); ii < ll; ii++) {
+            char c = text.charAt(ii);
+            Char glyph = _glyphs.get(c);
+            if (glyph == null) continue;
+            if (ii > 0) {
+                float kern = _kerning.get(pair(prev, c));
+                if (kern == kern) x += kern; // skip NaN, which marks kerning not yet computed
+            }
+            if (glyph.image != null) surf.drawImage(glyph.image, x, y);
+            x += glyph.advance;
+            prev = c;
+        }
+    }
+
+    /** A character rendered into our atlas. */
+    protected static class Char {
+        /** The distance by which to advance after drawing this character. */
+        public final float advance;
+        /** The image of this character, or null if it has none (e.g. a space). */
+        public final Image image;
+        /** The region of the atlas containing our image, or null. */
+        public final GlyphAtlas.Region region;
+
+        public Char (float advance, Image image, GlyphAtlas.Region region) {
+            this.advance = advance;
+            this.image = image;
+            this.region = region;
+        }
+    }
+
+    /** Maps a pair of characters to the kerning between them, without boxing either. */
+    protected static class KerningTable {
+        /** Returns the kerning for the supplied pair, or NaN if it has not been recorded. */
+        public float get (int pair) {
+            long key = pair & 0xFFFFFFFFL;
+            for (int idx = index(key); ; idx = (idx + 1) & (_keys.length - 1)) {
+                if (_keys[idx] == key) return _kerns[idx];
+                if (_keys[idx] == EMPTY) return Float.NaN;
+            }
+        }
+
+        public void put (int pair, float kern) {
+            if (_size * 2 >= _keys.length) {
+                long[] okeys = _keys;
+                float[] okerns = _kerns;
+                _keys = newKeys(okeys.length * 2);
+                _kerns = new float[okeys.length * 2];
+                _size = 0;
+                for (int ii = 0; ii < okeys.length; ii++) {
+                    if (okeys[ii] != EMPTY) put((int)okeys[ii], okerns[ii]);
+                }
+            }
+            long key = pair & 0xFFFFFFFFL;
+            int idx = index(key);
+            while (_keys[idx] != EMPTY && _keys[idx] != key) idx = (idx + 1) & (_keys.length - 1);
+            if (_keys[idx] == EMPTY) _size++;
+            _keys[idx] = key;
+            _kerns[idx] = kern;
+        }
+
+        public void clear () {
+            Arrays.fill(_keys, EMPTY);
+            _size = 0;
+        }
+
+        protected int index (long key) {
+            int hash = (int)key * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & (_keys.length - 1);
+        }
+
+        protected static long[] newKeys (int size) {
+            long[] keys = new long[size];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        protected long[] _keys = newKeys(256);
+        protected float[] _kerns = new float[256];
+        protected int _size;
+
+        protected static final long EMPTY = -1L;
+    }
+
+    protected Char glyph (char c) {
+        Char glyph = _glyphs.get(c);
+        if (glyph == null) {
+            TextLayout layout = _config.layout(String.valueOf(c));
+            float width = _config.effect.adjustWidth(layout.width());
+            float height = _config.effect.adjustHeight(layout.height());
+            Image image = null;
+            GlyphAtlas.Region region = null;
+            if (c != ' ' && width > 0 && height > 0) {
+                region = _atlas.allocate(width, height);
+                _config.render(region.canvas(), layout, 0, 0);
+                image = region.image(width, height);
+            }
+            _glyphs.put(c, glyph = new Char(layout.width(), image, region));
+            _lineHeight = Math.max(_lineHeight, layout.height());
+        }
+        return glyph;
+    }
+
+    protected float kerning (char prev, char c) {
+        int pair = pair(prev, c);
+        float kern = _kerning.get(pair);
+        if (kern != kern) { // NaN: not yet computed
+            float width = _config.layout(new String(new char[] { prev, c })).width();
+            _kerning.put(pair, kern = width - glyph(prev).advance - glyph(c).advance);
+        }
+        return kern;
+    }
+
+    /** Releases a reference obtained via {@link #createText}. */
+    protected void release () {
+        if (_refs <= 0) throw new IllegalStateException("Released unreferenced font " + _config);
+        if (--_refs > 0 || !_shared) return;
+        // shared fonts are retained for reuse for a while, unless they've already been evicted
+        if (isRetained()) trimShared();
+        else free();
+    }
+
+    /** Returns true if we're one of the shared fonts, and have not been evicted or disposed. */
+    protected boolean isRetained () {
+        return _shared && _fonts.get(key()) == this;
+    }
+
+    /** Returns our characters' regions to the atlas, and forgets our characters. */
+    protected void free () {
+        for (Char glyph : _glyphs.values()) if (glyph.region != null) glyph.region.free();
+        _glyphs.clear();
+        _kerning.clear();
+    }
+
+    protected List<Object> key () {
+        return Arrays.<Object>asList(_config.format.font, _config.effect, _config.textColor);
+    }
+
+    protected static int pair (char prev, char c) {
+        return (prev << 16) | c;
+    }
+
+    /** Disposes the least recently used shared fonts that aren't referenced, until no more than
+     * {@link #MAX_UNUSED_FONTS} remain. */
+    protected static void trimShared () {
+        int unused = 0;
+        for (BitmapFont font : _fonts.values()) if (font._refs == 0) unused++;
+        for (Iterator<BitmapFont> iter = _fonts.values().iterator();
+             iter.hasNext() && unused > MAX_UNUSED_FONTS; ) {
+            BitmapFont font = iter.next();
+            if (font._refs > 0) continue;
+            iter.remove();
+            font.free();
+            unused--;
+        }
+    }
+
+    protected final TextConfig _config;
+    protected final GlyphAtlas _atlas;
+    protected final Map<Character,Char> _glyphs = new HashMap<Character,Char>();
+    protected final KerningTable _kerning = new KerningTable();
+    protected float _lineHeight;
+
+    /** The number of text displays that reference this font. */
+    protected int _refs;
+
+    /** Whether this font was created to be shared via {@link #get}. */
+    protected boolean _shared;
+
+    /** The shared fonts, in least to most recently used order. */
+    protected static final Map<List<Object>,BitmapFont> _fonts =
+        new LinkedHashMap<List<Object>,BitmapFont>(16, 0.75f, true);
+
+    /** The number of shared fonts that are retained when no text displays reference them. */
+    protected static final int MAX_UNUSED_FONTS = 4;
+}
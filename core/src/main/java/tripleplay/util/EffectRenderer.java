@@ -9,7 +9,9 @@ import playn.core.Canvas;
 import playn.core.TextLayout;
 
 /**
- * Handles the rendering of text with a particular effect (shadow, outline, etc.).
+ * Handles the rendering of text with a particular effect (shadow, outline, etc.). Effects are
+ * compared by value, so that text rendered with equivalent effects can be shared by {@link
+ * TextCache}.
  */
 public abstract class EffectRenderer
 {
@@ -49,6 +51,15 @@ public abstract class EffectRenderer
             canvas.setFillColor(textColor);
             canvas.fillText(text, x+1, y+1);
         }
+
+        @Override public int hashCode () {
+            return outlineColor;
+        }
+
+        @Override public boolean equals (Object other) {
+            return (other instanceof PixelOutline) &&
+                ((PixelOutline)other).outlineColor == outlineColor;
+        }
     }
 
     public static class VectorOutline extends EffectRenderer {
@@ -81,6 +92,17 @@ public abstract class EffectRenderer
             canvas.setFillColor(textColor);
             canvas.fillText(text, x+outlineWidth, y+outlineWidth);
         }
+
+        @Override public int hashCode () {
+            return 31 * outlineColor + (int)outlineWidth;
+        }
+
+        @Override public boolean equals (Object other) {
+            if (!(other instanceof VectorOutline)) return false;
+            VectorOutline oeffect = (VectorOutline)other;
+            return outlineColor == oeffect.outlineColor && outlineWidth == oeffect.outlineWidth &&
+                outlineCap == oeffect.outlineCap && outlineJoin == oeffect.outlineJoin;
+        }
     }
 
     public static class Shadow extends EffectRenderer {
@@ -104,5 +126,16 @@ public abstract class EffectRenderer
             canvas.setFillColor(textColor);
             canvas.fillText(text, x+tx, y+ty);
         }
+
+        @Override public int hashCode () {
+            return 31 * (31 * shadowColor + (int)shadowX) + (int)shadowY;
+        }
+
+        @Override public boolean equals (Object other) {
+            if (!(other instanceof Shadow)) return false;
+            Shadow oeffect = (Shadow)other;
+            return shadowColor == oeffect.shadowColor && shadowX == oeffect.shadowX &&
+                shadowY == oeffect.shadowY;
+        }
     }
 }
@@ -8,54 +8,86 @@ package tripleplay.util;
 import playn.core.Canvas;
 import playn.core.CanvasImage;
 import playn.core.GroupLayer;
+import playn.core.Image;
 import playn.core.ImageLayer;
 import playn.core.PlayN;
 import playn.core.TextLayout;
 
 /**
  * Handles the maintenance of a canvas image and layer for displaying a chunk of pre-rendered
- * graphics.
+ * graphics. By default the graphics are rendered into a canvas image of the glyph's own.
+ * Alternatively they may be rendered into a region of a {@link GlyphAtlas}, which is shared with
+ * other glyphs, so that many glyphs may be rendered without switching textures. Note that
+ * rendering a glyph into an atlas re-uploads the texture of its whole atlas page, so an atlas
+ * only suits glyphs whose contents rarely change (see {@link GlyphAtlas}).
  */
 public class Glyph
 {
     public Glyph (GroupLayer parent) {
-        _parent = parent;
-        _depth = null;
+        this(parent, null, null);
     }
 
     public Glyph (GroupLayer parent, float depth) {
+        this(parent, depth, null);
+    }
+
+    /**
+     * Creates a glyph that renders into regions of the supplied atlas, or into a canvas image of
+     * its own if the atlas is null.
+     */
+    public Glyph (GroupLayer parent, Float depth, GlyphAtlas atlas) {
         _parent = parent;
         _depth = depth;
+        _atlas = atlas;
     }
 
-    /** Ensures that the canvas image is at least the specified dimensions and cleared to all
+    /** Ensures that the canvas region is at least the specified dimensions and cleared to all
      * transparent pixels. Also creates and adds the image layer to the parent layer if
      * needed. */
     public void prepare (float width, float height) {
-        // recreate our canvas if we need more room than we have (TODO: should we ever shrink it?)
-        if (_image == null || _image.width() < width || _image.height() < height) {
-            _image = PlayN.graphics().createImage(width, height);
-            if (_layer != null) _layer.setImage(_image);
+        Image image;
+        if (_atlas == null) {
+            // recreate our canvas if we need more room than we have
+            if (_image == null || _image.width() < width || _image.height() < height) {
+                _image = PlayN.graphics().createImage(width, height);
+            } else {
+                _image.canvas().clear();
+            }
+            image = _image;
         } else {
-            _image.canvas().clear();
+            // reallocate our region if we need more room than we have, or are using far less of
+            // it than we could, so as not to waste atlas space
+            if (_region == null || _region.width < width || _region.height < height ||
+                _region.width * _region.height > 4 * width * height) {
+                if (_region != null) _region.free();
+                _region = _atlas.allocate(width, height);
+            } else {
+                _region.clear();
+            }
+            image = _region.image(width, height);
         }
         if (_layer == null) {
-            _layer = PlayN.graphics().createImageLayer(_image);
+            _layer = PlayN.graphics().createImageLayer(image);
             if (_depth != null) _layer.setDepth(_depth);
             _parent.add(_layer);
+        } else {
+            _layer.setImage(image);
         }
         _preparedWidth = width;
         _preparedHeight = height;
     }
 
-    /** Returns the layer that contains our glyph image. Valid after {@link #prepare}. */
+    /** Returns the layer that contains our glyph image, which is a region of an atlas page if we
+     * render into an atlas. Valid after {@link #prepare}. */
     public ImageLayer layer () {
         return _layer;
     }
 
-    /** Returns the canvas into which drawing may be done. Valid after {@link #prepare}. */
+    /** Returns the canvas into which drawing may be done. Valid after {@link #prepare}. If we
+     * render into an atlas, the canvas is translated and clipped to our region of the atlas page,
+     * and is shared with other glyphs, so call this method again rather than retaining it. */
     public Canvas canvas () {
-        return _image.canvas();
+        return (_atlas == null) ? _image.canvas() : _region.canvas();
     }
 
     /** Destroys the layer and image, removing them from the containing widget. */
@@ -64,7 +96,12 @@ public class Glyph
             _layer.destroy();
             _layer = null;
         }
+        if (_region != null) {
+            _region.free();
+            _region = null;
+        }
         _image = null;
+        _preparedWidth = _preparedHeight = 0;
     }
 
     /**
@@ -101,7 +138,9 @@ public class Glyph
 
     protected final GroupLayer _parent;
     protected final Float _depth;
+    protected final GlyphAtlas _atlas;
     protected CanvasImage _image;
+    protected GlyphAtlas.Region _region;
     protected ImageLayer _layer;
     protected float _preparedWidth, _preparedHeight;
 }
@@ -0,0 +1,283 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import playn.core.Canvas;
+import playn.core.CanvasImage;
+import playn.core.Image;
+import static playn.core.PlayN.graphics;
+
+/**
+ * Packs the images of many {@link Glyph}s into a few large, shared canvas images, so that a screen
+ * full of glyphs can be rendered with a handful of texture binds rather than one per glyph.
+ *
+ * <p>Each page of the atlas is divided into horizontal shelves. A region is allocated from the
+ * shortest shelf that is tall enough and has room for it, or a new shelf if the best existing
+ * shelf would waste too much space. Freed regions are returned to their shelf and reused, and
+ * emptied shelves at the bottom of a page are reclaimed. Regions too large for a page are given a
+ * page of their own.</p>
+ *
+ * <p>Drawing into any region dirties its whole page, so the next frame re-uploads the page's
+ * entire texture (4MB for a 1024x1024 page), not just the region drawn into. An atlas therefore
+ * suits glyphs that are rendered once, or rarely, and then displayed for many frames. Glyphs whose
+ * contents change every few frames are better rendered into a canvas of their own (as {@link
+ * Glyph} does by default), or via a {@link BitmapFont}.</p>
+ */
+public class GlyphAtlas
+{
+    /** An atlas that may be shared by glyphs that are rendered once, or rarely. */
+    public static final GlyphAtlas DEFAULT = new GlyphAtlas(1024, 1024);
+
+    /** A rectangle allocated from one of the pages of this atlas. */
+    public class Region {
+        /** The bounds of this region in its page. */
+        public final int x, y, width, height;
+
+        /**
+         * Returns the canvas of this region's page, translated and clipped so that drawing at
+         * {@code (0, 0)} draws at the top-left of this region. The canvas is shared by all
+         * regions on the page, so it must be obtained anew after drawing into another region.
+         */
+        public Canvas canvas () {
+            Canvas canvas = _page.image.canvas();
+            if (_page.active != this) {
+                if (_page.active != null) canvas.restore();
+                canvas.save();
+                canvas.clipRect(x, y, width, height);
+                canvas.translate(x, y);
+                _page.active = this;
+            }
+            return canvas;
+        }
+
+        /**
+         * Returns the portion of this region from its top-left to the specified size, as an
+         * image that may be displayed in a layer.
+         */
+        public Image image (float width, float height) {
+            return _page.image.subImage(x, y, width, height);
+        }
+
+        /** Clears this region to transparent pixels. */
+        public void clear () {
+            canvas().clearRect(0, 0, width, height);
+        }
+
+        /** Returns this region to the atlas. It must not be used thereafter. */
+        public void free () {
+            if (_page.active == this) {
+                _page.image.canvas().restore();
+                _page.active = null;
+            }
+            _shelf.free(this);
+            if (_shelf.isEmpty()) _page.reclaim();
+            // discard emptied pages, keeping one standard page around for future use
+            if (_page.isEmpty() && (_pages.size() > 1 || _page.width != _pageWidth ||
+                                    _page.height != _pageHeight)) _pages.remove(_page);
+        }
+
+        protected Region (Page page, Shelf shelf, int x, int width) {
+            this.x = x;
+            this.y = shelf.y;
+            this.width = width;
+            this.height = shelf.height;
+            _page = page;
+            _shelf = shelf;
+        }
+
+        protected final Page _page;
+        protected final Shelf _shelf;
+    }
+
+    /**
+     * Creates an atlas whose pages are of the specified size.
+     */
+    public GlyphAtlas (int pageWidth, int pageHeight) {
+        _pageWidth = pageWidth;
+        _pageHeight = pageHeight;
+    }
+
+    /**
+     * Allocates a region at least as large as the specified size. The region is cleared to
+     * transparent pixels, as it may reuse space freed by another region.
+     */
+    public Region allocate (float width, float height) {
+        Region region = allocateRegion((int)Math.ceil(width), (int)Math.ceil(height));
+        region.clear();
+        return region;
+    }
+
+    protected Region allocateRegion (int rwidth, int rheight) {
+        if (rwidth + PADDING > _pageWidth || rheight + PADDING > _pageHeight) {
+            // this won't fit on a shared page, so give it one of its own
+            Page page = new Page(rwidth, rheight);
+            _pages.add(page);
+            return page.allocate(rwidth, rheight);
+        }
+        for (Page page : _pages) {
+            Region region = page.allocate(rwidth + PADDING, rheight + PADDING);
+            if (region != null) return region;
+        }
+        Page page = new Page(_pageWidth, _pageHeight);
+        _pages.add(page);
+        return page.allocate(rwidth + PADDING, rheight + PADDING);
+    }
+
+    /** Returns the number of pages in this atlas. */
+    public int pages () {
+        return _pages.size();
+    }
+
+    /** Returns the fraction of the area of our pages that is allocated to regions. */
+    public float usage () {
+        long used = 0, total = 0;
+        for (Page page : _pages) {
+            used += page.used();
+            total += page.width * page.height;
+        }
+        return (total == 0) ? 0 : used / (float)total;
+    }
+
+    /** A page of the atlas: a canvas image, divided into shelves from the top down. */
+    protected class Page {
+        public final int width, height;
+        public final CanvasImage image;
+        public final List<Shelf> shelves = new ArrayList<Shelf>();
+
+        /** The region whose translation and clip are currently applied to our canvas. */
+        public Region active;
+
+        public Page (int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.image = graphics().createImage(width, height);
+        }
+
+        /** Allocates a region of the specified size, or returns null if we lack space. */
+        public Region allocate (int rwidth, int rheight) {
+            Shelf best = null;
+            for (Shelf shelf : shelves) {
+                if (shelf.height >= rheight && shelf.maxSpan() >= rwidth &&
+                    (best == null || shelf.height < best.height)) best = shelf;
+            }
+            // use the best shelf if it doesn't waste too much, or if we can't add a new shelf
+            int nextY = nextY();
+            if (best != null && (best.height * 2 <= rheight * 3 || nextY + rheight > height)) {
+                return best.allocate(this, rwidth);
+            }
+            if (nextY + rheight <= height) {
+                Shelf shelf = new Shelf(nextY, rheight, width);
+                shelves.add(shelf);
+                return shelf.allocate(this, rwidth);
+            }
+            return null;
+        }
+
+        /** Removes empty shelves from the bottom of this page. */
+        public void reclaim () {
+            while (!shelves.isEmpty() && shelves.get(shelves.size()-1).isEmpty()) {
+                shelves.remove(shelves.size()-1);
+            }
+        }
+
+        public boolean isEmpty () {
+            for (Shelf shelf : shelves) if (!shelf.isEmpty()) return false;
+            return true;
+        }
+
+        public long used () {
+            long used = 0;
+            for (Shelf shelf : shelves) used += (long)shelf.height * (width - shelf.free());
+            return used;
+        }
+
+        protected int nextY () {
+            return shelves.isEmpty() ? 0 : shelves.get(shelves.size()-1).bottom();
+        }
+    }
+
+    /** A horizontal strip of a page, from which regions of up to its height are allocated. */
+    protected class Shelf {
+        public final int y, height, width;
+
+        public Shelf (int y, int height, int width) {
+            this.y = y;
+            this.height = height;
+            this.width = width;
+            _spans.add(new int[] { 0, width });
+        }
+
+        public int bottom () {
+            return y + height;
+        }
+
+        /** Returns the width of our widest free span. */
+        public int maxSpan () {
+            int max = 0;
+            for (int[] span : _spans) max = Math.max(max, span[1]);
+            return max;
+        }
+
+        /** Returns the total width of our free spans. */
+        public int free () {
+            int free = 0;
+            for (int[] span : _spans) free += span[1];
+            return free;
+        }
+
+        public boolean isEmpty () {
+            return free() == width;
+        }
+
+        /** Allocates a region from the first free span with room for it. */
+        public Region allocate (Page page, int rwidth) {
+            for (int ii = 0, ll = _spans.size(); ii < ll; ii++) {
+                int[] span = _spans.get(ii);
+                if (span[1] < rwidth) continue;
+                Region region = new Region(page, this, span[0], rwidth);
+                if (span[1] == rwidth) _spans.remove(ii);
+                else {
+                    span[0] += rwidth;
+                    span[1] -= rwidth;
+                }
+                return region;
+            }
+            return null;
+        }
+
+        /** Returns the supplied region's span to our free list, merging it with its neighbors. */
+        public void free (Region region) {
+            int x = region.x, w = region.width, ii = 0, ll = _spans.size();
+            while (ii < ll && _spans.get(ii)[0] < x) ii++;
+            // merge with the following span, if adjacent
+            if (ii < ll && _spans.get(ii)[0] == x + w) {
+                int[] next = _spans.remove(ii);
+                w += next[1];
+            }
+            // merge with the preceding span, if adjacent
+            if (ii > 0) {
+                int[] prev = _spans.get(ii-1);
+                if (prev[0] + prev[1] == x) {
+                    prev[1] += w;
+                    return;
+                }
+            }
+            _spans.add(ii, new int[] { x, w });
+        }
+
+        /** Our free spans, as {x, width} pairs in order of x. */
+        protected final List<int[]> _spans = new ArrayList<int[]>();
+    }
+
+    protected final int _pageWidth, _pageHeight;
+    protected final List<Page> _pages = new ArrayList<Page>();
+
+    /** Space left between regions so that filtering doesn't bleed one glyph into the next. */
+    protected static final int PADDING = 1;
+}
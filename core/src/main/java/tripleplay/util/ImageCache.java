@@ -0,0 +1,269 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import playn.core.Canvas;
+import playn.core.CanvasImage;
+import playn.core.Image;
+import static playn.core.PlayN.graphics;
+
+/**
+ * The basis for caches of rasterized images that are shared by reference count. Subclasses define
+ * the key that identifies an image and the rendering of that image; this class handles reference
+ * counting, least recently used eviction, memory accounting and statistics.
+ *
+ * <p>Entries that are not referenced are retained until the cache holds more than its maximum
+ * number of entries or bytes of image data. They are then evicted, least recently used first, and
+ * their canvases are recycled for new rasterizations that they can hold without wasting more than
+ * {@link #RECYCLE_RATIO} times the area needed; other canvases are discarded.</p>
+ *
+ * <p>A cache may instead rasterize its entries into regions of a {@link GlyphAtlas}, so that many
+ * entries can be displayed without switching textures. Evicted entries return their regions to
+ * the atlas.</p>
+ */
+public abstract class ImageCache<K>
+{
+    /** A cached image, which is rasterized on demand. */
+    public abstract class Entry {
+        /** Returns the rasterized image, rendering it if necessary. This should only be called on
+         * an entry that has been acquired. */
+        public Image image () {
+            if (_image == null) {
+                float width = width(), height = height();
+                if (_atlas != null) {
+                    // make room for our region in the budget; the atlas clears it for us
+                    trim(width, height);
+                    _region = _atlas.allocate(width, height);
+                    _bytes += bytes();
+                    render(_region.canvas(), width, height);
+                    _image = _region.image(width, height);
+                } else {
+                    if (_canvas == null) {
+                        _canvas = trim(width, height);
+                        if (_canvas == null) _canvas = graphics().createImage(width, height);
+                        _bytes += bytes();
+                    }
+                    _canvas.canvas().clear();
+                    render(_canvas.canvas(), width, height);
+                    _image = (_canvas.width() == width && _canvas.height() == height) ? _canvas :
+                        _canvas.subImage(0, 0, width, height);
+                }
+            }
+            return _image;
+        }
+
+        /** Releases a reference to this entry. Each acquisition must be balanced by exactly one
+         * call to this method. */
+        public void release () {
+            if (_refs <= 0) throw new IllegalStateException("Released unreferenced entry " + _key);
+            if (--_refs == 0) trim(0, 0);
+        }
+
+        protected Entry (K key) {
+            _key = key;
+        }
+
+        /** Returns the width of this entry's image. */
+        protected abstract float width ();
+
+        /** Returns the height of this entry's image. */
+        protected abstract float height ();
+
+        /** Renders this entry's image into {@code canvas}, which has been cleared. */
+        protected abstract void render (Canvas canvas, float width, float height);
+
+        protected int bytes () {
+            if (_region != null) return ImageCache.bytes(_region.width, _region.height);
+            return (_canvas == null) ? 0 : ImageCache.bytes(_canvas.width(), _canvas.height());
+        }
+
+        /** Discards our image, returning its region to the atlas if we have one. */
+        protected void discard () {
+            if (_region != null) _region.free();
+            _region = null;
+            _canvas = null;
+            _image = null;
+        }
+
+        protected final K _key;
+        protected CanvasImage _canvas;
+        protected GlyphAtlas.Region _region;
+        protected Image _image;
+        protected int _refs;
+    }
+
+    /**
+     * Updates the memory budget of this cache, evicting unreferenced images as needed.
+     */
+    public void setBudget (int budget) {
+        _budget = budget;
+        trim(0, 0);
+    }
+
+    /** Returns the memory budget of this cache, in bytes. */
+    public int budget () {
+        return _budget;
+    }
+
+    /** Returns the number of bytes of image data held by this cache, including images that exceed
+     * its budget because they are still referenced. */
+    public int bytes () {
+        return _bytes;
+    }
+
+    /** Returns the number of entries held by this cache. */
+    public int size () {
+        return _entries.size();
+    }
+
+    /** Returns the number of lookups that were satisfied by a cached entry. */
+    public int hits () {
+        return _hits;
+    }
+
+    /** Returns the number of lookups that created a new entry. */
+    public int misses () {
+        return _misses;
+    }
+
+    /** Returns the fraction of lookups that were satisfied by a cached entry, or zero if there
+     * have been no lookups. */
+    public float hitRate () {
+        int total = _hits + _misses;
+        return (total == 0) ? 0 : _hits / (float)total;
+    }
+
+    /** Resets the hit and miss counts. */
+    public void resetStats () {
+        _hits = _misses = 0;
+    }
+
+    @Override public String toString () {
+        return "[entries=" + size() + ", bytes=" + _bytes + ", budget=" + _budget +
+            ", hits=" + _hits + ", misses=" + _misses + "]";
+    }
+
+    /**
+     * Creates a cache that retains unreferenced entries until it holds more than {@code
+     * maxEntries} entries or {@code budget} bytes of image data.
+     */
+    protected ImageCache (int budget, int maxEntries) {
+        this(budget, maxEntries, null);
+    }
+
+    /**
+     * Creates a cache that retains unreferenced entries until it holds more than {@code
+     * maxEntries} entries or {@code budget} bytes of image data, and that rasterizes its entries
+     * into regions of {@code atlas}, if it is not null.
+     */
+    protected ImageCache (int budget, int maxEntries, GlyphAtlas atlas) {
+        _budget = budget;
+        _maxEntries = maxEntries;
+        _atlas = atlas;
+    }
+
+    /**
+     * Returns the cached entry for {@code key}, or null. The lookup is counted as a hit or a miss
+     * accordingly.
+     */
+    protected Entry lookup (K key) {
+        Entry entry = _entries.get(key);
+        if (entry != null) _hits++;
+        else _misses++;
+        return entry;
+    }
+
+    /**
+     * Adds a newly created, unreferenced entry to the cache, evicting others as needed.
+     */
+    protected void add (Entry entry) {
+        _entries.put(entry._key, entry);
+        _bytes += entry.bytes();
+        trim(0, 0);
+    }
+
+    /**
+     * Adds a reference to the cached entry with the same key as {@code entry}, adding {@code
+     * entry} to the cache if it's new or has been evicted. Returns the referenced entry.
+     */
+    protected Entry retain (Entry entry) {
+        Entry centry = _entries.get(entry._key);
+        if (centry == null) {
+            _entries.put(entry._key, centry = entry);
+            _bytes += entry.bytes();
+        }
+        centry._refs++;
+        return centry;
+    }
+
+    /**
+     * Moves the canvas of {@code from} to {@code to}, so that {@code to} is rendered into it
+     * rather than into a new canvas, if {@code from} holds a single reference and its canvas can be
+     * recycled for {@code to} (see {@link #canRecycle}). {@code from} is then removed from the
+     * cache, though the caller must still release its reference. {@code to} must not yet be
+     * cached. Returns true if the canvas was moved.
+     */
+    protected boolean transfer (Entry from, Entry to) {
+        CanvasImage canvas = from._canvas;
+        if (from._refs != 1 || !canRecycle(canvas, to.width(), to.height())) return false;
+        _entries.remove(from._key);
+        _bytes -= from.bytes();
+        to._canvas = canvas;
+        from._canvas = null;
+        from._image = null;
+        return true;
+    }
+
+    /**
+     * Evicts unreferenced entries, least recently used first, until an image of the specified
+     * size will fit in our budget and we are within our entry limit, or no unreferenced entries
+     * remain. Returns the canvas of the first evicted entry that can be recycled for an image of
+     * the specified size (see {@link #canRecycle}), or null. Other evicted canvases are discarded.
+     */
+    protected CanvasImage trim (float width, float height) {
+        int needed = bytes(width, height);
+        CanvasImage recycled = null;
+        for (Iterator<Entry> iter = _entries.values().iterator(); iter.hasNext() &&
+                 (_bytes + needed > _budget || _entries.size() > _maxEntries); ) {
+            Entry entry = iter.next();
+            if (entry._refs > 0) continue;
+            iter.remove();
+            _bytes -= entry.bytes();
+            CanvasImage canvas = entry._canvas;
+            if (recycled == null && canRecycle(canvas, width, height)) recycled = canvas;
+            entry.discard();
+        }
+        return recycled;
+    }
+
+    /**
+     * Returns true if {@code canvas} can hold an image of the specified size, and is no more than
+     * {@link #RECYCLE_RATIO} times its area, so that recycling it doesn't keep a large canvas
+     * alive to hold a small image.
+     */
+    protected static boolean canRecycle (CanvasImage canvas, float width, float height) {
+        return canvas != null && canvas.width() >= width && canvas.height() >= height &&
+            canvas.width() * canvas.height() <= RECYCLE_RATIO * width * height;
+    }
+
+    protected static int bytes (float width, float height) {
+        return 4 * (int)Math.ceil(width) * (int)Math.ceil(height);
+    }
+
+    protected final int _maxEntries;
+    protected final GlyphAtlas _atlas;
+    protected int _budget, _bytes, _hits, _misses;
+
+    /** Our entries, in least to most recently used order. */
+    protected final Map<K,Entry> _entries = new LinkedHashMap<K,Entry>(16, 0.75f, true);
+
+    /** The largest ratio of a recycled canvas's area to that of the image rendered into it. */
+    protected static final float RECYCLE_RATIO = 2;
+}
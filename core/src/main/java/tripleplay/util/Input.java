@@ -6,7 +6,13 @@
 package tripleplay.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import playn.core.Events;
 import playn.core.Layer;
@@ -14,6 +20,7 @@ import playn.core.Layer;
 import pythagoras.f.IPoint;
 import pythagoras.f.IRectangle;
 import pythagoras.f.Point;
+import pythagoras.f.Rectangle;
 
 /**
  * Dispatches user input from a particular source.
@@ -40,6 +47,12 @@ public abstract class Input<L>
 
         /** Returns true if the (screen-coordinates) point triggers falls in this region. */
         public abstract boolean hitTest (IPoint p);
+
+        /** Returns the screen bounds of this region if they will never change, which allows the
+         * region to be spatially indexed, or null. */
+        public IRectangle fixedBounds () {
+            return null;
+        }
     }
 
     /** A region that encompasses the entire screen. */
@@ -62,6 +75,19 @@ public abstract class Input<L>
         protected IRectangle _bounds;
     }
 
+    /** A region that encompasses a copy of the supplied (screen) bounds, which never change. When
+     * a spatial index is in use (see {@link Input#setIndexCellSize}), hit testing does not consider
+     * fixed regions that are far from the point being tested. */
+    public static class FixedBoundsRegion extends BoundsRegion {
+        public FixedBoundsRegion (IRectangle bounds) {
+            super(new Rectangle(bounds));
+        }
+
+        @Override public IRectangle fixedBounds () {
+            return _bounds;
+        }
+    }
+
     /** A region that encompasses supplied bounds, as transformed by the supplied layer's
      * transform. While the layer in question is not visible, the region will match clicks. If a
      * reaction using this region is considered for processing and its layer has been removed from
@@ -81,11 +107,12 @@ public abstract class Input<L>
         @Override public boolean hitTest (IPoint p) {
             // convert the screen coordinates into layer-relative coordinates and check that the
             // point falls within the (layer-transform-relative) bounds
-            return _bounds.contains(Layer.Util.screenToLayer(_layer, p, new Point()));
+            return _bounds.contains(Layer.Util.screenToLayer(_layer, p, _lp));
         }
 
         protected Layer _layer;
         protected IRectangle _bounds;
+        protected final Point _lp = new Point();
     }
 
     /** A region that encompasses the supplied layer's (transformed) bounds. While the layer in
@@ -105,12 +132,13 @@ public abstract class Input<L>
         }
         @Override public boolean hitTest (IPoint p) {
             // convert the screen coordinates into layer-relative coordinates
-            Point lp = Layer.Util.screenToLayer(_layer, p, new Point());
+            Point lp = Layer.Util.screenToLayer(_layer, p, _lp);
             float x = lp.x, y = lp.y;
             return (x > 0 && y > 0 && x < _layer.scaledWidth() && y < _layer.scaledHeight());
         }
 
         protected Layer.HasSize _layer;
+        protected final Point _lp = new Point();
     }
 
     /**
@@ -158,44 +186,250 @@ public abstract class Input<L>
         return register(new SizedLayerRegion(layer), listener);
     }
 
+    /**
+     * Configures the spatial indexing of reactions whose regions have {@linkplain
+     * Region#fixedBounds fixed bounds}. Such reactions are placed in a uniform grid of cells of
+     * the specified size, so that hit testing considers only those in the cell containing the
+     * pointer, rather than all of them. A cell size comparable to that of the indexed regions works
+     * best. A size of zero (the default) disables indexing.
+     */
+    public void setIndexCellSize (float cellSize) {
+        reactor().setIndexCellSize(cellSize);
+    }
+
+    /**
+     * Configures whether move and drag events are coalesced. When coalescing, only the latest of
+     * the move or drag events received since the last call to {@link #flush} is dispatched, by
+     * that call, so that input devices which deliver several events per frame cost one hit test
+     * and one notification per frame. A pending event is also dispatched before any other event
+     * (a press, release or wheel scroll), so the order of events is preserved. When coalescing,
+     * {@link #flush} must be called once per frame, e.g. from {@code Game.update}.
+     */
+    public void setCoalescing (boolean coalesce) {
+        reactor().setCoalescing(coalesce);
+    }
+
+    /**
+     * Dispatches the pending coalesced move or drag event, if any.
+     */
+    public void flush () {
+        reactor().flush();
+    }
+
+    /** Returns the number of events dispatched to listeners since the counts were last reset. */
+    public int dispatchCount () {
+        return reactor()._dispatched;
+    }
+
+    /** Returns the number of move or drag events that were dropped in favor of a later one since
+     * the counts were last reset. */
+    public int coalescedCount () {
+        return reactor()._coalesced;
+    }
+
+    /** Returns the number of hit tests performed since the counts were last reset. */
+    public int hitTestCount () {
+        return reactor()._hitTests;
+    }
+
+    /** Resets the dispatch, coalesced and hit test counts. */
+    public void resetCounts () {
+        Reactor<L> reactor = reactor();
+        reactor._dispatched = reactor._coalesced = reactor._hitTests = 0;
+    }
+
+    /** Returns the reactor that dispatches our input. */
+    protected abstract Reactor<L> reactor ();
+
     protected abstract static class Reactor<L> {
         public L hitTest (Events.Position event) {
-            // take a snapshot of the regions list to avoid concurrent modification if reactions
-            // are added or removed during processing
-            List<Reaction<L>> snapshot = new ArrayList<Reaction<L>>(_reactions);
-            Point p = new Point(event.x(), event.y());
-            for (int ii = snapshot.size() - 1; ii >= 0; ii--) {
-                Reaction<L> r = snapshot.get(ii);
+            return hitTest(event.x(), event.y());
+        }
+
+        public L hitTest (float x, float y) {
+            _hitTests++;
+            _point.set(x, y);
+            // find the most recently registered unindexed reaction that is hit; iterating
+            // backwards allows expired reactions to be removed without disturbing the iteration,
+            // and no listener is notified until we're done
+            Reaction<L> hit = null;
+            for (int ii = _reactions.size() - 1; ii >= 0; ii--) {
+                Reaction<L> r = _reactions.get(ii);
                 if (r.region.hasExpired()) {
-                    _reactions.remove(r);
-                } else if (r.region.canTrigger() && r.region.hitTest(p)) {
-                    return r.listener;
+                    _reactions.remove(ii);
+                } else if (r.region.canTrigger() && r.region.hitTest(_point)) {
+                    hit = r;
+                    break;
                 }
             }
-            return null;
+            // an indexed reaction takes precedence if it was registered more recently
+            if (_index != null) {
+                Reaction<L> ihit = _index.hitTest(_point, (hit == null) ? -1 : hit.seq);
+                if (ihit != null) hit = ihit;
+            }
+            return (hit == null) ? null : hit.listener;
         }
 
         public Registration register (Region region, L listener) {
-            final Reaction<L> reaction = new Reaction<L>(region, listener);
-            _reactions.add(reaction);
+            final Reaction<L> reaction = new Reaction<L>(region, listener, _nextSeq++);
+            add(reaction);
             return new Registration() {
                 @Override public void cancel () {
-                    _reactions.remove(reaction);
+                    if (reaction.indexed) _index.remove(reaction);
+                    else _reactions.remove(reaction);
                 }
             };
         }
 
-        /** A list of all registered reactions. */
+        public void setCoalescing (boolean coalesce) {
+            if (!coalesce) flush();
+            _coalesce = coalesce;
+        }
+
+        /** Dispatches any pending coalesced event. */
+        public void flush () {
+            // nothing by default
+        }
+
+        public void setIndexCellSize (float cellSize) {
+            // gather all of our reactions, and readd them in order of registration
+            List<Reaction<L>> all = new ArrayList<Reaction<L>>(_reactions);
+            if (_index != null) all.addAll(_index.reactions());
+            Collections.sort(all, new Comparator<Reaction<L>>() {
+                public int compare (Reaction<L> r1, Reaction<L> r2) {
+                    return r1.seq - r2.seq;
+                }
+            });
+            _reactions.clear();
+            _index = (cellSize > 0) ? new Grid<L>(cellSize) : null;
+            for (Reaction<L> r : all) {
+                r.indexed = false;
+                add(r);
+            }
+        }
+
+        /** Adds the supplied reaction to our index, if possible, or to our list otherwise. */
+        protected void add (Reaction<L> reaction) {
+            IRectangle bounds = reaction.region.fixedBounds();
+            if (_index == null || bounds == null || !_index.add(reaction, bounds)) {
+                _reactions.add(reaction);
+            }
+        }
+
+        /** A list of all registered reactions that are not spatially indexed. */
         protected List<Reaction<L>> _reactions = new ArrayList<Reaction<L>>();
+
+        /** The index of reactions with fixed bounds, or null if we're not indexing. */
+        protected Grid<L> _index;
+
+        protected int _nextSeq;
+        protected final Point _point = new Point();
+
+        /** Whether move and drag events are coalesced until {@link #flush}. */
+        protected boolean _coalesce;
+
+        protected int _dispatched, _coalesced, _hitTests;
+    }
+
+    /**
+     * A uniform grid of cells, each of which lists, in order of registration, the indexed
+     * reactions whose bounds overlap it.
+     */
+    protected static class Grid<L> {
+        public Grid (float cellSize) {
+            _cellSize = cellSize;
+        }
+
+        /** Adds the supplied reaction to the cells overlapped by {@code bounds}, unless it spans
+         * too many cells to be worth indexing, in which case false is returned. */
+        public boolean add (Reaction<L> reaction, IRectangle bounds) {
+            int x0 = cell(bounds.minX()), y0 = cell(bounds.minY());
+            int x1 = cell(bounds.maxX()), y1 = cell(bounds.maxY());
+            if ((x1 - x0 + 1L) * (y1 - y0 + 1L) > MAX_CELLS) return false;
+            for (int cy = y0; cy <= y1; cy++) {
+                for (int cx = x0; cx <= x1; cx++) {
+                    Integer key = key(cx, cy);
+                    List<Reaction<L>> cell = _cells.get(key);
+                    if (cell == null) _cells.put(key, cell = new ArrayList<Reaction<L>>());
+                    cell.add(reaction);
+                }
+            }
+            _members.add(reaction);
+            reaction.indexed = true;
+            return true;
+        }
+
+        /** Removes the supplied reaction from the index, if it is present. */
+        public void remove (Reaction<L> reaction) {
+            if (!_members.remove(reaction)) return;
+            reaction.indexed = false;
+            IRectangle bounds = reaction.region.fixedBounds();
+            int x0 = cell(bounds.minX()), y0 = cell(bounds.minY());
+            int x1 = cell(bounds.maxX()), y1 = cell(bounds.maxY());
+            for (int cy = y0; cy <= y1; cy++) {
+                for (int cx = x0; cx <= x1; cx++) {
+                    Integer key = key(cx, cy);
+                    List<Reaction<L>> cell = _cells.get(key);
+                    if (cell == null) continue;
+                    cell.remove(reaction);
+                    if (cell.isEmpty()) _cells.remove(key);
+                }
+            }
+        }
+
+        /** Returns the most recently registered reaction that is hit by {@code p} and was
+         * registered after {@code minSeq}, or null. Expired reactions are removed as they are
+         * encountered. */
+        public Reaction<L> hitTest (IPoint p, int minSeq) {
+            List<Reaction<L>> cell = _cells.get(key(cell(p.x()), cell(p.y())));
+            if (cell == null) return null;
+            for (int ii = cell.size() - 1; ii >= 0 && ii < cell.size(); ii--) {
+                Reaction<L> r = cell.get(ii);
+                if (r.seq < minSeq) break;
+                if (r.region.hasExpired()) remove(r);
+                else if (r.region.canTrigger() && r.region.hitTest(p)) return r;
+            }
+            return null;
+        }
+
+        /** Returns all of the reactions in the index. */
+        public Set<Reaction<L>> reactions () {
+            return _members;
+        }
+
+        protected int cell (float coord) {
+            return (int)Math.floor(coord / _cellSize);
+        }
+
+        protected static Integer key (int cx, int cy) {
+            // cells that are very far apart may share a key, which is harmless as every
+            // reaction in a cell is hit tested
+            return (cx << 16) ^ (cy & 0xFFFF);
+        }
+
+        protected final float _cellSize;
+        protected final Map<Integer,List<Reaction<L>>> _cells =
+            new HashMap<Integer,List<Reaction<L>>>();
+        protected final Set<Reaction<L>> _members = new HashSet<Reaction<L>>();
+
+        /** Reactions that span more than this many cells are not indexed. */
+        protected static final int MAX_CELLS = 64;
     }
 
     protected static final class Reaction<T> {
         public final Region region;
         public final T listener;
 
-        public Reaction (Region region, T listener) {
+        /** The order in which this reaction was registered; later reactions take precedence. */
+        public final int seq;
+
+        /** Whether this reaction is in its reactor's spatial index. */
+        public boolean indexed;
+
+        public Reaction (Region region, T listener, int seq) {
             this.region = region;
             this.listener = listener;
+            this.seq = seq;
         }
     }
 }
@@ -30,24 +30,32 @@ public class MouseInput extends Input<Mouse.Listener>
         return _reactor.register(region, listener);
     }
 
+    @Override protected Reactor<Mouse.Listener> reactor () {
+        return _reactor;
+    }
+
     /** Receives input from the PlayN Mouse service. */
     protected class MouseReactor extends Reactor<Mouse.Listener> implements Mouse.Listener {
         @Override public void onMouseDown (Mouse.ButtonEvent event) {
+            flush();
             _target = hitTest(event);
             if (_target != null) {
                 _down = true;
                 _target.onMouseDown(event);
+                _dispatched++;
             }
         }
         @Override public void onMouseMove (Mouse.MotionEvent event) {
-            if (!_down) {
-                _target = hitTest(event);
-            }
-            if (_target != null) {
-                _target.onMouseMove(event);
+            if (_coalesce) {
+                // retain only the latest move, to be hit tested and dispatched on flush
+                if (_pendingMove != null) _coalesced++;
+                _pendingMove = event;
+            } else {
+                dispatchMove(event);
             }
         }
         @Override public void onMouseUp (Mouse.ButtonEvent event) {
+            flush();
             if (_down) {
                 _down = false;
                 Mouse.Listener oldHover = _target;
@@ -58,15 +66,35 @@ public class MouseInput extends Input<Mouse.Listener>
                 // notify onMouseUp last so that our internal invariants are not broken if the
                 // listener decides to throw an unchecked exception
                 oldHover.onMouseUp(event);
+                _dispatched++;
             }
         }
         @Override public void onMouseWheelScroll (Mouse.WheelEvent event) {
+            flush();
             if (_target != null) {
                 _target.onMouseWheelScroll(event);
+                _dispatched++;
+            }
+        }
+        @Override public void flush () {
+            Mouse.MotionEvent event = _pendingMove;
+            if (event == null) return;
+            _pendingMove = null;
+            dispatchMove(event);
+        }
+
+        protected void dispatchMove (Mouse.MotionEvent event) {
+            if (!_down) {
+                _target = hitTest(event);
+            }
+            if (_target != null) {
+                _target.onMouseMove(event);
+                _dispatched++;
             }
         }
 
         protected Mouse.Listener _target;
+        protected Mouse.MotionEvent _pendingMove;
         protected boolean _down;
     };
 
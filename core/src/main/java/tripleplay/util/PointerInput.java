@@ -40,26 +40,50 @@ public class PointerInput extends Input<Pointer.Listener>
         return ((PointerReactor)plistener).register(region, listener);
     }
 
+    @Override protected Reactor<Pointer.Listener> reactor () {
+        return (PointerReactor)plistener;
+    }
+
     protected class PointerReactor extends Reactor<Pointer.Listener>
         implements Pointer.Listener {
         @Override public void onPointerStart (Pointer.Event event) {
+            flush();
             _active = hitTest(event);
             if (_active != null) {
                 _active.onPointerStart(event);
+                _dispatched++;
             }
         }
         @Override public void onPointerDrag (Pointer.Event event) {
-            if (_active != null) {
+            if (_active == null) return;
+            if (_coalesce) {
+                // retain only the latest drag, to be dispatched on flush
+                if (_pendingDrag != null) _coalesced++;
+                _pendingDrag = event;
+            } else {
                 _active.onPointerDrag(event);
+                _dispatched++;
             }
         }
         @Override public void onPointerEnd (Pointer.Event event) {
+            flush();
             if (_active != null) {
                 _active.onPointerEnd(event);
+                _dispatched++;
                 _active = null;
             }
         }
+        @Override public void flush () {
+            Pointer.Event event = _pendingDrag;
+            if (event == null) return;
+            _pendingDrag = null;
+            if (_active != null) {
+                _active.onPointerDrag(event);
+                _dispatched++;
+            }
+        }
 
         protected Pointer.Listener _active;
+        protected Pointer.Event _pendingDrag;
     };
 }
@@ -0,0 +1,134 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import playn.core.Canvas;
+import playn.core.TextFormat;
+import playn.core.TextLayout;
+import static playn.core.PlayN.graphics;
+
+/**
+ * Caches laid out and rasterized text, keyed by the text, its format, its effect and its color.
+ * Text that is displayed many times over (the same label on forty buttons, say) is laid out and
+ * rasterized once and the resulting image shared.
+ *
+ * <p>{@link #get} looks up (or lays out) text without retaining it, which suffices for measuring.
+ * A user that displays the text must {@link #acquire} an entry, which rasterizes it on demand, and
+ * {@link Entry#release} it when it's no longer displayed. Unreferenced entries are retained and
+ * evicted per {@link ImageCache}.</p>
+ *
+ * <p>If the cache is given a {@link GlyphAtlas}, text is rasterized into regions of its pages, so
+ * that a screen full of text is drawn with a handful of texture binds. Rasterizing new text then
+ * re-uploads the whole page into which it is drawn, so text that changes every few frames is
+ * better drawn with a {@link BitmapFont}.</p>
+ */
+public class TextCache extends ImageCache<TextCache.Key>
+{
+    /** A laid out (and possibly rasterized) piece of text. */
+    public class Entry extends ImageCache<Key>.Entry {
+        /** The text, laid out per the format with which this entry was created. */
+        public final TextLayout layout;
+
+        /** Returns the width of this text, including the space needed by its effect. */
+        @Override public float width () {
+            return _key.effect.adjustWidth(layout.width());
+        }
+
+        /** Returns the height of this text, including the space needed by its effect. */
+        @Override public float height () {
+            return _key.effect.adjustHeight(layout.height());
+        }
+
+        protected Entry (Key key, TextLayout layout) {
+            super(key);
+            this.layout = layout;
+        }
+
+        @Override protected void render (Canvas canvas, float width, float height) {
+            _key.effect.render(canvas, layout, _key.color, 0, 0);
+        }
+    }
+
+    /**
+     * Creates a cache that retains unreferenced entries until it holds more than {@code
+     * maxEntries} entries or {@code budget} bytes of image data.
+     */
+    public TextCache (int budget, int maxEntries) {
+        super(budget, maxEntries);
+    }
+
+    /**
+     * Creates a cache that rasterizes text into regions of the supplied atlas, and retains
+     * unreferenced entries until it holds more than {@code maxEntries} entries or {@code budget}
+     * bytes of image data.
+     */
+    public TextCache (int budget, int maxEntries, GlyphAtlas atlas) {
+        super(budget, maxEntries, atlas);
+    }
+
+    /**
+     * Returns the entry for the supplied text and configuration, laying out the text if it is not
+     * already cached. The entry is not referenced, and may later be evicted.
+     */
+    public Entry get (String text, TextFormat format, EffectRenderer effect, int color) {
+        Key key = new Key(text, format, effect, color);
+        Entry entry = (Entry)lookup(key);
+        if (entry == null) add(entry = new Entry(key, graphics().layoutText(text, format)));
+        return entry;
+    }
+
+    /**
+     * Acquires a reference to the entry for the supplied text and configuration, laying out the
+     * text if it is not already cached.
+     */
+    public Entry acquire (String text, TextFormat format, EffectRenderer effect, int color) {
+        return acquire(get(text, format, effect, color));
+    }
+
+    /**
+     * Acquires a reference to the supplied entry, previously obtained via {@link #get}. If it has
+     * since been evicted, an equivalent entry is acquired instead.
+     */
+    public Entry acquire (Entry entry) {
+        return (Entry)retain(entry);
+    }
+
+    /** Identifies an entry: text and the configuration with which it is laid out and rendered. */
+    protected static class Key {
+        public final String text;
+        public final TextFormat format;
+        public final EffectRenderer effect;
+        public final int color;
+
+        public Key (String text, TextFormat format, EffectRenderer effect, int color) {
+            this.text = text;
+            this.format = format;
+            this.effect = effect;
+            this.color = color;
+        }
+
+        @Override public int hashCode () {
+            int code = text.hashCode();
+            code = 31 * code + (format.font == null ? 0 : format.font.hashCode());
+            code = 31 * code + (int)format.wrapWidth;
+            code = 31 * code + format.align.hashCode();
+            code = 31 * code + effect.hashCode();
+            return 31 * code + color;
+        }
+
+        @Override public boolean equals (Object other) {
+            if (!(other instanceof Key)) return false;
+            Key okey = (Key)other;
+            return text.equals(okey.text) && Objects.equal(format.font, okey.format.font) &&
+                format.wrapWidth == okey.format.wrapWidth && format.align == okey.format.align &&
+                effect.equals(okey.effect) && color == okey.color;
+        }
+
+        @Override public String toString () {
+            return "'" + text + "' " + format + " " + effect + " " + Integer.toHexString(color);
+        }
+    }
+}
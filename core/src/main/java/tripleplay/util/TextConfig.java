@@ -81,6 +81,15 @@ public class TextConfig
                               new EffectRenderer.VectorOutline(outlineColor, outlineWidth));
     }
 
+    /**
+     * Returns a bitmap font that renders text in this config's font, effect and color. Text that
+     * changes frequently is far cheaper to render via a bitmap font than by rasterizing it anew
+     * with each change, though it is limited to a single line. See {@link BitmapFont}.
+     */
+    public BitmapFont bitmapFont () {
+        return BitmapFont.get(this);
+    }
+
     /**
      * Lays out the supplied text using this config's format.
      */
@@ -5,6 +5,12 @@
 
 package tripleplay.util;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import react.Function;
 import react.RSet;
 import react.Slot;
@@ -17,25 +23,61 @@ import static playn.core.PlayN.log;
  * Makes using PlayN {@link Storage} more civilized. Provides getting and setting of typed values
  * (ints, booleans, etc.). Provides support for default values. Provides {@link Value} interface to
  * storage items.
+ *
+ * <p>Values are cached (in parsed form) after they are first read, so repeated reads do not touch
+ * the underlying storage. The cache is always enabled, so the storage must not be modified other
+ * than via this instance. Only keys that have values are cached: reads of missing keys go to the
+ * storage each time, and removed keys are dropped from the cache once written. By default,
+ * writes are passed through to storage immediately. If write deferral is enabled, changed keys
+ * are instead noted and written in a single batch by {@link #flush}, which should be called at
+ * the end of each frame (and before the game is paused or exits).</p>
  */
 public class TypedStorage
 {
     public TypedStorage (Storage storage) {
+        this(storage, false);
+    }
+
+    /**
+     * Creates a typed storage instance.
+     * @param deferWrites if true, changes are not written to {@code storage} until {@link #flush}
+     * is called.
+     */
+    public TypedStorage (Storage storage, boolean deferWrites) {
         _storage = storage;
+        _deferWrites = deferWrites;
+    }
+
+    /**
+     * Writes any changes that have not yet been written to the underlying storage. This is only
+     * necessary if write deferral is enabled, in which case it should be called from {@link
+     * playn.core.Game#update}, or similar.
+     */
+    public void flush () {
+        if (_dirty.isEmpty()) return;
+        for (String key : _dirty) write(key, _cache.get(key));
+        _dirty.clear();
+    }
+
+    /**
+     * Returns true if there are changes that have not yet been written to the underlying storage.
+     */
+    public boolean hasPendingWrites () {
+        return !_dirty.isEmpty();
     }
 
     /**
      * Returns whether the specified key is mapped to some value.
      */
     public boolean contains (String key) {
-        return _storage.getItem(key) != null;
+        return entry(key).data() != null;
     }
 
     /**
      * Returns the specified property as a string, returning null if the property does not exist.
      */
     public String get (String key) {
-        return _storage.getItem(key);
+        return entry(key).data();
     }
 
     /**
@@ -43,7 +85,7 @@ public class TypedStorage
      * property does not exist.
      */
     public String get (String key, String defval) {
-        String value = _storage.getItem(key);
+        String value = entry(key).data();
         return (value == null) ? defval : value;
     }
 
@@ -51,7 +93,7 @@ public class TypedStorage
      * Sets the specified property to the supplied string value.
      */
     public void set (String key, String value) {
-        _storage.setItem(key, value);
+        update(key, value, value);
     }
 
     /**
@@ -60,10 +102,14 @@ public class TypedStorage
      * the default value will be returned.
      */
     public int get (String key, int defval) {
-        String value = null;
+        Entry entry = entry(key);
+        if (entry.parsed instanceof Integer) return (Integer)entry.parsed;
+        String value = entry.data();
+        if (value == null) return defval;
         try {
-            value = _storage.getItem(key);
-            return (value == null) ? defval : Integer.parseInt(value);
+            int ivalue = Integer.parseInt(value);
+            entry.parsed = ivalue;
+            return ivalue;
         } catch (Exception e) {
             log().warn("Failed to parse int prop [key=" + key + ", value=" + value + "]", e);
             return defval;
@@ -74,7 +120,7 @@ public class TypedStorage
      * Sets the specified property to the supplied int value.
      */
     public void set (String key, int value) {
-        _storage.setItem(key, String.valueOf(value));
+        update(key, String.valueOf(value), value);
     }
 
     /**
@@ -83,10 +129,14 @@ public class TypedStorage
      * the default value will be returned.
      */
     public long get (String key, long defval) {
-        String value = null;
+        Entry entry = entry(key);
+        if (entry.parsed instanceof Long) return (Long)entry.parsed;
+        String value = entry.data();
+        if (value == null) return defval;
         try {
-            value = _storage.getItem(key);
-            return (value == null) ? defval : Long.parseLong(value);
+            long lvalue = Long.parseLong(value);
+            entry.parsed = lvalue;
+            return lvalue;
         } catch (Exception e) {
             log().warn("Failed to parse long prop [key=" + key + ", value=" + value + "]", e);
             return defval;
@@ -97,7 +147,7 @@ public class TypedStorage
      * Sets the specified property to the supplied long value.
      */
     public void set (String key, long value) {
-        _storage.setItem(key, String.valueOf(value));
+        update(key, String.valueOf(value), value);
     }
 
     /**
@@ -106,10 +156,14 @@ public class TypedStorage
      * logged and the default value will be returned.
      */
     public double get (String key, double defval) {
-        String value = null;
+        Entry entry = entry(key);
+        if (entry.parsed instanceof Double) return (Double)entry.parsed;
+        String value = entry.data();
+        if (value == null) return defval;
         try {
-            value = _storage.getItem(key);
-            return (value == null) ? defval : Double.parseDouble(value);
+            double dvalue = Double.parseDouble(value);
+            entry.parsed = dvalue;
+            return dvalue;
         } catch (Exception e) {
             log().warn("Failed to parse double prop [key=" + key + ", value=" + value + "]", e);
             return defval;
@@ -120,7 +174,7 @@ public class TypedStorage
      * Sets the specified property to the supplied double value.
      */
     public void set (String key, double value) {
-        _storage.setItem(key, String.valueOf(value));
+        update(key, String.valueOf(value), value);
     }
 
     /**
@@ -129,15 +183,20 @@ public class TypedStorage
      * considered true; all others, false.
      */
     public boolean get (String key, boolean defval) {
-        String value = _storage.getItem(key);
-        return (value == null) ? defval : value.equalsIgnoreCase("t");
+        Entry entry = entry(key);
+        if (entry.parsed instanceof Boolean) return (Boolean)entry.parsed;
+        String value = entry.data();
+        if (value == null) return defval;
+        boolean bvalue = value.equalsIgnoreCase("t");
+        entry.parsed = bvalue;
+        return bvalue;
     }
 
     /**
      * Sets the specified property to the supplied boolean value.
      */
     public void set (String key, boolean value) {
-        _storage.setItem(key, value ? "t" : "f");
+        update(key, value ? "t" : "f", value);
     }
 
     /**
@@ -147,10 +206,14 @@ public class TypedStorage
      */
     public <E extends Enum<E>> E get (String key, E defval) {
         @SuppressWarnings("unchecked") Class<E> eclass = (Class<E>)defval.getClass();
-        String value = null;
+        Entry entry = entry(key);
+        if (eclass.isInstance(entry.parsed)) return eclass.cast(entry.parsed);
+        String value = entry.data();
+        if (value == null) return defval;
         try {
-            value = _storage.getItem(key);
-            return (value == null) ? defval : Enum.valueOf(eclass, value);
+            E evalue = Enum.valueOf(eclass, value);
+            entry.parsed = evalue;
+            return evalue;
         } catch (Exception e) {
             log().warn("Failed to parse enum prop [key=" + key + ", value=" + value + "]", e);
             return defval;
@@ -161,14 +224,14 @@ public class TypedStorage
      * Sets the specified property to the supplied enum value.
      */
     public void set (String key, Enum<?> value) {
-        _storage.setItem(key, value.name());
+        update(key, value.name(), value);
     }
 
     /**
      * Removes the specified key (and its value) from storage.
      */
     public void remove (String key) {
-        _storage.removeItem(key);
+        update(key, null, null);
     }
 
     /**
@@ -280,38 +343,118 @@ public class TypedStorage
      * should perform escaping and unescaping of commas if the encoded representation of the items
      * might naturally contain commas.
      *
-     * <p>Any modifications to the set will be immediately persisted back to storage. Note that
-     * each call to this method yields a new {@link RSet} and those sets will not coordinate with
-     * one another, so the caller must be sure to only call this method once for a given property
-     * and share that set properly. Changes to the underlying persistent value that do not take
-     * place through the returned set will <em>not</em> be reflected in the set and will be
-     * overwritten if the set changes.</p>
+     * <p>Any modifications to the set (additions and removals) will be persisted back to storage.
+     * Each item is encoded once, when it is added, and the stored string is only rebuilt when it
+     * is next written. Note that each call to this method yields a new {@link RSet} and those sets
+     * will not coordinate with one another, so the caller must be sure to only call this method
+     * once for a given property and share that set properly. Changes to the underlying persistent
+     * value that do not take place through the returned set will <em>not</em> be reflected in the
+     * set and will be overwritten if the set changes.</p>
      */
     public <E> RSet<E> setFor (final String key, Function<String,E> toFunc,
                                final Function<E,String> fromFunc) {
         final RSet<E> rset = RSet.create();
+        final SetEntry<E> entry = new SetEntry<E>();
         String data = get(key, (String)null);
         if (data != null) {
             for (String value : data.split(",")) {
                 try {
-                    rset.add(toFunc.apply(value));
+                    E item = toFunc.apply(value);
+                    rset.add(item);
+                    entry.items.put(item, value);
                 } catch (Exception e) {
                     log().warn("Invalid value (key=" + key + "): " + value, e);
                 }
             }
         }
+        _cache.put(key, entry);
         rset.connect(new RSet.Listener<E>() {
-            @Override public void onAdd (E unused) {
+            @Override public void onAdd (E value) {
+                String item = fromFunc.apply(value);
+                if (entry.items.put(value, item) != null) entry.data = null; // replaced
+                else if (entry.data != null) entry.data = entry.data + "," + item;
+                changed(key, entry);
+            }
+            @Override public void onRemove (E value) {
+                entry.items.remove(value);
+                entry.data = null;
+                changed(key, entry);
+            }
+        });
+        return rset;
+    }
+
+    /** Returns the cache entry for the specified key, loading it from storage if needed. Keys
+     * that have no value are not cached, so that probing them does not grow the cache. */
+    protected Entry entry (String key) {
+        Entry entry = _cache.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entry.data = _storage.getItem(key);
+            if (entry.data != null) _cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    protected void update (String key, String data, Object parsed) {
+        Entry entry = _cache.get(key);
+        // a set's entry is managed by the set; if the key is overwritten, detach it
+        if (entry == null || entry instanceof SetEntry<?>) {
+            entry = new Entry();
+            _cache.put(key, entry);
+        }
+        entry.data = data;
+        entry.parsed = parsed;
+        changed(key, entry);
+    }
+
+    protected void changed (String key, Entry entry) {
+        // make sure the entry is current, in case an overwritten set is subsequently changed
+        _cache.put(key, entry);
+        if (_deferWrites) _dirty.add(key);
+        else write(key, entry);
+    }
+
+    protected void write (String key, Entry entry) {
+        String data = entry.data();
+        if (data != null) _storage.setItem(key, data);
+        else {
+            _storage.removeItem(key);
+            // a set's entry is kept while the set exists, even when empty
+            if (!(entry instanceof SetEntry<?>)) _cache.remove(key);
+        }
+    }
+
+    /** A cached value: its encoded form and, once it has been read or written as a specific
+     * type, its parsed form. */
+    protected static class Entry {
+        public String data;
+        public Object parsed;
+
+        public String data () {
+            return data;
+        }
+    }
+
+    /** The entry for a set, whose encoded form is rebuilt lazily after items are removed. */
+    protected static class SetEntry<E> extends Entry {
+        public final Map<E,String> items = new LinkedHashMap<E,String>();
+
+        @Override public String data () {
+            if (data == null && !items.isEmpty()) {
                 StringBuilder buf = new StringBuilder();
-                for (E value : rset) {
+                for (String item : items.values()) {
                     if (buf.length() > 0) buf.append(",");
-                    buf.append(fromFunc.apply(value));
+                    buf.append(item);
                 }
-                set(key, buf.toString());
+                data = buf.toString();
             }
-        });
-        return rset;
+            return data;
+        }
     }
 
     protected final Storage _storage;
+    protected final boolean _deferWrites;
+    protected final Map<String,Entry> _cache = new HashMap<String,Entry>();
+    protected final Set<String> _dirty = new LinkedHashSet<String>();
 }
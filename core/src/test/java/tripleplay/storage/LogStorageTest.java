@@ -0,0 +1,166 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2012, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class LogStorageTest
+{
+    @Before public void createFile () throws IOException {
+        _file = File.createTempFile("logstorage", "");
+        _file.delete();
+    }
+
+    @After public void deleteFiles () {
+        new File(_file.getPath() + ".0").delete();
+        new File(_file.getPath() + ".1").delete();
+    }
+
+    @Test public void testBasics () throws IOException {
+        LogStorage storage = new LogStorage(_file, false);
+        assertNull(storage.getItem("foo"));
+        storage.setItem("foo", "bar");
+        storage.setItem("baz", "été ☃");
+        assertEquals("bar", storage.getItem("foo"));
+        storage.setItem("foo", "bif");
+        assertEquals("bif", storage.getItem("foo"));
+        storage.removeItem("foo");
+        assertNull(storage.getItem("foo"));
+        assertEquals(keys("baz"), keys(storage));
+        storage.close();
+    }
+
+    @Test public void testRecover () throws IOException {
+        LogStorage storage = new LogStorage(_file, false);
+        for (int ii = 0; ii < 100; ii++) storage.setItem("key" + ii, "value" + ii);
+        for (int ii = 0; ii < 100; ii += 2) storage.removeItem("key" + ii);
+        storage.setItem("key1", "changed");
+        storage.close();
+
+        storage = new LogStorage(_file, false);
+        assertEquals(50, keys(storage).size());
+        assertEquals("changed", storage.getItem("key1"));
+        assertEquals("value3", storage.getItem("key3"));
+        assertNull(storage.getItem("key2"));
+        // make sure we append after the recovered records
+        storage.setItem("key2", "restored");
+        storage.close();
+
+        storage = new LogStorage(_file, false);
+        assertEquals("restored", storage.getItem("key2"));
+        assertEquals(51, keys(storage).size());
+        storage.close();
+    }
+
+    @Test public void testTornRecord () throws IOException {
+        LogStorage storage = new LogStorage(_file, false);
+        storage.setItem("one", "1");
+        storage.setItem("two", "2");
+        int end = storage._log.pos;
+        storage.setItem("three", "3");
+        storage.close();
+
+        // corrupt the last record, as if we crashed while writing it
+        RandomAccessFile raf = new RandomAccessFile(new File(_file.getPath() + ".0"), "rw");
+        raf.seek(end + 12);
+        raf.write('X');
+        raf.close();
+
+        storage = new LogStorage(_file, false);
+        assertEquals(keys("one", "two"), keys(storage));
+        storage.setItem("four", "4");
+        storage.close();
+
+        storage = new LogStorage(_file, false);
+        assertEquals(keys("one", "two", "four"), keys(storage));
+        storage.close();
+    }
+
+    @Test public void testCompaction () throws IOException {
+        LogStorage storage = new LogStorage(_file, false);
+        StringBuilder buf = new StringBuilder();
+        for (int ii = 0; ii < 100; ii++) buf.append("0123456789");
+        String value = buf.toString();
+        // overwrite the same keys until we've compacted a few times
+        for (int ii = 0; ii < 2000; ii++) storage.setItem("key" + (ii % 10), value + ii);
+        assertTrue(storage.garbage() < LogStorage.COMPACT_THRESHOLD * 2);
+        assertTrue(storage._log.generation > 2);
+        storage.close();
+
+        storage = new LogStorage(_file, false);
+        assertEquals(10, keys(storage).size());
+        for (int ii = 0; ii < 10; ii++) {
+            assertEquals(value + (1990 + ii), storage.getItem("key" + ii));
+        }
+        storage.close();
+    }
+
+    @Test public void testBackgroundCompaction () throws Exception {
+        LogStorage storage = new LogStorage(_file, true);
+        String value = new String(new char[1000]).replace('\0', 'x');
+        for (int ii = 0; ii < 2000; ii++) storage.setItem("key" + (ii % 10), value + ii);
+        // wait for any compaction in progress to complete
+        for (int ii = 0; ii < 100 && storage.isCompacting(); ii++) Thread.sleep(10);
+        for (int ii = 0; ii < 10; ii++) {
+            assertEquals(value + (1990 + ii), storage.getItem("key" + ii));
+        }
+        storage.close();
+
+        storage = new LogStorage(_file, false);
+        for (int ii = 0; ii < 10; ii++) {
+            assertEquals(value + (1990 + ii), storage.getItem("key" + ii));
+        }
+        storage.close();
+    }
+
+    @Test public void testIncompleteCompaction () throws IOException {
+        LogStorage storage = new LogStorage(_file, false);
+        storage.setItem("one", "1");
+        storage.setItem("two", "2");
+        storage.close();
+
+        // write a newer log whose header made it to disk, but whose records did not, as may happen
+        // if the OS crashes during a compaction
+        LogStorage.Segment nlog = new LogStorage.Segment(
+            new File(_file.getPath() + ".1"), 2, LogStorage.INITIAL_SIZE);
+        nlog.pos += 100;
+        nlog.writeHeader();
+        nlog.force();
+        nlog.close();
+
+        // we should recover from the old log, and keep using it
+        storage = new LogStorage(_file, false);
+        assertEquals(keys("one", "two"), keys(storage));
+        assertEquals(1, storage._log.generation);
+        storage.setItem("three", "3");
+        storage.close();
+
+        storage = new LogStorage(_file, false);
+        assertEquals(keys("one", "two", "three"), keys(storage));
+        storage.close();
+    }
+
+    protected static Set<String> keys (String... keys) {
+        Set<String> set = new HashSet<String>();
+        for (String key : keys) set.add(key);
+        return set;
+    }
+
+    protected static Set<String> keys (LogStorage storage) {
+        Set<String> set = new HashSet<String>();
+        for (String key : storage.keys()) set.add(key);
+        return set;
+    }
+
+    protected File _file;
+}
@@ -0,0 +1,141 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2012, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.syncdb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import playn.core.util.Callback;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class MemoryServerTest
+{
+    @Test public void testSync () {
+        MemoryServer server = new MemoryServer();
+        Protocol.Session session = SyncDBTest.testSession(server.server("mdb"), 1000);
+        SyncDBTest.TestDB one = new SyncDBTest.TestDB(), two = new SyncDBTest.TestDB();
+        one.maxInt.update(42);
+        one.unionSet.add("one");
+        for (int ii = 0; ii < 100; ii++) one.maxMap.put("key" + ii, ii);
+        session.sync(one);
+        session.sync(two);
+        one.assertEquals(two);
+
+        // make conflicting changes and make sure they're resolved by the clients
+        one.maxInt.update(40);
+        one.unionSet.add("two");
+        two.maxInt.update(45);
+        two.unionSet.add("three");
+        two.maxMap.remove("key7");
+        session.sync(one);
+        session.sync(two);
+        session.sync(one);
+        one.assertEquals(two);
+        assertEquals(45, one.maxInt.get().intValue());
+        assertEquals(3, one.unionSet.size());
+        assertNull(one.maxMap.get("key7"));
+        assertEquals(server.version("mdb"), one.version());
+
+        // other users should not see this user's data
+        SyncDBTest.TestDB other = new SyncDBTest.TestDB();
+        SyncDBTest.testSession(server.server("other"), 1000).sync(other);
+        assertEquals(0, other.version());
+        assertEquals(0, other.maxInt.get().intValue());
+    }
+
+    @Test public void testChangesSince () {
+        MemoryServer server = new MemoryServer();
+        Map<String,String> delta = new HashMap<String,String>();
+        for (int ii = 0; ii < 100; ii++) delta.put("map." + ii, String.valueOf(ii));
+        assertTrue(server.sync("mdb", new Protocol.Request(0, delta)).cleanSync);
+        for (int ii = 0; ii < 10; ii++) {
+            delta.clear();
+            delta.put("map." + ii, "changed" + ii);
+            delta.put("value", String.valueOf(ii));
+            assertTrue(server.sync("mdb", new Protocol.Request(ii+1, delta)).cleanSync);
+        }
+
+        // a client at version 5 should receive only the latest values of the keys changed since
+        // (change ii was made at version ii+2)
+        Protocol.Response rsp = server.sync("mdb", new Protocol.Request(5, delta));
+        assertFalse(rsp.cleanSync);
+        assertEquals(11, rsp.version);
+        Map<String,String> expect = new HashMap<String,String>();
+        for (int ii = 4; ii < 10; ii++) expect.put("map." + ii, "changed" + ii);
+        expect.put("value", "9");
+        assertEquals(expect, rsp.delta);
+
+        // a client at version 0 should receive everything
+        rsp = server.sync("mdb", new Protocol.Request(0, delta));
+        assertEquals(101, rsp.delta.size());
+    }
+
+    @Test public void testPartialResponses () {
+        MemoryServer server = new MemoryServer(500);
+        Protocol.Session session = SyncDBTest.testSession(server.server("mdb"), 500);
+        SyncDBTest.TestDB one = new SyncDBTest.TestDB(), two = new SyncDBTest.TestDB();
+        for (int ii = 0; ii < 500; ii++) one.maxMap.put("key" + ii, ii);
+        session.sync(one);
+        assertTrue(one.version() > 5);
+
+        CountingServer counter = new CountingServer(server.server("mdb"));
+        SyncDBTest.testSession(counter, 500).sync(two);
+        assertTrue(counter.requests > 5);
+        one.assertEquals(two);
+        assertEquals(one.version(), two.version());
+    }
+
+    @Test public void testPayloads () {
+        final MemoryServer server = new MemoryServer();
+        for (final Protocol.Format format : Protocol.Format.values()) {
+            final String user = format.toString();
+            Protocol.Server wire = new Protocol.Server() {
+                public void sendSync (int version, Map<String,String> delta,
+                                      Callback<Protocol.Response> onResponse) {
+                    String req = Protocol.encodeRequest(new Protocol.Request(version, delta),
+                                                        format);
+                    String rsp = server.handle(user, req);
+                    assertEquals(format, Protocol.format(rsp));
+                    onResponse.onSuccess(Protocol.decodeResponse(rsp));
+                }
+            };
+            Protocol.Session session = SyncDBTest.testSession(wire, 1000);
+            SyncDBTest.TestDB one = new SyncDBTest.TestDB(), two = new SyncDBTest.TestDB();
+            one.serverString.update("foo");
+            one.serverSet.add("bar");
+            session.sync(one);
+            session.sync(two);
+            one.assertEquals(two);
+        }
+    }
+
+    @Test public void testResponseFormats () {
+        MemoryServer server = new MemoryServer().setFormats(
+            Protocol.Format.BINARY, Protocol.Format.TEXT);
+        Map<String,String> delta = new HashMap<String,String>();
+        delta.put("maxInt", "1");
+        String req = Protocol.encodeRequest(new Protocol.Request(0, delta),
+                                            Protocol.Format.COMPRESSED);
+        assertEquals(Protocol.Format.BINARY, Protocol.format(server.handle("fmt", req)));
+        req = Protocol.encodeRequest(new Protocol.Request(1, delta), Protocol.Format.TEXT);
+        assertEquals(Protocol.Format.TEXT, Protocol.format(server.handle("fmt", req)));
+    }
+
+    protected static class CountingServer implements Protocol.Server {
+        public int requests;
+        public CountingServer (Protocol.Server server) {
+            _server = server;
+        }
+        public void sendSync (int version, Map<String,String> delta,
+                              Callback<Protocol.Response> onResponse) {
+            requests++;
+            _server.sendSync(version, delta, onResponse);
+        }
+        protected final Protocol.Server _server;
+    }
+}
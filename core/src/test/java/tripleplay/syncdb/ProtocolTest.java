@@ -5,6 +5,10 @@
 
 package tripleplay.syncdb;
 
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -33,4 +37,124 @@ public class ProtocolTest
         assertEquals("two", in.readString());
         assertEquals("", in.readString());
     }
+
+    @Test public void testPayloadZero () {
+        // a new client syncs from version zero, and a clean sync with nothing to send has an
+        // empty delta, so zero must be writable in every format
+        Map<String,String> empty = new HashMap<String,String>();
+        for (Protocol.Format format : Protocol.Format.values()) {
+            String payload = Protocol.encodeRequest(new Protocol.Request(0, empty), format);
+            Protocol.Request req = Protocol.decodeRequest(payload);
+            assertEquals(0, req.version);
+            assertTrue(req.delta.isEmpty());
+        }
+        Protocol.PayloadWriter out = new Protocol.PayloadWriter();
+        out.writeInt(0);
+        assertEquals(0, new Protocol.PayloadReader(out.payload()).readInt());
+    }
+
+    @Test public void testBinaryPayload () {
+        Protocol.BinaryWriter out = new Protocol.BinaryWriter();
+        for (int ii = 0; ii < 2*Short.MAX_VALUE; ii += 17) out.writeInt(ii);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeString("one");
+        out.writeString(null);
+        out.writeString("");
+        out.writeString("\u00e9t\u00e9 \u2603");
+        out.writeKey("plain");
+        out.writeKey("map.one");
+        out.writeKey("map.two");
+        for (boolean compress : new boolean[] { false, true }) {
+            Protocol.BinaryReader in = new Protocol.BinaryReader(out.payload(compress));
+            for (int ii = 0; ii < 2*Short.MAX_VALUE; ii += 17) assertEquals(ii, in.readInt());
+            assertEquals(Integer.MAX_VALUE, in.readInt());
+            assertEquals("one", in.readString());
+            assertNull(in.readString());
+            assertEquals("", in.readString());
+            assertEquals("\u00e9t\u00e9 \u2603", in.readString());
+            assertEquals("plain", in.readKey());
+            assertEquals("map.one", in.readKey());
+            assertEquals("map.two", in.readKey());
+            assertTrue(in.atEOF());
+        }
+    }
+
+    @Test public void testFormats () {
+        Map<String,String> delta = new HashMap<String,String>();
+        delta.put("name", "foo");
+        for (int ii = 0; ii < 100; ii++) delta.put("items." + ii, String.valueOf(ii*ii));
+        for (Protocol.Format format : Protocol.Format.values()) {
+            String payload = Protocol.encodeRequest(new Protocol.Request(42, delta), format);
+            assertEquals(format, Protocol.format(payload));
+            Protocol.Request req = Protocol.decodeRequest(payload);
+            assertEquals(42, req.version);
+            assertEquals(delta, req.delta);
+
+            payload = Protocol.encodeResponse(new Protocol.Response(43, delta), format);
+            Protocol.Response rsp = Protocol.decodeResponse(payload);
+            assertEquals(43, rsp.version);
+            assertFalse(rsp.cleanSync);
+            assertFalse(rsp.partial);
+            assertEquals(delta, rsp.delta);
+
+            payload = Protocol.encodeResponse(Protocol.Response.partial(7, delta), format);
+            rsp = Protocol.decodeResponse(payload);
+            assertEquals(7, rsp.version);
+            assertFalse(rsp.cleanSync);
+            assertTrue(rsp.partial);
+            assertEquals(delta, rsp.delta);
+
+            payload = Protocol.encodeResponse(new Protocol.Response(0), format);
+            rsp = Protocol.decodeResponse(payload);
+            assertEquals(0, rsp.version);
+            assertTrue(rsp.cleanSync);
+        }
+    }
+
+    @Test public void testCorruptCompressedPayload () {
+        // a payload whose zlib header requests a preset dictionary, which we never use, should be
+        // rejected rather than spinning forever
+        byte[] zlib = { 0x78, 0x20, 0, 0, 0, 1, 0x63, 0x60 };
+        Protocol.BinaryWriter out = new Protocol.BinaryWriter();
+        System.arraycopy(zlib, 0, out._buf, 0, zlib.length);
+        out._pos = zlib.length;
+        String payload = out.payload(false);
+        payload = Protocol.BINARY_MARKER + "" + Protocol.COMPRESSED_FLAG + payload.substring(2);
+        assertEquals(Protocol.Format.COMPRESSED, Protocol.format(payload));
+        try {
+            Protocol.decodeRequest(payload);
+            fail("Decoded a payload that needs a dictionary");
+        } catch (RuntimeException re) {} // expected
+
+        // as should a truncated payload
+        Map<String,String> delta = new HashMap<String,String>();
+        for (int ii = 0; ii < 100; ii++) delta.put("items." + ii, String.valueOf(ii*ii));
+        payload = Protocol.encodeRequest(
+            new Protocol.Request(1, delta), Protocol.Format.COMPRESSED);
+        try {
+            // truncate at a multiple of four base64 characters, so that only the inflater fails
+            Protocol.decodeRequest(payload.substring(0, 2 + (payload.length()-2)/8*4));
+            fail("Decoded a truncated payload");
+        } catch (RuntimeException re) {} // expected
+    }
+
+    @Test public void testFormatNegotiation () {
+        Map<String,String> delta = new HashMap<String,String>();
+        delta.put("name", "foo");
+
+        // a binary request advertises the formats the client accepts, and the server picks the
+        // first of its preferred formats among them
+        Protocol.Request req = Protocol.decodeRequest(Protocol.encodeRequest(
+            new Protocol.Request(1, delta, EnumSet.of(Protocol.Format.BINARY)),
+            Protocol.Format.COMPRESSED));
+        assertEquals(EnumSet.of(Protocol.Format.BINARY), req.accepts);
+        assertEquals(Protocol.Format.BINARY, Protocol.chooseFormat(
+                         req, Protocol.Format.COMPRESSED, Protocol.Format.BINARY));
+        assertEquals(Protocol.Format.TEXT, Protocol.chooseFormat(req, Protocol.Format.COMPRESSED));
+
+        // a text request can't advertise anything, so it accepts only text
+        req = Protocol.decodeRequest(Protocol.encodeRequest(new Protocol.Request(1, delta)));
+        assertEquals(Protocol.Format.TEXT, Protocol.chooseFormat(
+                         req, Protocol.Format.COMPRESSED, Protocol.Format.BINARY));
+    }
 }
@@ -0,0 +1,330 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2012, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.syncdb;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import playn.core.Storage;
+import playn.core.util.Callback;
+
+import tripleplay.util.Benchmark;
+
+/**
+ * Measures the throughput of various {@link SyncDB} operations over an in-memory {@link Storage}.
+ * This is not run as part of the unit tests; run it by hand via {@link #main}, optionally passing
+ * the names of the benchmark groups to run (reads, values, sets, maps, deltas, sync, load).
+ * Results are reported per operation, and per collection or payload size where relevant.
+ */
+public class SyncDBBenchmark extends Benchmark
+{
+    public static void main (String[] args) {
+        new SyncDBBenchmark().run(args);
+    }
+
+    public void run (String[] groups) {
+        _groups = groups;
+        if (enabled("reads")) benchReads();
+        if (enabled("values")) {
+            benchWrites();
+            benchCounters();
+        }
+        if (enabled("sets")) {
+            for (int size : SIZES) benchSet(size);
+        }
+        if (enabled("maps")) {
+            for (int size : SIZES) benchMap(size);
+        }
+        if (enabled("deltas")) {
+            for (int size : DELTA_SIZES) benchFormats(size);
+        }
+        if (enabled("sync")) {
+            for (int size : DELTA_SIZES) benchRoundTrip(size);
+        }
+        if (enabled("load")) loadServer(1000, 3, 10, Protocol.Format.BINARY);
+    }
+
+    /** Compares reads of decoded values against decoding them from storage on every read (which
+     * is what {@link SyncDB} did before it cached decoded values). */
+    protected void benchReads () {
+        final Storage storage = SyncDBTest.testStorage();
+        final SyncDBTest.TestDB db = new SyncDBTest.TestDB(storage);
+        db.maxInt.update(42);
+        db.serverString.update("foo");
+        for (int ii = 0; ii < 100; ii++) db.maxMap.put("key" + ii, ii);
+
+        report("value read (storage+decode)", new Op() {
+            public int run () {
+                return Codec.INT.decode(storage.getItem("maxInt")) +
+                    Codec.STRING.decode(storage.getItem("serverString")).length();
+            }
+        }, 2);
+        report("value read (cached)", new Op() {
+            public int run () {
+                return db.maxInt.get() + db.serverString.get().length();
+            }
+        }, 2);
+
+        report("map iterate (storage+decode)", new Op() {
+            public int run () {
+                int sum = 0;
+                for (String key : db.maxMap.keySet()) {
+                    sum += Codec.INT.decode(storage.getItem("maxMap." + key));
+                }
+                return sum;
+            }
+        }, 100);
+        report("map iterate (cached)", new Op() {
+            public int run () {
+                int sum = 0;
+                for (Map.Entry<String,Integer> entry : db.maxMap.entrySet()) {
+                    sum += entry.getValue();
+                }
+                return sum;
+            }
+        }, 100);
+    }
+
+    /** Measures value writes, with and without write-behind. */
+    protected void benchWrites () {
+        final SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        report("value write (write-through)", new Op() {
+            public int run () {
+                for (int ii = 0; ii < 10; ii++) db.serverString.update("v" + (_counter++ & 0xF));
+                return db.serverString.get().length();
+            }
+        }, 10);
+        final SyncDBTest.TestDB wbdb = new SyncDBTest.TestDB();
+        wbdb.setWriteBehind(true);
+        report("value write (write-behind)", new Op() {
+            public int run () {
+                for (int ii = 0; ii < 10; ii++) wbdb.serverString.update("v" + (_counter++ & 0xF));
+                wbdb.flush();
+                return wbdb.serverString.get().length();
+            }
+        }, 10);
+    }
+
+    /** Measures adding elements to (and removing them from) a set of {@code size} elements. For
+     * comparison, also measures rewriting the whole set as a single string on each change, which
+     * is how sets were persisted before they were chunked. */
+    protected void benchSet (final int size) {
+        final SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        db.batch(new Runnable() { public void run () {
+            for (int ii = 0; ii < size; ii++) db.unionSet.add("elem" + ii);
+        }});
+        report("set add+remove [" + size + "]", new Op() {
+            public int run () {
+                String elem = "extra" + (_counter++ & 0xFF);
+                db.unionSet.add(elem);
+                db.unionSet.remove(elem);
+                return db.unionSet.size();
+            }
+        }, 2);
+        // the unchunked approach is too slow to be worth measuring at the largest sizes
+        if (size > 10000) return;
+        report("set add+remove (unchunked) [" + size + "]", new Op() {
+            public int run () {
+                String elem = "extra" + (_counter++ & 0xFF);
+                db.unionSet.add(elem);
+                db.sset("legacySet", db.unionSet, Codec.STRING);
+                db.unionSet.remove(elem);
+                db.sset("legacySet", db.unionSet, Codec.STRING);
+                return db.unionSet.size();
+            }
+        }, 2);
+    }
+
+    /** Measures iterating over, and updating entries of, a map of {@code size} entries. */
+    protected void benchMap (final int size) {
+        final SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        db.batch(new Runnable() { public void run () {
+            for (int ii = 0; ii < size; ii++) db.maxMap.put("key" + ii, ii);
+        }});
+        report("map iterate [" + size + "]", new Op() {
+            public int run () {
+                int sum = 0;
+                for (Map.Entry<String,Integer> entry : db.maxMap.entrySet()) {
+                    sum += entry.getValue();
+                }
+                return sum;
+            }
+        }, size);
+        report("map put [" + size + "]", new Op() {
+            public int run () {
+                db.maxMap.put("key" + (_counter % size), _counter++);
+                return db.maxMap.size();
+            }
+        }, 1);
+    }
+
+    /** Measures syncing {@code size} changed map entries from one client to the server (via
+     * binary payloads) and then from the server to a second client. */
+    protected void benchRoundTrip (final int size) {
+        final MemoryServer server = new MemoryServer();
+        Protocol.Server wire = new Protocol.Server() {
+            public void sendSync (int version, Map<String,String> delta,
+                                  Callback<Protocol.Response> onResponse) {
+                String payload = Protocol.encodeRequest(
+                    new Protocol.Request(version, delta), _out, false);
+                payload = server.handle("user", payload);
+                onResponse.onSuccess(Protocol.decodeResponse(_in.reset(payload)));
+            }
+            protected final Protocol.BinaryWriter _out = new Protocol.BinaryWriter();
+            protected final Protocol.BinaryReader _in = new Protocol.BinaryReader();
+        };
+        final Protocol.Session session = new Protocol.Session(wire) {
+            protected void onSyncFailure (SyncDB db, Throwable cause) {
+                throw new RuntimeException(cause);
+            }
+        };
+        final SyncDBTest.TestDB one = new SyncDBTest.TestDB(), two = new SyncDBTest.TestDB();
+        report("sync round trip [" + size + " keys]", new Op() {
+            public int run () {
+                final int value = _counter++;
+                one.batch(new Runnable() { public void run () {
+                    for (int ii = 0; ii < size; ii++) one.maxMap.put("key" + ii, value);
+                }});
+                session.sync(one);
+                session.sync(two);
+                return two.version();
+            }
+        }, 1);
+        one.assertEquals(two);
+    }
+
+    /** Compares bumping a boxed {@code Value<Integer>} counter against an {@link SyncDB.IntValue},
+     * with write-behind enabled and a flush after every 10 changes (i.e. once per "frame"). */
+    protected void benchCounters () {
+        final SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        db.setWriteBehind(true);
+        report("boxed counter increment", new Op() {
+            public int run () {
+                for (int ii = 0; ii < 10; ii++) db.maxInt.update(db.maxInt.get() + 1);
+                db.flush();
+                return db.maxInt.get();
+            }
+        }, 10);
+        report("primitive counter increment", new Op() {
+            public int run () {
+                for (int ii = 0; ii < 10; ii++) db.coins.increment(1);
+                db.flush();
+                return db.coins.get();
+            }
+        }, 10);
+    }
+
+    /** Compares encoding and decoding a delta of {@code size} map entries in each format. */
+    protected void benchFormats (int size) {
+        final Map<String,String> delta = new HashMap<String,String>();
+        for (int ii = 0; ii < size; ii++) delta.put("items." + ii, String.valueOf(ii % 100));
+        final Protocol.Request req = new Protocol.Request(42, delta);
+        final Protocol.BinaryWriter out = new Protocol.BinaryWriter();
+        final Protocol.BinaryReader in = new Protocol.BinaryReader();
+
+        final SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        db.batch(new Runnable() { public void run () {
+            for (int ii = 0; ii < size; ii++) db.maxMap.put("key" + ii, ii);
+        }});
+        report("get delta [" + size + " keys]", new Op() {
+            public int run () { return db.getDelta().size(); }
+        }, 1);
+
+        final String text = Protocol.encodeRequest(req);
+        System.out.println("text payload [" + size + " keys]: " + text.length() + " chars");
+        report("text encode [" + size + " keys]", new Op() {
+            public int run () { return Protocol.encodeRequest(req).length(); }
+        }, 1);
+        report("text decode [" + size + " keys]", new Op() {
+            public int run () { return Protocol.decodeRequest(text).delta.size(); }
+        }, 1);
+
+        for (final boolean compress : new boolean[] { false, true }) {
+            String type = compress ? "compressed" : "binary";
+            final String payload = Protocol.encodeRequest(req, out, compress);
+            System.out.println(type + " payload [" + size + " keys]: " + payload.length() +
+                               " chars");
+            report(type + " encode [" + size + " keys]", new Op() {
+                public int run () { return Protocol.encodeRequest(req, out, compress).length(); }
+            }, 1);
+            report(type + " decode [" + size + " keys]", new Op() {
+                public int run () {
+                    return Protocol.decodeRequest(in.reset(payload)).delta.size();
+                }
+            }, 1);
+        }
+    }
+
+    /** Simulates {@code users} users, each syncing {@code devices} databases with a {@link
+     * MemoryServer} (via encoded payloads), over {@code rounds} rounds of random changes. Reports
+     * the request throughput and verifies that all of each user's databases converge. */
+    protected void loadServer (int users, int devices, int rounds, final Protocol.Format format) {
+        final MemoryServer server = new MemoryServer(16*1024);
+        final int[] requests = new int[1];
+        Protocol.Session[] sessions = new Protocol.Session[users];
+        SyncDBTest.TestDB[][] dbs = new SyncDBTest.TestDB[users][devices];
+        for (int uu = 0; uu < users; uu++) {
+            final String user = "user" + uu;
+            sessions[uu] = new Protocol.Session(new Protocol.Server() {
+                public void sendSync (int version, Map<String,String> delta,
+                                      Callback<Protocol.Response> onResponse) {
+                    requests[0]++;
+                    String payload = Protocol.encodeRequest(
+                        new Protocol.Request(version, delta), format);
+                    onResponse.onSuccess(Protocol.decodeResponse(server.handle(user, payload)));
+                }
+            }) {
+                protected void onSyncFailure (SyncDB db, Throwable cause) {
+                    throw new RuntimeException(cause);
+                }
+            };
+            for (int dd = 0; dd < devices; dd++) dbs[uu][dd] = new SyncDBTest.TestDB();
+        }
+
+        Random rando = new Random(42);
+        long start = System.nanoTime();
+        for (int rr = 0; rr < rounds; rr++) {
+            for (int uu = 0; uu < users; uu++) {
+                for (SyncDBTest.TestDB db : dbs[uu]) {
+                    db.maxInt.update(rando.nextInt(1000));
+                    db.unionSet.add("badge" + rando.nextInt(50));
+                    for (int ii = 0; ii < 10; ii++) {
+                        db.maxMap.put("item" + rando.nextInt(200), rando.nextInt(100));
+                    }
+                    sessions[uu].sync(db);
+                }
+            }
+        }
+        // sync everything one last time so that all databases converge
+        for (int uu = 0; uu < users; uu++) {
+            for (SyncDBTest.TestDB db : dbs[uu]) sessions[uu].sync(db);
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.println("server load (" + users + "x" + devices + " dbs, " + rounds +
+                           " rounds, " + format + "): " + requests[0] + " requests, " +
+                           (long)(requests[0] / secs) + " requests/s");
+
+        for (int uu = 0; uu < users; uu++) {
+            for (int dd = 1; dd < devices; dd++) dbs[uu][0].assertEquals(dbs[uu][dd]);
+        }
+    }
+
+    protected boolean enabled (String group) {
+        if (_groups.length == 0) return true;
+        for (String enabled : _groups) if (enabled.equals(group)) return true;
+        return false;
+    }
+
+    /** The names of the benchmark groups to run, or empty to run all groups. */
+    protected String[] _groups;
+
+    /** Used to vary the data written by benchmarked operations. */
+    protected int _counter;
+
+    protected static final int[] SIZES = { 10, 100, 1000, 10000, 100000 };
+    protected static final int[] DELTA_SIZES = { 100, 1000, 10000 };
+}
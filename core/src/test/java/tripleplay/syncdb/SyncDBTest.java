@@ -5,12 +5,20 @@
 
 package tripleplay.syncdb;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import react.RMap;
 import react.RSet;
+import react.Slot;
 import react.Value;
+import react.ValueView;
 
 import playn.core.Storage;
 import playn.core.util.Callback;
@@ -38,6 +46,9 @@ public class SyncDBTest
         public final RSet<String> serverSet = set("serverSet", Codec.STRING, SetResolver.SERVER);
         public final RMap<String,Integer> maxMap = map(
             "maxMap", Codec.STRING, Codec.INT, Resolver.INTMAX);
+        public final IntValue coins = intValue("coins", 0, Resolver.INTMAX);
+        public final LongValue serverLong = longValue("serverLong", 0L, Resolver.SERVER);
+        public final FloatValue playtime = floatValue("playtime", 0f, Resolver.FLOATMAX);
 
         public TestDB () {
             this(testStorage());
@@ -61,6 +72,9 @@ public class SyncDBTest
             Assert.assertEquals(interSet, other.interSet);
             Assert.assertEquals(serverSet, other.serverSet);
             Assert.assertEquals(maxMap, other.maxMap);
+            Assert.assertEquals(coins.get(), other.coins.get());
+            Assert.assertEquals(serverLong.get(), other.serverLong.get());
+            Assert.assertEquals(playtime.get(), other.playtime.get(), 0f);
         }
     }
 
@@ -183,6 +197,271 @@ public class SyncDBTest
         one.assertEquals(one.clone());
     }
 
+    @Test public void testChunkedSets () {
+        Storage storage = testStorage();
+        TestDB one = new TestDB(storage);
+        for (int ii = 0; ii < 1000; ii++) one.unionSet.add("elem" + ii);
+        for (int ii = 0; ii < 500; ii++) one.maxMap.put("key" + ii, ii);
+        one.unionSet.remove("elem42");
+        one.maxMap.remove("key42");
+        assertTrue(Integer.parseInt(storage.getItem("unionSet_chunks")) > 1);
+
+        // adding a single element should write only a single (small) chunk
+        CountingStorage counter = new CountingStorage(storage);
+        TestDB two = new TestDB(counter);
+        one.assertEquals(two);
+        counter.writes = 0;
+        two.unionSet.add("newelem");
+        assertEquals(1, counter.writes);
+        assertTrue(counter.maxLength < 1000);
+
+        // make sure the whole set is still sent to the server
+        assertEquals(two.unionSet, two.toSet(two.getDelta().get("unionSet"), Codec.STRING));
+    }
+
+    @Test public void testReservedNames () {
+        for (String name : new String[] { "syncv", "unionSet_chunks", "unionSet_chunk12" }) {
+            try {
+                SyncDB.checkName(name);
+                fail(name + " should be reserved");
+            } catch (IllegalArgumentException iae) {} // expected
+        }
+        for (String name : new String[] { "chunk", "set_chunk", "set_chunky", "set_chunk1a" }) {
+            SyncDB.checkName(name);
+        }
+    }
+
+    @Test public void testLegacySetMigration () {
+        Storage storage = testStorage();
+        storage.setItem("unionSet", "one\ttwo\tthree");
+        storage.setItem("maxMap_keys", "a\tb");
+        storage.setItem("maxMap.a", "1");
+        storage.setItem("maxMap.b", "2");
+        TestDB db = new TestDB(storage);
+        assertEquals(Sets.newHashSet("one", "two", "three"), db.unionSet);
+        assertEquals(ImmutableMap.of("a", 1, "b", 2), db.maxMap);
+        assertNull(storage.getItem("unionSet"));
+        assertNull(storage.getItem("maxMap_keys"));
+        db.assertEquals(db.clone());
+    }
+
+    @Test public void testBatch () {
+        final CountingStorage storage = new CountingStorage(testStorage());
+        final TestDB db = new TestDB(storage);
+        storage.writes = 0;
+        db.batch(new Runnable() { public void run () {
+            for (int ii = 0; ii < 200; ii++) db.maxMap.put("reward" + ii, ii);
+            db.maxInt.update(200);
+            // nothing should be written until the batch completes, but reads should see changes
+            assertEquals(0, storage.writes);
+            assertEquals(199, db.maxMap.get("reward199").intValue());
+            assertTrue(db.getDelta().containsKey("maxInt"));
+        }});
+        assertFalse(db.hasPendingWrites());
+        db.assertEquals(db.clone());
+        // our unsynced modifications should also have been persisted
+        assertEquals(db.getDelta(), db.clone().getDelta());
+    }
+
+    @Test public void testWriteBehind () {
+        CountingStorage storage = new CountingStorage(testStorage());
+        TestDB db = new TestDB(storage);
+        db.setWriteBehind(true);
+        storage.writes = 0;
+        db.maxInt.update(1);
+        db.maxInt.update(2);
+        db.unionSet.add("one");
+        assertEquals(0, storage.writes);
+        assertTrue(db.hasPendingWrites());
+        db.flush();
+        assertFalse(db.hasPendingWrites());
+        TestDB clone = new TestDB(storage);
+        db.assertEquals(clone);
+        assertTrue(clone.hasUnsyncedChanges());
+    }
+
+    @Test public void testChunkedSync () {
+        TestServer server = new TestServer();
+        server.maxResponseSize = 1000;
+        Protocol.Session session = testSession(server, 1000);
+        TestDB one = new TestDB(), two = new TestDB();
+        makeTestChanges1(one);
+        for (int ii = 0; ii < 500; ii++) one.maxMap.put("key" + ii, ii);
+        session.sync(one);
+        assertFalse(one.hasUnsyncedChanges());
+        // our changes should have been sent in numerous chunks, each of which was acked
+        int sent = server.requests;
+        assertTrue(sent > 5);
+        assertEquals(sent, one.version());
+
+        // and received in numerous partial responses
+        session.sync(two);
+        assertTrue(server.requests - sent > 5);
+        one.assertEquals(two);
+        assertEquals(one.version(), two.version());
+    }
+
+    @Test public void testResumeSync () {
+        FailingServer server = new FailingServer();
+        Protocol.Session session = testSession(server, 1000);
+        TestDB one = new TestDB(), two = new TestDB();
+        for (int ii = 0; ii < 500; ii++) one.maxMap.put("key" + ii, ii);
+        int unsynced = one.getDelta().size();
+
+        // the first three chunks should be acked, after which we "lose our connection"
+        server.failAfter = 3;
+        session.sync(one);
+        assertEquals(3, one.version());
+        assertTrue(one.hasUnsyncedChanges());
+        assertTrue(one.getDelta().size() < unsynced);
+        // the acked chunks should have been persisted
+        assertEquals(one.getDelta(), one.clone().getDelta());
+
+        // when we resync, we should only send the remaining changes
+        int remaining = one.getDelta().size();
+        server.failAfter = Integer.MAX_VALUE;
+        session.sync(one);
+        assertFalse(one.hasUnsyncedChanges());
+        session.sync(two);
+        one.assertEquals(two);
+        assertTrue(remaining < unsynced);
+    }
+
+    @Test public void testChangeDuringSync () {
+        final TestServer server = new TestServer();
+        final TestDB one = new TestDB(), two = new TestDB();
+        Protocol.Session session = testSession(new Protocol.Server() {
+            public void sendSync (int version, Map<String,String> delta,
+                                  Callback<Protocol.Response> onResponse) {
+                // simulate a change made while our request is in flight
+                if (one.maxInt.get() < 10) one.maxInt.update(10);
+                server.sendSync(version, delta, onResponse);
+            }
+        }, Protocol.Session.DEFAULT_CHUNK_SIZE);
+        one.maxInt.update(5);
+        session.sync(one);
+        // the change made during the first request should have been sent in a second request
+        assertEquals(2, server.requests);
+        assertFalse(one.hasUnsyncedChanges());
+        testSession(server, Protocol.Session.DEFAULT_CHUNK_SIZE).sync(two);
+        assertEquals(10, two.maxInt.get().intValue());
+    }
+
+    @Test public void testPrimitives () {
+        Protocol.Session session = testSession();
+        TestDB one = new TestDB(), two = new TestDB();
+        final int[] changes = new int[1];
+        SyncDB.IntListener counter = new SyncDB.IntListener() {
+            public void onChange (int value, int oldValue) {
+                assertEquals(oldValue+1, value);
+                changes[0]++;
+            }
+        };
+        one.coins.addListener(counter);
+        for (int ii = 0; ii < 10; ii++) one.coins.increment(1);
+        one.coins.removeListener(counter);
+        one.serverLong.update(1L << 40);
+        one.playtime.increment(2.5f);
+        assertEquals(10, changes[0]);
+        assertEquals(10, one.coins.view().get().intValue());
+        one.assertEquals(one.clone());
+        session.sync(one);
+        session.sync(two);
+        one.assertEquals(two);
+
+        // make conflicting changes, which should be resolved like their boxed counterparts
+        one.coins.update(5);
+        one.serverLong.update(7L);
+        one.playtime.update(3f);
+        two.coins.update(8);
+        two.serverLong.update(9L);
+        two.playtime.update(1f);
+        session.sync(one);
+        session.sync(two);
+        session.sync(one);
+        one.assertEquals(two);
+        assertEquals(8, one.coins.get());
+        assertEquals(7L, two.serverLong.get());
+        assertEquals(3f, two.playtime.get(), 0f);
+    }
+
+    @Test public void testLazyPrimitives () {
+        CountingStorage storage = new CountingStorage(testStorage());
+        TestDB db = new TestDB(storage);
+        db.setWriteBehind(true);
+        storage.writes = 0;
+        for (int ii = 0; ii < 1000; ii++) db.coins.increment(1);
+        // nothing should be encoded or written until we flush
+        assertEquals(0, storage.writes);
+        assertTrue(db.hasPendingWrites());
+        assertEquals("1000", db.getDelta().get("coins"));
+        db.flush();
+        assertFalse(db.hasPendingWrites());
+        assertEquals("1000", storage.getItem("coins"));
+        assertEquals(1000, new TestDB(storage).coins.get());
+    }
+
+    @Test public void testDeferredNotifications () {
+        Protocol.Session session = testSession();
+        TestDB one = new TestDB();
+        final TestDB two = new TestDB();
+        two.maxMap.put("key0", 100);
+        session.sync(two);
+
+        one.maxInt.update(42);
+        one.unionSet.add("one");
+        one.unionSet.add("two");
+        for (int ii = 0; ii < 500; ii++) one.maxMap.put("key" + ii, ii);
+        session.sync(one);
+
+        final int[] counts = new int[3];
+        final List<String> synced = new ArrayList<String>();
+        two.maxInt.connect(new ValueView.Listener<Integer>() {
+            public void onChange (Integer value, Integer ovalue) {
+                // the entire delta should have been applied before we're notified
+                assertEquals(500, two.maxMap.size());
+                assertEquals(2, two.unionSet.size());
+                counts[0]++;
+            }
+        });
+        two.maxMap.connect(new RMap.Listener<String,Integer>() {
+            @Override public void onPut (String key, Integer value) {
+                counts[1]++;
+            }
+        });
+        two.unionSet.connect(new RSet.Listener<String>() {
+            @Override public void onAdd (String elem) {
+                counts[2]++;
+            }
+        });
+        two.synced().connect(new Slot<String>() {
+            @Override public void onEmit (String name) { synced.add(name); }
+        });
+        session.sync(two);
+        one.assertEquals(two);
+
+        // key0 was maxed to its existing value, so it should not have been reported
+        assertEquals(1, counts[0]);
+        assertEquals(499, counts[1]);
+        assertEquals(2, counts[2]);
+        Collections.sort(synced);
+        assertEquals(Arrays.asList("maxInt", "maxMap", "unionSet"), synced);
+
+        // listeners should be notified immediately of local changes
+        two.maxMap.put("key1", 1000);
+        assertEquals(500, counts[1]);
+    }
+
+    @Test public void testPropLookup () {
+        TestDB db = new TestDB();
+        assertNotNull(db.prop("maxMap.key"));
+        assertNotNull(db.prop("maxMap."));
+        assertNotNull(db.prop("maxInt"));
+        assertNull(db.prop("maxMaq.key"));
+        assertNull(db.prop("maxMapping.key"));
+        assertNull(db.prop("a.key"));
+    }
+
     protected void makeTestChanges1 (TestDB db) {
         db.trueBool.update(true);
         db.maxInt.update(42);
@@ -216,8 +495,15 @@ public class SyncDBTest
     }
 
     protected static class TestServer implements Protocol.Server {
+        /** The number of sync requests received by this server. */
+        public int requests;
+
+        /** The maximum size of the delta sent in a single (non-partial) response. */
+        public int maxResponseSize = Integer.MAX_VALUE;
+
         @Override public void sendSync (int version, Map<String,String> delta,
                                         Callback<Protocol.Response> onResponse) {
+            requests++;
             if (version > _version) {
                 throw new IllegalStateException("So impossible! " + version + " > " + _version);
             } else if (version < _version) {
@@ -234,10 +520,27 @@ public class SyncDBTest
         }
 
         protected Protocol.Response needSync (int clientVers) {
-            Map<String,String> delta = new HashMap<String,String>();
+            // group the changes by version, so that we can send a large delta in chunks
+            SortedMap<Integer,Map<String,String>> changes =
+                new TreeMap<Integer,Map<String,String>>();
             for (Map.Entry<String,Datum> entry : _data.entrySet()) {
                 Datum d = entry.getValue();
-                if (d.version > clientVers) delta.put(entry.getKey(), d.value);
+                if (d.version <= clientVers) continue;
+                Map<String,String> vdelta = changes.get(d.version);
+                if (vdelta == null) changes.put(d.version, vdelta = new HashMap<String,String>());
+                vdelta.put(entry.getKey(), d.value);
+            }
+            Map<String,String> delta = new HashMap<String,String>();
+            int size = 0, version = clientVers;
+            for (Map.Entry<Integer,Map<String,String>> entry : changes.entrySet()) {
+                for (Map.Entry<String,String> change : entry.getValue().entrySet()) {
+                    size += SyncDB.deltaSize(change.getKey(), change.getValue());
+                }
+                if (size > maxResponseSize && !delta.isEmpty()) {
+                    return Protocol.Response.partial(version, delta);
+                }
+                delta.putAll(entry.getValue());
+                version = entry.getKey();
             }
             return new Protocol.Response(_version, delta);
         }
@@ -246,14 +549,55 @@ public class SyncDBTest
         protected Map<String,Datum> _data = new HashMap<String,Datum>();
     }
 
+    /** A server that fails all requests after it has received a certain number of them. */
+    protected static class FailingServer extends TestServer {
+        public int failAfter = Integer.MAX_VALUE;
+
+        @Override public void sendSync (int version, Map<String,String> delta,
+                                        Callback<Protocol.Response> onResponse) {
+            if (requests >= failAfter) onResponse.onFailure(new Exception("Timed out"));
+            else super.sendSync(version, delta, onResponse);
+        }
+    }
+
     protected static Protocol.Session testSession () {
-        return new Protocol.Session(new TestServer()) {
+        return testSession(new TestServer(), Protocol.Session.DEFAULT_CHUNK_SIZE);
+    }
+
+    protected static Protocol.Session testSession (Protocol.Server server, int chunkSize) {
+        return new Protocol.Session(server, chunkSize) {
             protected void onSyncFailure (SyncDB db, Throwable cause) {
                 System.err.println("Sync failure " + cause);
             }
         };
     }
 
+    protected static class CountingStorage implements Storage {
+        public int writes, maxLength;
+        public CountingStorage (Storage storage) {
+            _storage = storage;
+        }
+        public void setItem(String key, String data) throws RuntimeException {
+            writes++;
+            maxLength = Math.max(maxLength, data.length());
+            _storage.setItem(key, data);
+        }
+        public void removeItem(String key) {
+            writes++;
+            _storage.removeItem(key);
+        }
+        public String getItem(String key) {
+            return _storage.getItem(key);
+        }
+        public Iterable<String> keys() {
+            return _storage.keys();
+        }
+        public boolean isPersisted() {
+            return true;
+        }
+        protected final Storage _storage;
+    }
+
     protected static Storage testStorage () {
         return new Storage() {
             public void setItem(String key, String data) throws RuntimeException {
@@ -0,0 +1,203 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2012, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.syncdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import playn.core.util.Callback;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class SyncSchedulerTest
+{
+    @Test public void testDebounce () {
+        SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        DeferredServer server = new DeferredServer();
+        TestScheduler sched = new TestScheduler(server, db);
+        sched.setDebounce(2000);
+
+        // a burst of changes should result in a single request once the changes stop
+        for (int ii = 0; ii < 5; ii++) {
+            sched.advance(500);
+            db.maxMap.put("key" + ii, ii);
+        }
+        sched.advance(1000);
+        assertEquals(0, server.pending.size());
+        sched.advance(1000);
+        assertEquals(1, server.pending.size());
+        server.respond();
+        assertFalse(db.hasUnsyncedChanges());
+        assertEquals(1, sched.metrics().cleanSyncs);
+    }
+
+    @Test public void testMaxDelay () {
+        SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        DeferredServer server = new DeferredServer();
+        TestScheduler sched = new TestScheduler(server, db);
+        sched.setDebounce(2000).setMaxDelay(5000);
+
+        // a change every frame never lets the debounce interval elapse, but the oldest change
+        // must still be sent once it has waited for the maximum delay
+        for (int ii = 1; ii <= 400; ii++) {
+            db.maxInt.update(ii);
+            sched.advance(16);
+            if (ii*16 < 5000) assertEquals(0, server.pending.size());
+        }
+        assertEquals(1, server.pending.size());
+        server.respond();
+
+        // changes made since that request are sent once they too have waited the maximum delay
+        for (int ii = 401; ii <= 800; ii++) {
+            db.maxInt.update(ii);
+            sched.advance(16);
+        }
+        assertEquals(1, server.pending.size());
+        assertEquals(2, sched.metrics().requests);
+    }
+
+    @Test public void testOneInFlight () {
+        SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        DeferredServer server = new DeferredServer();
+        TestScheduler sched = new TestScheduler(server, db);
+        sched.setDebounce(100);
+
+        db.maxInt.update(1);
+        sched.advance(100);
+        assertEquals(1, server.pending.size());
+        assertTrue(sched.isSyncing());
+
+        // changes made while a request is in flight must wait for it to complete
+        db.maxInt.update(2);
+        sched.advance(100);
+        sched.sync(db);
+        sched.advance(100);
+        assertEquals(1, server.pending.size());
+
+        // once it completes, they're sent after the debounce interval (not immediately)
+        server.respond();
+        assertTrue(db.hasUnsyncedChanges());
+        assertEquals(0, server.pending.size());
+        sched.advance(100);
+        assertEquals(1, server.pending.size());
+        server.respond();
+        assertFalse(db.hasUnsyncedChanges());
+        assertEquals(2, sched.metrics().requests);
+        assertEquals(2, server.server._version);
+    }
+
+    @Test public void testBackoff () {
+        SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        SyncDBTest.FailingServer server = new SyncDBTest.FailingServer();
+        server.failAfter = 0;
+        TestScheduler sched = new TestScheduler(server, db);
+        sched.setDebounce(0).setBackoff(1000, 4000);
+
+        db.maxInt.update(1);
+        sched.advance(1);
+        assertEquals(1, sched.metrics().failures);
+        // we should retry after 1, 2, 4, then 4 seconds
+        int[] delays = { 1000, 2000, 4000, 4000 };
+        for (int ii = 0; ii < delays.length; ii++) {
+            sched.advance(delays[ii]-1);
+            assertEquals(ii+1, sched.metrics().requests);
+            sched.advance(1);
+            assertEquals(ii+2, sched.metrics().requests);
+        }
+
+        // once the server recovers, we should sync and stop backing off
+        server.failAfter = Integer.MAX_VALUE;
+        sched.advance(4000);
+        assertFalse(db.hasUnsyncedChanges());
+        db.maxInt.update(2);
+        sched.advance(1);
+        assertFalse(db.hasUnsyncedChanges());
+        assertEquals(delays.length+1, sched.metrics().failures);
+    }
+
+    @Test public void testPriority () {
+        SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        DeferredServer server = new DeferredServer();
+        TestScheduler sched = new TestScheduler(server, db);
+        sched.setDebounce(10000).addPriority("maxMap");
+
+        db.maxInt.update(1);
+        sched.advance(1);
+        assertEquals(0, server.pending.size());
+        db.maxMap.put("gems", 5);
+        sched.advance(1);
+        assertEquals(1, server.pending.size());
+        server.advanceAndRespond(sched, 250);
+        assertFalse(db.hasUnsyncedChanges());
+        assertEquals(250, sched.metrics().lastLatency);
+    }
+
+    @Test public void testLatencyMetrics () {
+        SyncDBTest.TestDB db = new SyncDBTest.TestDB();
+        DeferredServer server = new DeferredServer();
+        TestScheduler sched = new TestScheduler(server, db);
+        sched.setDebounce(0);
+
+        db.maxInt.update(1);
+        sched.advance(1);
+        server.advanceAndRespond(sched, 100);
+        db.maxInt.update(2);
+        sched.advance(1);
+        server.advanceAndRespond(sched, 300);
+        assertEquals(2, sched.metrics().successes);
+        assertEquals(200, sched.metrics().averageLatency());
+
+        // a request in flight has no latency yet, so it doesn't count toward the average
+        db.maxInt.update(3);
+        sched.advance(1);
+        assertTrue(sched.isSyncing());
+        assertEquals(3, sched.metrics().requests);
+        assertEquals(200, sched.metrics().averageLatency());
+    }
+
+    protected static class TestScheduler extends SyncScheduler {
+        public long now = 1;
+
+        public TestScheduler (Protocol.Server server, SyncDB db) {
+            super(server, db);
+        }
+
+        public void advance (long millis) {
+            now += millis;
+            update();
+        }
+
+        @Override protected long currentTime () {
+            return now;
+        }
+
+        @Override protected void onSyncFailure (SyncDB db, Throwable cause) {} // noop
+    }
+
+    /** Holds requests until {@link #respond} is called. */
+    protected static class DeferredServer implements Protocol.Server {
+        public final SyncDBTest.TestServer server = new SyncDBTest.TestServer();
+        public final List<Runnable> pending = new ArrayList<Runnable>();
+
+        public void sendSync (final int version, final Map<String,String> delta,
+                              final Callback<Protocol.Response> onResponse) {
+            pending.add(new Runnable() { public void run () {
+                server.sendSync(version, delta, onResponse);
+            }});
+        }
+
+        public void respond () {
+            pending.remove(0).run();
+        }
+
+        public void advanceAndRespond (TestScheduler sched, long millis) {
+            sched.now += millis;
+            respond();
+        }
+    }
+}
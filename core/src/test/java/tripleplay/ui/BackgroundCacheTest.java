@@ -0,0 +1,133 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.ui;
+
+import playn.core.Canvas;
+import playn.java.JavaPlatform;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class BackgroundCacheTest
+{
+    static {
+        JavaPlatform.registerHeadless();
+    }
+
+    @Test public void testSharing () {
+        BackgroundCache cache = new BackgroundCache(1024*1024);
+        BackgroundCache.Entry e1 = cache.acquire("red", 100, 20, _renderer);
+        BackgroundCache.Entry e2 = cache.acquire("red", 100, 20, _renderer);
+        BackgroundCache.Entry e3 = cache.acquire("red", 100, 30, _renderer);
+        BackgroundCache.Entry e4 = cache.acquire("blue", 100, 20, _renderer);
+        assertSame(e1, e2);
+        assertNotSame(e1, e3);
+        assertNotSame(e1, e4);
+        assertEquals(3, _renders);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(0.25f, cache.hitRate(), 0);
+        assertEquals(4*100*(20+30+20), cache.bytes());
+
+        // unreferenced entries are retained while within budget
+        e1.release();
+        e2.release();
+        assertSame(e1, cache.acquire("red", 100, 20, _renderer));
+        assertEquals(3, _renders);
+    }
+
+    @Test public void testEviction () {
+        BackgroundCache cache = new BackgroundCache(4*100*100);
+        BackgroundCache.Entry e1 = cache.acquire("a", 50, 50, _renderer);
+        BackgroundCache.Entry e2 = cache.acquire("b", 50, 50, _renderer);
+        BackgroundCache.Entry e3 = cache.acquire("c", 50, 50, _renderer);
+        BackgroundCache.Entry e4 = cache.acquire("d", 50, 50, _renderer);
+
+        // referenced entries are never evicted, even when over budget
+        BackgroundCache.Entry e5 = cache.acquire("e", 50, 50, _renderer);
+        assertEquals(5, cache.size());
+        assertTrue(cache.bytes() > cache.budget());
+
+        // releasing entries evicts them, least recently used first
+        cache.acquire("a", 50, 50, _renderer).release();
+        e2.release();
+        e1.release();
+        assertEquals(4, cache.size());
+        assertEquals(4*100*100, cache.bytes());
+        cache.acquire("a", 50, 50, _renderer).release();
+        assertEquals(5, _renders);
+
+        // a new image recycles the (larger) canvas of an evicted one
+        e3.release();
+        BackgroundCache.Entry e6 = cache.acquire("f", 40, 40, _renderer);
+        assertEquals(6, _renders);
+        assertEquals(4, cache.size());
+        assertEquals(4*100*100, cache.bytes());
+        e4.release();
+        e5.release();
+        e6.release();
+
+        cache.setBudget(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test public void testRecycling () {
+        BackgroundCache cache = new BackgroundCache(4*50*50);
+        cache.acquire("a", 50, 50, _renderer).release();
+
+        // an evicted canvas that is much larger than needed is discarded rather than recycled
+        BackgroundCache.Entry small = cache.acquire("b", 20, 20, _renderer);
+        assertEquals(1, cache.size());
+        assertEquals(4*20*20, cache.bytes());
+        small.release();
+
+        // as is a solely referenced canvas that is shrunk far below its size
+        BackgroundCache.Entry entry = cache.acquire("c", 50, 50, _renderer);
+        entry = cache.resize(entry, 50, 10, _renderer);
+        assertEquals(4*50*10, cache.bytes());
+        entry.release();
+    }
+
+    @Test public void testResize () {
+        BackgroundCache cache = new BackgroundCache(1024*1024);
+        BackgroundCache.Entry entry = cache.acquire("a", 100, 40, _renderer);
+
+        // shrinking a solely referenced entry rerenders into its canvas
+        entry = cache.resize(entry, 80, 30, _renderer);
+        assertEquals(2, _renders);
+        assertEquals(1, cache.size());
+        assertEquals(4*100*40, cache.bytes());
+
+        // growing it beyond its canvas, or resizing a shared entry, requires a new canvas
+        entry = cache.resize(entry, 120, 30, _renderer);
+        assertEquals(2, cache.size());
+        BackgroundCache.Entry shared = cache.acquire("a", 120, 30, _renderer);
+        BackgroundCache.Entry resized = cache.resize(entry, 110, 30, _renderer);
+        assertEquals(3, cache.size());
+        assertEquals(4, _renders);
+
+        // resizing to a cached size reuses the cached image
+        assertSame(shared, cache.resize(resized, 120, 30, _renderer));
+        assertEquals(4, _renders);
+    }
+
+    @Test(expected=IllegalStateException.class) public void testOverRelease () {
+        BackgroundCache cache = new BackgroundCache(1024);
+        BackgroundCache.Entry entry = cache.acquire("a", 10, 10, _renderer);
+        entry.release();
+        entry.release();
+    }
+
+    protected int _renders;
+    protected final BackgroundCache.Renderer _renderer = new BackgroundCache.Renderer() {
+        public void render (Canvas canvas, float width, float height) {
+            _renders++;
+            canvas.setFillColor(0xFFFF0000).fillRect(0, 0, width, height);
+        }
+    };
+}
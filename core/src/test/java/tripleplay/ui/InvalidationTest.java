@@ -0,0 +1,136 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.ui;
+
+import playn.java.JavaPlatform;
+
+import pythagoras.f.Dimension;
+
+import tripleplay.ui.layout.AxisLayout;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the propagation of invalidation, and layout boundaries.
+ */
+public class InvalidationTest
+{
+    static {
+        JavaPlatform.registerHeadless();
+    }
+
+    @Test public void testLayoutBoundaries () {
+        Interface iface = new Interface();
+        Root root = iface.createRoot(AxisLayout.vertical(), Stylesheet.builder().create());
+        Label score = new Label("0").setConstraint(Constraints.fixedSize(100, 20));
+        Label status = new Label("ready");
+        Group hud = new Group(AxisLayout.vertical()).add(score, status);
+        Group panel = new Group(AxisLayout.horizontal()).setLayoutBoundary(true);
+        Label info = new Label("info");
+        panel.add(info);
+        root.add(hud, panel);
+        root.setSize(200, 200);
+
+        iface.paint(0);
+        assertTrue(iface.layoutCount() > 0);
+        iface.paint(0);
+        assertEquals(0, iface.layoutCount());
+
+        // changing a label with a fixed size relays out only that label
+        score.text.update("100");
+        iface.paint(0);
+        assertEquals(1, iface.layoutCount());
+        assertTrue(root.isSet(Element.Flag.VALID));
+
+        // changing an unconstrained label relays out its ancestors as well
+        status.text.update("busy");
+        iface.paint(0);
+        assertTrue(iface.layoutCount() > 1);
+
+        // changing a label within a boundary group relays out only the label and the group
+        info.text.update("more info");
+        iface.paint(0);
+        assertEquals(2, iface.layoutCount());
+
+        // hiding a boundary still relays out its parent
+        panel.setVisible(false);
+        assertFalse(root.isSet(Element.Flag.VALID));
+    }
+
+    @Test public void testMeasurementCache () {
+        class Measured extends Shim {
+            public int computes;
+            public Measured () { super(0, 0); }
+            @Override protected Dimension computeSize (float hintX, float hintY) {
+                computes++;
+                return new Dimension(hintX, 10);
+            }
+        }
+        Measured elem = new Measured();
+        assertEquals(50, elem.preferredSize(50, 0).width(), 0);
+        assertEquals(80, elem.preferredSize(80, 0).width(), 0);
+        assertEquals(50, elem.preferredSize(50, 0).width(), 0);
+        assertEquals(2, elem.computes);
+
+        // only the most recent measurements are retained
+        for (int ii = 0; ii < Element.MAX_MEASUREMENTS; ii++) elem.preferredSize(ii, 0);
+        assertEquals(50, elem.preferredSize(50, 0).width(), 0);
+        assertEquals(3 + Element.MAX_MEASUREMENTS, elem.computes);
+
+        // invalidation clears all measurements
+        elem.invalidate();
+        assertEquals(50, elem.preferredSize(50, 0).width(), 0);
+        assertEquals(4 + Element.MAX_MEASUREMENTS, elem.computes);
+    }
+
+    @Test public void testMetricsReuse () {
+        class Counting extends AxisLayout.Vertical {
+            public int computes;
+            @Override protected Metrics computeMetrics (Elements<?> elems, float hintX,
+                                                        float hintY, boolean vert) {
+                computes++;
+                return super.computeMetrics(elems, hintX, hintY, vert);
+            }
+        }
+        Counting layout = new Counting();
+        Group group = new Group(layout).add(new Shim(20, 10), new Shim(30, 10));
+
+        // laying out at the measured size reuses the measurements
+        layout.computeSize(group, 100, 100);
+        layout.layout(group, 0, 0, 100, 100);
+        assertEquals(1, layout.computes);
+
+        // laying out at another size, or after invalidation, measures again
+        layout.computeSize(group, 100, 100);
+        layout.layout(group, 0, 0, 80, 100);
+        assertEquals(3, layout.computes);
+        layout.computeSize(group, 100, 100);
+        group.invalidate();
+        layout.layout(group, 0, 0, 100, 100);
+        assertEquals(5, layout.computes);
+    }
+
+    @Test public void testStretchedMeasurement () {
+        // an element whose height depends on its width, like wrapped text
+        class Wrapped extends Shim {
+            public Wrapped () { super(0, 0); }
+            @Override protected Dimension computeSize (float hintX, float hintY) {
+                return new Dimension(hintX, 1000 / hintX);
+            }
+        }
+        Wrapped left = new Wrapped(), right = new Wrapped();
+        AxisLayout layout = AxisLayout.horizontal().gap(0);
+        Group group = new Group(layout).add(AxisLayout.stretch(left), AxisLayout.stretch(right));
+
+        // stretched elements are measured with the width that they are allotted, not the full hint
+        layout.computeSize(group, 120, 100);
+        layout.layout(group, 0, 0, 120, 100);
+        assertEquals(60, left.size().width(), 0);
+        assertEquals(1000 / 60f, left.size().height(), 0.001f);
+        assertEquals(1000 / 60f, right.size().height(), 0.001f);
+    }
+}
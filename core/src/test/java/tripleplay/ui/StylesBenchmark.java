@@ -0,0 +1,117 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import playn.core.Font;
+import playn.java.JavaPlatform;
+
+import tripleplay.ui.layout.AxisLayout;
+import tripleplay.util.Benchmark;
+
+import static playn.core.PlayN.graphics;
+
+/**
+ * Measures style resolution over an interface of 5000 labels, nested three groups deep beneath a
+ * root with a stylesheet. This is not run as part of the unit tests; run it by hand via {@link
+ * #main}. Each operation resolves the styles used when laying out a text widget, for every label
+ * in the interface.
+ */
+public class StylesBenchmark extends Benchmark
+{
+    public static void main (String[] args) {
+        JavaPlatform.registerHeadless();
+        new StylesBenchmark().run();
+    }
+
+    public void run () {
+        Font font = graphics().createFont("Helvetica", Font.Style.PLAIN, 12);
+        final Stylesheet sheet = Stylesheet.builder().
+            add(Element.class, Style.FONT.is(font)).
+            add(Label.class, Style.COLOR.is(0xFF333333), Style.HALIGN.left).
+            add(Label.class, Style.Mode.DISABLED, Style.COLOR.is(0xFF999999)).
+            create();
+        final Root root = new Interface().createRoot(AxisLayout.vertical(), sheet);
+        for (int ii = 0; ii < 10; ii++) {
+            Group outer = new Group(AxisLayout.vertical());
+            root.add(outer);
+            for (int jj = 0; jj < 10; jj++) {
+                Group inner = new Group(AxisLayout.horizontal());
+                outer.add(inner);
+                for (int kk = 0; kk < 50; kk++) {
+                    Label label = new Label("Label " + _labels.size());
+                    inner.add(label);
+                    _labels.add(label);
+                }
+            }
+        }
+        final int count = _labels.size();
+
+        report("resolve (uncached) [" + count + " widgets]", new Op() {
+            public int run () {
+                int sum = 0;
+                for (Label label : _labels) {
+                    for (Style<?> style : STYLES) {
+                        if (Styles.lookupStyle(label, style) != null) sum++;
+                    }
+                }
+                return sum;
+            }
+        }, "widget", count);
+        report("resolve (cached) [" + count + " widgets]", new Op() {
+            public int run () {
+                int sum = 0;
+                for (Label label : _labels) {
+                    for (Style<?> style : STYLES) {
+                        if (Styles.resolveStyle(label, style) != null) sum++;
+                    }
+                }
+                return sum;
+            }
+        }, "widget", count);
+
+        // toggling the state of a few widgets should only re-resolve those widgets' styles
+        report("toggle 1% and resolve [" + count + " widgets]", new Op() {
+            public int run () {
+                for (int ii = 0; ii < count; ii += 100) {
+                    Label label = _labels.get(ii);
+                    label.setEnabled(!label.isEnabled());
+                }
+                int sum = 0;
+                for (Label label : _labels) {
+                    for (Style<?> style : STYLES) {
+                        if (Styles.resolveStyle(label, style) != null) sum++;
+                    }
+                }
+                return sum;
+            }
+        }, "widget", count);
+
+        // replacing the root stylesheet invalidates everything
+        report("restyle root and resolve [" + count + " widgets]", new Op() {
+            public int run () {
+                root.setStylesheet(sheet);
+                int sum = 0;
+                for (Label label : _labels) {
+                    for (Style<?> style : STYLES) {
+                        if (Styles.resolveStyle(label, style) != null) sum++;
+                    }
+                }
+                return sum;
+            }
+        }, "widget", count);
+    }
+
+    protected final List<Label> _labels = new ArrayList<Label>();
+
+    /** The styles resolved by a text widget when it is laid out. */
+    protected static final Style<?>[] STYLES = {
+        Style.BACKGROUND, Style.HALIGN, Style.VALIGN, Style.ICON_POS, Style.ICON_GAP, Style.COLOR,
+        Style.TEXT_WRAP, Style.FONT, Style.TEXT_EFFECT
+    };
+}
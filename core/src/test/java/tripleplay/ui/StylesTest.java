@@ -5,8 +5,13 @@
 
 package tripleplay.ui;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import playn.java.JavaPlatform;
 
+import tripleplay.ui.layout.AxisLayout;
+
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -69,11 +74,93 @@ public class StylesTest
         checkEquals(null, s, Style.COLOR);
     }
 
+    @Test public void testManyStyles () {
+        // make sure lookups work for styles whose ids span many words of the style mask
+        List<Style<Integer>> styles = new ArrayList<Style<Integer>>();
+        for (int ii = 0; ii < 100; ii++) styles.add(Style.newStyle(false, 0));
+        Styles s = Styles.none();
+        for (int ii = styles.size()-1; ii >= 0; ii -= 3) s = s.add(styles.get(ii).is(ii));
+        for (int ii = 0; ii < styles.size(); ii += 2) s = s.add(styles.get(ii).is(-ii));
+        for (int ii = 0; ii < styles.size(); ii++) {
+            Integer expect = (ii % 2 == 0) ? (Integer)(-ii) : ((99 - ii) % 3 == 0 ? ii : null);
+            checkEquals(expect, s, styles.get(ii));
+        }
+    }
+
+    @Test public void testStylesheetInheritance () {
+        Background bg = Background.solid(0xFFFFFFFF);
+        Stylesheet sheet = Stylesheet.builder().
+            add(Element.class, Style.COLOR.is(0xFF111111), Style.BACKGROUND.is(bg)).
+            add(Element.class, Style.Mode.DISABLED, Style.COLOR.is(0xFF222222)).
+            add(Label.class, Style.Mode.SELECTED, Style.COLOR.is(0xFF333333)).
+            add(Button.class, Style.COLOR.is(0xFF444444)).create();
+        Label label = new Label();
+        Button button = new Button();
+
+        // inherited styles come from the nearest class that has a value for the element's mode
+        assertEquals((Integer)0xFF111111, get(sheet, label, Style.COLOR));
+        assertEquals((Integer)0xFF444444, get(sheet, button, Style.COLOR));
+        label.setEnabled(false);
+        assertEquals((Integer)0xFF222222, get(sheet, label, Style.COLOR));
+        button.setEnabled(false);
+        assertEquals((Integer)0xFF444444, get(sheet, button, Style.COLOR));
+        label.set(Element.Flag.SELECTED, true);
+        assertEquals((Integer)0xFF222222, get(sheet, label, Style.COLOR));
+        label.setEnabled(true);
+        assertEquals((Integer)0xFF333333, get(sheet, label, Style.COLOR));
+
+        // non-inherited styles only come from the element's own class
+        assertNull(get(sheet, label, Style.BACKGROUND));
+        assertEquals(bg, get(sheet, new Shim(1, 1) {
+            @Override protected Class<?> getStyleClass () { return Element.class; }
+        }, Style.BACKGROUND));
+    }
+
+    @Test public void testResolvedStyleCache () {
+        Stylesheet red = Stylesheet.builder().add(Label.class, Style.COLOR.is(0xFFFF0000)).
+            add(Label.class, Style.Mode.DISABLED, Style.COLOR.is(0xFF330000)).create();
+        Stylesheet blue = Stylesheet.builder().add(Label.class, Style.COLOR.is(0xFF0000FF)).
+            add(Label.class, Style.Mode.DISABLED, Style.COLOR.is(0xFF000033)).create();
+        Root root = new Interface().createRoot(AxisLayout.vertical(), red);
+        Group group = new Group(AxisLayout.vertical());
+        Label label = new Label();
+        group.add(label);
+        root.add(group);
+        assertEquals(0xFFFF0000, label.resolveStyle(Style.COLOR).intValue());
+
+        // changes to the element's own styles
+        label.addStyles(Style.COLOR.is(0xFF00FF00));
+        assertEquals(0xFF00FF00, label.resolveStyle(Style.COLOR).intValue());
+        label.setStyles(Styles.none());
+        assertEquals(0xFFFF0000, label.resolveStyle(Style.COLOR).intValue());
+
+        // changes to an ancestor's stylesheet
+        group.setStylesheet(blue);
+        assertEquals(0xFF0000FF, label.resolveStyle(Style.COLOR).intValue());
+
+        // changes to the element's state
+        label.setEnabled(false);
+        assertEquals(0xFF000033, label.resolveStyle(Style.COLOR).intValue());
+        label.setEnabled(true);
+        assertEquals(0xFF0000FF, label.resolveStyle(Style.COLOR).intValue());
+
+        // changes to the element's parent chain
+        group.remove(label);
+        root.add(label);
+        assertEquals(0xFFFF0000, label.resolveStyle(Style.COLOR).intValue());
+        root.remove(label);
+        assertEquals(0xFF000000, label.resolveStyle(Style.COLOR).intValue());
+    }
+
+    protected static <V> V get (Stylesheet sheet, Element<?> elem, Style<V> style) {
+        return sheet.get(style, elem.getStyleClass(), elem);
+    }
+
     protected static <V> void checkIsNull (Styles s, Style<V> style) {
-        assertNull(s.get(new Styles.Binding<V>(style), new Label()));
+        assertNull(s.get(style, new Label()));
     }
 
     protected static <V> void checkEquals (V value, Styles s, Style<V> style) {
-        assertEquals(value, s.get(new Styles.Binding<V>(style), new Label()));
+        assertEquals(value, s.get(style, new Label()));
     }
 }
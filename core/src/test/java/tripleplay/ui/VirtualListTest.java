@@ -0,0 +1,110 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.ui;
+
+import playn.java.JavaPlatform;
+
+import pythagoras.f.Dimension;
+
+import tripleplay.ui.layout.AxisLayout;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the windowing and recycling of rows by {@link VirtualList}.
+ */
+public class VirtualListTest
+{
+    static {
+        JavaPlatform.registerHeadless();
+    }
+
+    static class Row extends Shim {
+        public int index = -1, type;
+        public Row () { super(0, 0); }
+        @Override protected Dimension computeSize (float hintX, float hintY) {
+            return new Dimension(hintX, 10 + (index % 3) * 10);
+        }
+    }
+
+    @Test public void testRecycling () {
+        final int[] created = { 0 };
+        VirtualList list = new VirtualList(new VirtualList.Adapter() {
+            public int rowCount () { return 5000; }
+            public Element<?> createRow (int type) {
+                created[0]++;
+                return new Row();
+            }
+            public void bindRow (Element<?> row, int index) {
+                ((Row)row).index = index;
+                row.invalidate();
+            }
+        }).setOverscan(0);
+
+        Interface iface = new Interface();
+        Root root = iface.createRoot(AxisLayout.vertical().offStretch(),
+                                     Stylesheet.builder().create());
+        root.add(AxisLayout.stretch(list));
+        root.setSize(100, 200);
+        iface.paint(0);
+
+        // only the rows in the window are created, and the first row sets the estimated height
+        assertTrue(created[0] <= 21);
+        assertEquals(5000 * 10, list.contentHeight(), 200);
+
+        // scrolling reuses the rows that leave the window
+        for (int ii = 0; ii < 100; ii++) {
+            list.scrollBy(370);
+            iface.paint(0);
+        }
+        assertTrue(created[0] <= 30);
+        assertEquals(created[0], list.childCount());
+
+        // the rows that were shown have been measured, and the scroll is clamped to the content
+        assertTrue(list.contentHeight() > 5000 * 10);
+        list.scrollTo(Float.MAX_VALUE);
+        iface.paint(0);
+        assertEquals(list.contentHeight() - 200, list.scrollOffset(), 0.01f);
+    }
+
+    @Test public void testRowTypes () {
+        final int[] types = new int[100];
+        for (int ii = 0; ii < types.length; ii++) types[ii] = ii % 2;
+        VirtualList list = new VirtualList(new VirtualList.Adapter() {
+            public int rowCount () { return types.length; }
+            public int rowType (int index) { return types[index]; }
+            public Element<?> createRow (int type) {
+                Row row = new Row();
+                row.type = type;
+                return row;
+            }
+            public void bindRow (Element<?> row, int index) {
+                // rows must only be bound to indices of the type for which they were created
+                assertEquals(types[index], ((Row)row).type);
+                ((Row)row).index = index;
+                row.invalidate();
+            }
+        }).setEstimatedRowHeight(20);
+        list.scrollToRow(50);
+
+        Interface iface = new Interface();
+        Root root = iface.createRoot(AxisLayout.vertical().offStretch(),
+                                     Stylesheet.builder().create());
+        root.add(AxisLayout.stretch(list));
+        root.setSize(100, 200);
+        iface.paint(0);
+        // scrolling to a row before the list is laid out takes effect when it is
+        assertTrue(list.scrollOffset() > 0);
+
+        // change the type of every row; the rows in the window must be replaced, not rebound
+        for (int ii = 0; ii < types.length; ii++) types[ii] = 1 - types[ii];
+        list.dataChanged();
+        iface.paint(0);
+        list.scrollTo(0);
+        iface.paint(0);
+    }
+}
@@ -0,0 +1,71 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+/**
+ * The basis for benchmarks that are run by hand, rather than as part of the unit tests. Times
+ * operations for a fixed window, after warming up the JIT, and reports their throughput.
+ */
+public abstract class Benchmark
+{
+    /** An operation to be benchmarked. Returns a value to keep the JIT from eliding the work. */
+    protected interface Op {
+        int run ();
+    }
+
+    /**
+     * Runs {@code op} repeatedly and reports the number of operations per second, and the time
+     * taken by each operation.
+     * @param opsPerRun the number of logical operations performed by one call to {@link Op#run}.
+     */
+    protected void report (String name, Op op, int opsPerRun) {
+        report(name, op, "op", opsPerRun);
+    }
+
+    /**
+     * Runs {@code op} repeatedly and reports the number of operations per second, and the time
+     * taken by each operation, and by each run if it performs more than one operation.
+     * @param unit the name of a logical operation (e.g. "hit"), used in reporting.
+     * @param opsPerRun the number of logical operations performed by one call to {@link Op#run}.
+     */
+    protected void report (String name, Op op, String unit, int opsPerRun) {
+        // warm up the JIT, then time as many runs as fit in our sample window
+        time(op, WARMUP_MILLIS);
+        long start = System.nanoTime();
+        long runs = time(op, SAMPLE_MILLIS);
+        long elapsed = System.nanoTime() - start;
+        double ops = runs * (double)opsPerRun;
+        System.out.println(name + ": " + (long)(ops / (elapsed / 1e9)) + " " + unit + "s/s, " +
+                           formatTime(elapsed / ops) + "/" + unit +
+                           (opsPerRun == 1 ? "" : ", " + formatTime(elapsed / (double)runs) +
+                            "/pass"));
+    }
+
+    protected String formatTime (double nanos) {
+        if (nanos < 1e3) return String.format("%.1fns", nanos);
+        if (nanos < 1e6) return String.format("%.1fus", nanos / 1e3);
+        return String.format("%.1fms", nanos / 1e6);
+    }
+
+    protected long time (Op op, long millis) {
+        // run in batches (which grow while they are fast) to keep timing overhead low
+        long runs = 0, end = System.currentTimeMillis() + millis;
+        int batch = 1;
+        while (true) {
+            long start = System.currentTimeMillis();
+            for (int ii = 0; ii < batch; ii++) _sink += op.run();
+            runs += batch;
+            long now = System.currentTimeMillis();
+            if (now >= end) return runs;
+            if (now - start < 10 && batch < 1000) batch *= 2;
+        }
+    }
+
+    /** Accumulates results so that the JIT can't elide benchmarked operations. */
+    protected int _sink;
+
+    protected static final long WARMUP_MILLIS = 500, SAMPLE_MILLIS = 1000;
+}
@@ -0,0 +1,75 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import playn.java.JavaPlatform;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class BitmapFontTest
+{
+    static {
+        JavaPlatform.registerHeadless();
+    }
+
+    @Test public void testMetrics () {
+        TextConfig config = new TextConfig(0xFF000000);
+        BitmapFont font = config.bitmapFont();
+        assertSame(font, new TextConfig(0xFF000000).bitmapFont());
+        assertNotSame(font, config.withColor(0xFFFFFFFF).bitmapFont());
+
+        // the width of a string is close to that of the same string laid out normally
+        String text = "Score: 12345";
+        assertEquals(config.layout(text).width(), font.width(text), 1);
+        assertEquals(config.layout(text).height(), font.height(), 1);
+
+        // characters outside the initial set are added as needed
+        int glyphs = font._glyphs.size();
+        font.width("\u00e9");
+        assertEquals(glyphs + 1, font._glyphs.size());
+
+        BitmapFont.Text display = font.createText("0");
+        assertEquals(font.width("0"), display.width(), 0);
+        display.setText("100");
+        assertEquals(font.width("100"), display.width(), 0);
+        display.destroy();
+    }
+
+    @Test public void testDisposal () {
+        GlyphAtlas atlas = new GlyphAtlas(256, 256);
+        BitmapFont font = new BitmapFont(new TextConfig(0xFF000000), "0123456789", atlas);
+        assertTrue(atlas.usage() > 0);
+        font.dispose();
+        assertEquals(0, atlas.usage(), 0);
+
+        // a disposed font renders its characters anew when used
+        BitmapFont.Text display = font.createText("42");
+        assertEquals(2, font._glyphs.size());
+        assertTrue(atlas.usage() > 0);
+        display.destroy();
+        font.dispose();
+        assertEquals(0, atlas.usage(), 0);
+    }
+
+    @Test public void testSharedFonts () {
+        // fonts that are displayed are retained, however many others are created
+        BitmapFont.Text display = new TextConfig(0xFF000001).bitmapFont().createText("0");
+        BitmapFont first = new TextConfig(0xFF000002).bitmapFont();
+        for (int ii = 1; ii <= 2*BitmapFont.MAX_UNUSED_FONTS; ii++) {
+            new TextConfig(0xFF000002 + ii).bitmapFont();
+        }
+        assertSame(display.font(), new TextConfig(0xFF000001).bitmapFont());
+
+        // only a few that aren't are retained, and those that are evicted free their characters
+        int unused = 0;
+        for (BitmapFont font : BitmapFont._fonts.values()) if (font._refs == 0) unused++;
+        assertTrue(unused <= BitmapFont.MAX_UNUSED_FONTS);
+        assertTrue(first._glyphs.isEmpty());
+        assertNotSame(first, new TextConfig(0xFF000002).bitmapFont());
+        display.destroy();
+    }
+}
@@ -0,0 +1,72 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import playn.java.JavaPlatform;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class GlyphAtlasTest
+{
+    static {
+        JavaPlatform.registerHeadless();
+    }
+
+    @Test public void testPacking () {
+        GlyphAtlas atlas = new GlyphAtlas(256, 256);
+        List<GlyphAtlas.Region> regions = new ArrayList<GlyphAtlas.Region>();
+        for (int ii = 0; ii < 100; ii++) regions.add(atlas.allocate(30, 12));
+        assertEquals(1, atlas.pages());
+        for (int ii = 0; ii < regions.size(); ii++) {
+            GlyphAtlas.Region r1 = regions.get(ii);
+            assertTrue(r1.width >= 30 && r1.height >= 12);
+            assertTrue(r1.x + r1.width <= 256 && r1.y + r1.height <= 256);
+            for (int jj = ii+1; jj < regions.size(); jj++) {
+                GlyphAtlas.Region r2 = regions.get(jj);
+                assertFalse(r1.x < r2.x + r2.width && r2.x < r1.x + r1.width &&
+                            r1.y < r2.y + r2.height && r2.y < r1.y + r1.height);
+            }
+        }
+
+        // freed space is reused
+        GlyphAtlas.Region freed = regions.remove(50);
+        freed.free();
+        GlyphAtlas.Region reused = atlas.allocate(20, 10);
+        assertEquals(freed.x, reused.x);
+        assertEquals(freed.y, reused.y);
+
+        // regions too big for a page get their own, which is discarded when freed
+        GlyphAtlas.Region big = atlas.allocate(300, 20);
+        assertEquals(2, atlas.pages());
+        big.free();
+        assertEquals(1, atlas.pages());
+
+        reused.free();
+        for (GlyphAtlas.Region region : regions) region.free();
+        assertEquals(0, atlas.usage(), 0);
+    }
+
+    @Test public void testReallocatedRegionsAreCleared () {
+        GlyphAtlas atlas = new GlyphAtlas(64, 64);
+        GlyphAtlas.Region region = atlas.allocate(20, 10);
+        region.canvas().setFillColor(0xFFFF0000).fillRect(0, 0, region.width, region.height);
+        int x = region.x, y = region.y, width = region.width, height = region.height;
+        region.free();
+
+        // the new region reuses the freed space, but none of the old region's pixels
+        GlyphAtlas.Region reused = atlas.allocate(20, 10);
+        assertEquals(x, reused.x);
+        assertEquals(y, reused.y);
+        int[] rgb = new int[width*height];
+        reused._page.image.getRgb(x, y, width, height, rgb, 0, width);
+        for (int pixel : rgb) assertEquals(0, pixel >>> 24);
+        reused.free();
+    }
+}
@@ -0,0 +1,58 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.Random;
+
+import pythagoras.f.Rectangle;
+
+/**
+ * Measures hit testing over 10,000 fixed bounds regions, laid out as the cells of a 100x100 board,
+ * with and without a spatial index. This is not run as part of the unit tests; run it by hand via
+ * {@link #main}.
+ */
+public class InputBenchmark extends Benchmark
+{
+    public static void main (String[] args) {
+        new InputBenchmark().run();
+    }
+
+    public void run () {
+        bench("linear", 0);
+        bench("indexed (cell " + CELL + ")", CELL);
+        bench("indexed (cell " + CELL*4 + ")", CELL*4);
+    }
+
+    protected void bench (String name, float cellSize) {
+        final Input.Reactor<Integer> reactor = new Input.Reactor<Integer>() {};
+        for (int yy = 0; yy < SIDE; yy++) {
+            for (int xx = 0; xx < SIDE; xx++) {
+                reactor.register(new Input.FixedBoundsRegion(
+                                     new Rectangle(xx*CELL, yy*CELL, CELL, CELL)), yy*SIDE+xx);
+            }
+        }
+        reactor.setIndexCellSize(cellSize);
+
+        // choose our points in advance, so that we time only the hit tests
+        Random rando = new Random(42);
+        final float[] points = new float[2*POINTS];
+        for (int ii = 0; ii < points.length; ii++) points[ii] = rando.nextFloat() * SIDE * CELL;
+
+        report(name + " [" + SIDE*SIDE + " regions]", new Op() {
+            public int run () {
+                int sum = 0;
+                for (int ii = 0; ii < points.length; ii += 2) {
+                    Integer hit = reactor.hitTest(points[ii], points[ii+1]);
+                    if (hit != null) sum += hit;
+                }
+                return sum;
+            }
+        }, "hit", POINTS);
+    }
+
+    protected static final int SIDE = 100, POINTS = 1000;
+    protected static final float CELL = 16;
+}
@@ -0,0 +1,153 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import playn.core.Mouse;
+import playn.core.Pointer;
+
+import pythagoras.f.IRectangle;
+import pythagoras.f.Rectangle;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class InputTest
+{
+    static class TestReactor extends Input.Reactor<String> {}
+
+    static class Expiring extends Input.FixedBoundsRegion {
+        public boolean expired;
+        public Expiring (IRectangle bounds) { super(bounds); }
+        @Override public boolean hasExpired () { return expired; }
+    }
+
+    @Test public void testIndexedPrecedence () {
+        for (float cellSize : new float[] { 0, 8, 100 }) {
+            TestReactor r = new TestReactor();
+            r.setIndexCellSize(cellSize);
+            r.register(new Input.ScreenRegion(), "screen");
+            r.register(new Input.FixedBoundsRegion(new Rectangle(0, 0, 10, 10)), "a");
+            r.register(new Input.BoundsRegion(new Rectangle(5, 5, 10, 10)), "b");
+            Input.Registration c = r.register(
+                new Input.FixedBoundsRegion(new Rectangle(8, 8, 10, 10)), "c");
+            assertEquals("a", r.hitTest(2, 2));
+            assertEquals("b", r.hitTest(6, 6));
+            assertEquals("c", r.hitTest(9, 9));
+            assertEquals("screen", r.hitTest(50, 50));
+            c.cancel();
+            assertEquals("b", r.hitTest(9, 9));
+
+            // changing the index preserves precedence
+            r.setIndexCellSize(cellSize == 0 ? 4 : 0);
+            assertEquals("a", r.hitTest(2, 2));
+            assertEquals("b", r.hitTest(9, 9));
+        }
+    }
+
+    @Test public void testExpiry () {
+        TestReactor r = new TestReactor();
+        r.setIndexCellSize(16);
+        Expiring a = new Expiring(new Rectangle(0, 0, 40, 40));
+        Input.Registration areg = r.register(a, "a");
+        assertEquals("a", r.hitTest(30, 30));
+        a.expired = true;
+        assertNull(r.hitTest(30, 30));
+        // the expired reaction is removed from every cell, not just the one tested
+        assertTrue(r._index.reactions().isEmpty());
+        assertTrue(r._index._cells.isEmpty());
+
+        // canceling the pruned reaction after indexing is disabled is harmless
+        r.setIndexCellSize(0);
+        areg.cancel();
+        assertTrue(r._reactions.isEmpty());
+    }
+
+    @Test public void testPointerCoalescing () {
+        PointerInput input = new PointerInput();
+        final List<String> events = new ArrayList<String>();
+        input.register(new Input.ScreenRegion(), new Pointer.Adapter() {
+            @Override public void onPointerStart (Pointer.Event event) {
+                events.add("start " + (int)event.x());
+            }
+            @Override public void onPointerDrag (Pointer.Event event) {
+                events.add("drag " + (int)event.x());
+            }
+            @Override public void onPointerEnd (Pointer.Event event) {
+                events.add("end " + (int)event.x());
+            }
+        });
+        input.setCoalescing(true);
+
+        // only the latest drag is dispatched on flush
+        input.plistener.onPointerStart(pointer(0));
+        for (int ii = 1; ii <= 3; ii++) input.plistener.onPointerDrag(pointer(ii));
+        assertEquals(Arrays.asList("start 0"), events);
+        input.flush();
+        assertEquals(Arrays.asList("start 0", "drag 3"), events);
+
+        // a pending drag is dispatched before the end
+        input.plistener.onPointerDrag(pointer(4));
+        input.plistener.onPointerDrag(pointer(5));
+        input.plistener.onPointerEnd(pointer(6));
+        assertEquals(Arrays.asList("start 0", "drag 3", "drag 5", "end 6"), events);
+        assertEquals(4, input.dispatchCount());
+        assertEquals(3, input.coalescedCount());
+
+        // disabling coalescing dispatches the pending drag, and later drags immediately
+        events.clear();
+        input.resetCounts();
+        input.plistener.onPointerStart(pointer(7));
+        input.plistener.onPointerDrag(pointer(8));
+        input.setCoalescing(false);
+        input.plistener.onPointerDrag(pointer(9));
+        assertEquals(Arrays.asList("start 7", "drag 8", "drag 9"), events);
+        assertEquals(3, input.dispatchCount());
+        assertEquals(0, input.coalescedCount());
+    }
+
+    @Test public void testMouseCoalescing () {
+        MouseInput input = new MouseInput();
+        final List<String> events = new ArrayList<String>();
+        input.register(new Input.ScreenRegion(), new Mouse.Adapter() {
+            @Override public void onMouseDown (Mouse.ButtonEvent event) {
+                events.add("down " + (int)event.x());
+            }
+            @Override public void onMouseMove (Mouse.MotionEvent event) {
+                events.add("move " + (int)event.x());
+            }
+            @Override public void onMouseUp (Mouse.ButtonEvent event) {
+                events.add("up " + (int)event.x());
+            }
+        });
+        input.setCoalescing(true);
+
+        // a pending move is hit tested and dispatched before the press
+        for (int ii = 1; ii <= 3; ii++) input.mlistener.onMouseMove(motion(ii));
+        assertTrue(events.isEmpty());
+        input.mlistener.onMouseDown(button(4));
+        input.mlistener.onMouseUp(button(5));
+        assertEquals(Arrays.asList("move 3", "down 4", "up 5"), events);
+        assertEquals(3, input.dispatchCount());
+        assertEquals(2, input.coalescedCount());
+        assertEquals(3, input.hitTestCount());
+    }
+
+    protected static Pointer.Event pointer (float x) {
+        return new Pointer.Event.Impl(0, x, 0, false);
+    }
+
+    protected static Mouse.MotionEvent motion (float x) {
+        return new Mouse.MotionEvent.Impl(0, x, 0);
+    }
+
+    protected static Mouse.ButtonEvent button (float x) {
+        return new Mouse.ButtonEvent.Impl(0, x, 0, Mouse.BUTTON_LEFT);
+    }
+}
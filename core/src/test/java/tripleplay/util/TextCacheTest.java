@@ -0,0 +1,88 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import playn.core.TextFormat;
+import playn.java.JavaPlatform;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TextCacheTest
+{
+    static {
+        JavaPlatform.registerHeadless();
+    }
+
+    @Test public void testSharing () {
+        TextCache cache = new TextCache(1024*1024, 100);
+        TextFormat format = new TextFormat();
+        TextCache.Entry ok = cache.get("OK", format, EffectRenderer.NONE, 0xFF000000);
+        assertSame(ok, cache.get("OK", format, EffectRenderer.NONE, 0xFF000000));
+        assertNotSame(ok, cache.get("OK", format, new EffectRenderer.Shadow(0, 1, 1), 0xFF000000));
+        // effects are compared by value
+        assertSame(cache.get("OK", format, new EffectRenderer.Shadow(0, 1, 1), 0xFF000000),
+                   cache.get("OK", format, new EffectRenderer.Shadow(0, 1, 1), 0xFF000000));
+        assertNotSame(ok, cache.get("OK", format, EffectRenderer.NONE, 0xFFFFFFFF));
+        assertNotSame(ok, cache.get("OK", format.withWrapWidth(100), EffectRenderer.NONE,
+                                    0xFF000000));
+        assertEquals(4, cache.size());
+
+        // the image is rasterized once and shared by all that acquire the entry
+        TextCache.Entry e1 = cache.acquire(ok), e2 = cache.acquire(ok);
+        assertSame(e1.image(), e2.image());
+        assertTrue(cache.bytes() > 0);
+        e1.release();
+        e2.release();
+    }
+
+    @Test public void testEviction () {
+        TextCache cache = new TextCache(1024*1024, 2);
+        TextFormat format = new TextFormat();
+        TextCache.Entry a = cache.acquire("a", format, EffectRenderer.NONE, 0);
+        cache.get("b", format, EffectRenderer.NONE, 0);
+        cache.get("c", format, EffectRenderer.NONE, 0);
+        // "a" is referenced, so "b" is evicted to stay within our limit
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a", format, EffectRenderer.NONE, 0));
+        a.image();
+        a.release();
+        cache.get("d", format, EffectRenderer.NONE, 0);
+        cache.get("e", format, EffectRenderer.NONE, 0);
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.bytes());
+
+        // an evicted entry may still be acquired, and is readded to the cache
+        TextCache.Entry f = cache.get("f", format, EffectRenderer.NONE, 0);
+        cache.get("g", format, EffectRenderer.NONE, 0);
+        cache.get("h", format, EffectRenderer.NONE, 0);
+        assertSame(f, cache.acquire(f));
+        assertSame(f, cache.get("f", format, EffectRenderer.NONE, 0));
+        f.release();
+    }
+
+    @Test public void testAtlas () {
+        GlyphAtlas atlas = new GlyphAtlas(256, 256);
+        TextCache cache = new TextCache(1024*1024, 100, atlas);
+        TextFormat format = new TextFormat();
+        TextCache.Entry ok = cache.acquire("OK", format, EffectRenderer.NONE, 0);
+        TextCache.Entry cancel = cache.acquire("Cancel", format, EffectRenderer.NONE, 0);
+        ok.image();
+        cancel.image();
+        // both are rasterized into the same page
+        assertEquals(1, atlas.pages());
+        assertTrue(atlas.usage() > 0);
+        assertTrue(cache.bytes() > 0);
+
+        // evicted entries return their regions to the atlas
+        ok.release();
+        cancel.release();
+        cache.setBudget(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+        assertEquals(0, atlas.usage(), 0);
+    }
+}
@@ -0,0 +1,138 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import react.Function;
+import react.RSet;
+import react.Value;
+
+import playn.core.Storage;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TypedStorageTest
+{
+    @Test public void testCachedReads () {
+        TestStorage storage = new TestStorage();
+        storage.setItem("count", "42");
+        TypedStorage ts = new TypedStorage(storage);
+        for (int ii = 0; ii < 10; ii++) assertEquals(42, ts.get("count", 0));
+        assertEquals(1, storage.reads);
+        assertFalse(ts.contains("missing"));
+        assertEquals(7, ts.get("missing", 7));
+        assertEquals(3, storage.reads);
+
+        // writes go straight through by default
+        ts.set("count", 43);
+        assertEquals("43", storage.getItem("count"));
+        assertEquals(43, ts.get("count", 0));
+        ts.remove("count");
+        assertNull(storage.getItem("count"));
+        assertEquals(0, ts.get("count", 0));
+    }
+
+    @Test public void testMissesNotCached () {
+        TestStorage storage = new TestStorage();
+        TypedStorage ts = new TypedStorage(storage);
+        for (int ii = 0; ii < 100; ii++) assertEquals(0, ts.get("missing" + ii, 0));
+        assertTrue(ts._cache.isEmpty());
+
+        // nor are removed keys, once the removal is written
+        ts.set("count", 1);
+        assertEquals(1, ts._cache.size());
+        ts.remove("count");
+        assertTrue(ts._cache.isEmpty());
+        ts = new TypedStorage(storage, true);
+        ts.set("count", 1);
+        ts.remove("count");
+        assertEquals(0, ts.get("count", 0));
+        ts.flush();
+        assertTrue(ts._cache.isEmpty());
+    }
+
+    @Test public void testDeferredWrites () {
+        TestStorage storage = new TestStorage();
+        TypedStorage ts = new TypedStorage(storage, true);
+        Value<Integer> score = ts.valueFor("score", 0);
+        for (int ii = 1; ii <= 100; ii++) score.update(ii);
+        ts.set("name", "bob");
+        ts.set("flag", true);
+        assertTrue(ts.hasPendingWrites());
+        assertEquals(0, storage.writes);
+        assertEquals(100, ts.get("score", 0));
+        assertTrue(ts.get("flag", false));
+
+        ts.flush();
+        assertFalse(ts.hasPendingWrites());
+        assertEquals(3, storage.writes);
+        assertEquals("100", storage.getItem("score"));
+        assertEquals("t", storage.getItem("flag"));
+
+        ts.remove("name");
+        ts.flush();
+        assertNull(storage.getItem("name"));
+        ts.flush();
+        assertEquals(4, storage.writes);
+    }
+
+    @Test public void testSet () {
+        TestStorage storage = new TestStorage();
+        storage.setItem("ids", "1,2,3");
+        TypedStorage ts = new TypedStorage(storage, true);
+        RSet<Integer> ids = ts.setFor("ids", PARSE_INT, TO_STRING);
+        assertEquals(3, ids.size());
+        ids.add(4);
+        ids.remove(2);
+        ts.flush();
+        assertEquals("1,3,4", storage.getItem("ids"));
+        ids.add(5);
+        ts.flush();
+        assertEquals("1,3,4,5", storage.getItem("ids"));
+
+        // removals must be persisted, including removing the last item
+        ids.clear();
+        ts.flush();
+        assertNull(storage.getItem("ids"));
+        RSet<Integer> reloaded = new TypedStorage(storage).setFor("ids", PARSE_INT, TO_STRING);
+        assertTrue(reloaded.isEmpty());
+    }
+
+    protected static class TestStorage implements Storage {
+        public int reads, writes;
+
+        public void setItem (String key, String data) {
+            writes++;
+            _data.put(key, data);
+        }
+        public void removeItem (String key) {
+            writes++;
+            _data.remove(key);
+        }
+        public String getItem (String key) {
+            reads++;
+            return _data.get(key);
+        }
+        public Iterable<String> keys () {
+            return _data.keySet();
+        }
+        public boolean isPersisted () {
+            return true;
+        }
+
+        protected final Map<String,String> _data = new HashMap<String,String>();
+    }
+
+    protected static final Function<String,Integer> PARSE_INT = new Function<String,Integer>() {
+        public Integer apply (String value) { return Integer.parseInt(value); }
+    };
+    protected static final Function<Integer,String> TO_STRING = new Function<Integer,String>() {
+        public String apply (Integer value) { return String.valueOf(value); }
+    };
+}